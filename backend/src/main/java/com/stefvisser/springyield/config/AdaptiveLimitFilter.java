@@ -0,0 +1,151 @@
+package com.stefvisser.springyield.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of requests handled at once to what the server can currently take, shedding the rest with 503.
+ * <p>
+ * Instead of a fixed size the limit follows the latency of the requests themselves, with the gradient algorithm:
+ * every completed request compares its round-trip time to the long-term average. While requests are about as fast
+ * as usual the limit grows by a share of its square root, when they get slower, e.g. because H2 or the connection
+ * pool is saturated and requests start queueing, the limit shrinks in proportion. Requests over the limit are
+ * rejected at once rather than waiting, so a slowdown cannot pile up a queue of requests whose clients have already
+ * given up. The limiter runs behind the bulkheads: a request waiting in the queue of a compartment is limited there,
+ * and only the time it is actually handled counts as round-trip time.
+ * </p>
+ * <p>
+ * The current limit, the requests in flight and the rejected requests are published as
+ * {@code springyield.adaptive-limit.*}.
+ * </p>
+ */
+@Component
+public class AdaptiveLimitFilter extends OncePerRequestFilter {
+    /// Lower bound of the gradient, a single slow sample can at most halve the limit
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final AdaptiveLimitProperties properties;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter droppedCounter;
+
+    /// Guarded by this; the limit is read without locking, a slightly stale value only shifts one admission
+    private volatile double estimatedLimit;
+    private double longRtt;
+    private long samples;
+
+    public AdaptiveLimitFilter(AdaptiveLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.estimatedLimit = clamp(properties.getInitialLimit());
+        this.droppedCounter = Counter.builder("springyield.adaptive-limit.dropped")
+                .description("Requests rejected because the concurrency limit was reached")
+                .register(meterRegistry);
+        Gauge.builder("springyield.adaptive-limit.limit", this, AdaptiveLimitFilter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("springyield.adaptive-limit.inflight", inFlight, AtomicInteger::get)
+                .description("Requests currently counted against the adaptive concurrency limit")
+                .register(meterRegistry);
+    }
+
+    /// The current limit, rounded down
+    public int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!properties.isEnabled())
+            return true;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return properties.getExcludedPaths().stream().anyMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        int currentInFlight = inFlight.incrementAndGet();
+        if (currentInFlight > getLimit()) {
+            inFlight.decrementAndGet();
+            droppedCounter.increment();
+            sendServiceUnavailable(response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - start, currentInFlight);
+        }
+    }
+
+    /**
+     * Updates the limit with the round-trip time of a completed request.
+     *
+     * @param rttNanos the time the request took
+     * @param inFlight the requests in flight when it started, including itself
+     */
+    synchronized void onSample(long rttNanos, int inFlight) {
+        double rtt = Math.max(1, rttNanos);
+        samples++;
+        if (samples == 1) {
+            longRtt = rtt;
+            return;
+        }
+
+        // Exponential moving average over the long window, warmed up with a plain average
+        long window = Math.min(samples, Math.max(1, properties.getLongWindow()));
+        longRtt += (rtt - longRtt) / window;
+
+        // A long-term average far above the current latency is left over from an earlier slowdown, let it recover
+        // faster so the limit does not stay high while latency creeps up again
+        if (longRtt / rtt > 2)
+            longRtt *= 0.95;
+
+        // An app-limited server says nothing about its capacity, only grow when the limit is actually in use
+        if (inFlight < estimatedLimit / 2)
+            return;
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, properties.getRttTolerance() * longRtt / rtt));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        estimatedLimit = clamp(estimatedLimit * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private double clamp(double limit) {
+        return Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), limit));
+    }
+
+    private void sendServiceUnavailable(HttpServletResponse response) throws IOException {
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader("Retry-After", "1");
+
+        response.getWriter().write(objectMapper.writeValueAsString(Map.of(
+                "status", status.value(),
+                "error", status.getReasonPhrase(),
+                "message", "The server is busy, please try again later"
+        )));
+    }
+}
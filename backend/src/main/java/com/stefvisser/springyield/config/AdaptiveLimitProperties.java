@@ -0,0 +1,36 @@
+package com.stefvisser.springyield.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of {@link AdaptiveLimitFilter}, bound from the {@code adaptive-limit.*} properties.
+ * <p>
+ * The limit starts at {@code initial-limit} and moves between {@code min-limit} and {@code max-limit}. It shrinks when
+ * the latency of recent requests rises above {@code rtt-tolerance} times the long-term latency, and grows while
+ * latency stays within it. {@code smoothing} is the fraction of each new estimate taken over, lower is steadier.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "adaptive-limit")
+public class AdaptiveLimitProperties {
+    private boolean enabled = true;
+
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 200;
+
+    /// how much slower recent requests may be than the long-term average before the limit shrinks
+    private double rttTolerance = 1.5;
+
+    private double smoothing = 0.2;
+
+    /// number of requests the long-term average latency spans
+    private int longWindow = 600;
+
+    /// Ant-style path patterns that are never limited, e.g. health checks and metrics scrapes
+    private List<String> excludedPaths = new ArrayList<>(List.of("/actuator/**"));
+}
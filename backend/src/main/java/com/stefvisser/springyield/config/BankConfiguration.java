@@ -1,10 +1,12 @@
 package com.stefvisser.springyield.config;
 
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 import java.math.BigDecimal;
 
 @Configuration
+@EnableConfigurationProperties({TransferRuleProperties.class, SyntheticDataProperties.class})
 public class BankConfiguration {
     public static final String BANK_IBAN = "NL69SPYD694206942069";
     public static final String BANK_NAME = "SPRINGYIELD Bank";
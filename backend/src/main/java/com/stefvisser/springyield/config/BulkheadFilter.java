@@ -0,0 +1,183 @@
+package com.stefvisser.springyield.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Isolates groups of endpoints from each other, so a burst in one group cannot take the threads and database
+ * connections another group needs, e.g. employee searches delaying customer transfers.
+ * <p>
+ * Every compartment is a fair {@link Semaphore} with {@code max-concurrent} permits and a bounded number of waiting
+ * requests. A request that finds the queue full is rejected at once, a queued request that gets no permit within
+ * {@code max-wait} is rejected too, both with 503 and a Retry-After header. Requests outside every compartment pass
+ * through untouched. Each compartment publishes its active and queued requests, saturation, queue wait and
+ * rejections under {@code springyield.bulkhead.*}.
+ * </p>
+ */
+@Component
+public class BulkheadFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(BulkheadFilter.class);
+
+    private final BulkheadProperties properties;
+    private final List<Compartment> compartments = new ArrayList<>();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /// A compartment with its permits, its number of waiting requests and its meters
+    private record Compartment(String name, BulkheadProperties.Compartment config, Semaphore permits,
+                               AtomicInteger queued, Timer waitTimer, Counter queueFullRejections,
+                               Counter timeoutRejections) {
+        int active() {
+            return config.getMaxConcurrent() - permits.availablePermits();
+        }
+    }
+
+    public BulkheadFilter(BulkheadProperties properties, MeterRegistry meterRegistry,
+                          @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        this.properties = properties;
+
+        int reservedConnections = 0;
+        for (Map.Entry<String, BulkheadProperties.Compartment> entry : properties.getCompartments().entrySet()) {
+            String name = entry.getKey();
+            BulkheadProperties.Compartment config = entry.getValue();
+            Compartment compartment = new Compartment(name, config,
+                    new Semaphore(Math.max(1, config.getMaxConcurrent()), true),
+                    new AtomicInteger(),
+                    Timer.builder("springyield.bulkhead.wait")
+                            .description("Time requests waited in the queue of a compartment")
+                            .tag("compartment", name)
+                            .register(meterRegistry),
+                    rejectionCounter(meterRegistry, name, "queue-full"),
+                    rejectionCounter(meterRegistry, name, "timeout"));
+            compartments.add(compartment);
+            reservedConnections += config.getMaxConcurrent();
+
+            Gauge.builder("springyield.bulkhead.active", compartment, Compartment::active)
+                    .description("Requests running in a compartment")
+                    .tag("compartment", name)
+                    .register(meterRegistry);
+            Gauge.builder("springyield.bulkhead.queued", compartment, c -> c.queued().get())
+                    .description("Requests waiting for a slot in a compartment")
+                    .tag("compartment", name)
+                    .register(meterRegistry);
+            Gauge.builder("springyield.bulkhead.saturation", compartment, c -> (double) c.active() / c.config().getMaxConcurrent())
+                    .description("Fraction of the concurrency limit of a compartment in use")
+                    .tag("compartment", name)
+                    .register(meterRegistry);
+        }
+
+        // A compartment can only protect the others if they cannot together drain the connection pool
+        if (properties.isEnabled() && reservedConnections >= connectionPoolSize)
+            log.warn("Bulkhead compartments allow {} concurrent requests, but the connection pool has only {} connections",
+                    reservedConnections, connectionPoolSize);
+    }
+
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Compartment compartment = properties.isEnabled() ? findCompartment(request) : null;
+        if (compartment == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (!acquire(compartment)) {
+            sendServiceUnavailable(response, compartment.name());
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            compartment.permits().release();
+        }
+    }
+
+    /**
+     * Takes a slot in the compartment, waiting in the queue when all slots are in use.
+     *
+     * @return true when the request may run, false when it was rejected
+     */
+    private boolean acquire(Compartment compartment) {
+        try {
+            // A zero timeout still respects fairness, unlike tryAcquire() it does not jump the queue
+            if (compartment.permits().tryAcquire(0, TimeUnit.NANOSECONDS))
+                return true;
+
+            if (compartment.queued().incrementAndGet() > compartment.config().getMaxQueue()) {
+                compartment.queued().decrementAndGet();
+                compartment.queueFullRejections().increment();
+                return false;
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (compartment.permits().tryAcquire(compartment.config().getMaxWait().toNanos(), TimeUnit.NANOSECONDS))
+                    return true;
+                compartment.timeoutRejections().increment();
+                return false;
+            } finally {
+                compartment.queued().decrementAndGet();
+                compartment.waitTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Compartment findCompartment(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Compartment compartment : compartments) {
+            String method = compartment.config().getMethod();
+            if (method != null && !method.isBlank() && !method.equalsIgnoreCase(request.getMethod()))
+                continue;
+            for (String pattern : compartment.config().getPaths())
+                if (pathMatcher.match(pattern, path))
+                    return compartment;
+        }
+        return null;
+    }
+
+    private static Counter rejectionCounter(MeterRegistry meterRegistry, String compartment, String reason) {
+        return Counter.builder("springyield.bulkhead.rejected")
+                .description("Requests rejected by a compartment")
+                .tag("compartment", compartment)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private void sendServiceUnavailable(HttpServletResponse response, String compartment) throws IOException {
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader("Retry-After", "1");
+
+        response.getWriter().write(objectMapper.writeValueAsString(Map.of(
+                "status", status.value(),
+                "error", status.getReasonPhrase(),
+                "message", "The " + compartment + " service is busy, please try again later"
+        )));
+    }
+}
@@ -0,0 +1,41 @@
+package com.stefvisser.springyield.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compartments isolated by {@link BulkheadFilter}, bound from the {@code bulkhead.*} properties.
+ * <p>
+ * Each compartment lets {@code max-concurrent} requests run at a time. Up to {@code max-queue} more wait at most
+ * {@code max-wait} for a slot, any further request is rejected right away. Every running request can hold a
+ * database connection, so the compartments together should stay below the connection pool size, leaving
+ * connections for requests outside any compartment.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "bulkhead")
+public class BulkheadProperties {
+    private boolean enabled = true;
+
+    /// compartments by name, a request belongs to the first compartment with a matching path
+    private Map<String, Compartment> compartments = new LinkedHashMap<>();
+
+    @Data
+    public static class Compartment {
+        /// Ant-style path patterns, e.g. /api/*/search
+        private List<String> paths = new ArrayList<>();
+
+        /// HTTP method this compartment applies to, blank for every method
+        private String method = "";
+
+        private int maxConcurrent = 10;
+        private int maxQueue = 20;
+        private Duration maxWait = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,53 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.services.SpendTrackingService;
+import com.stefvisser.springyield.services.TokenRevocationService;
+import com.stefvisser.springyield.utils.QueryStats;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics for our own code, scraped from {@code /actuator/prometheus}.
+ * <p>
+ * Service and repository search methods are timed with {@code @Timed}; the percentile histograms are enabled per
+ * metric name in application.properties. The in-memory caches are exposed as gauges that read their size on scrape.
+ * </p>
+ */
+@Configuration
+public class MetricsConfig {
+
+    /// Records the {@code @Timed} annotations on services and repositories
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public MeterBinder cacheMetrics(SpendTrackingService spendTrackingService, TokenRevocationService tokenRevocationService) {
+        return registry -> {
+            Gauge.builder("springyield.cache.size", spendTrackingService, SpendTrackingService::getTrackedAccountCount)
+                    .description("Entries held in memory by a cache")
+                    .tag("cache", "spend-tracking")
+                    .register(registry);
+            Gauge.builder("springyield.cache.size", tokenRevocationService, TokenRevocationService::getRecentRevocationCount)
+                    .description("Entries held in memory by a cache")
+                    .tag("cache", "token-revocation")
+                    .register(registry);
+        };
+    }
+
+    /// Hooks that count statements and JDBC time per request for {@link QueryCountFilter}
+    @Bean
+    public HibernatePropertiesCustomizer queryStatsHibernateCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryStats.Inspector());
+            properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, QueryStats.TimingListener.class.getName());
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.utils.QueryStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Counts the SQL statements and JDBC time of every HTTP request, to make N+1 lazy loading visible.
+ * <p>
+ * The counts are recorded as metrics per endpoint ({@code springyield.http.statements} and
+ * {@code springyield.http.jdbc}). With {@code query-inspection.expose-headers} enabled, which is meant for
+ * non-production profiles only since it buffers the response, they are also returned in the {@code X-Query-Count}
+ * and {@code X-Query-Time} headers. A request with more statements than {@code query-inspection.statement-budget}
+ * is logged together with the statement shapes that were repeated most.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class QueryCountFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(QueryCountFilter.class);
+    private static final int LOGGED_SHAPES = 5;
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final boolean exposeHeaders;
+    private final int statementBudget;
+
+    public QueryCountFilter(MeterRegistry meterRegistry,
+                            @Value("${query-inspection.enabled:true}") boolean enabled,
+                            @Value("${query-inspection.expose-headers:false}") boolean exposeHeaders,
+                            @Value("${query-inspection.statement-budget:20}") int statementBudget) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.exposeHeaders = exposeHeaders;
+        this.statementBudget = statementBudget;
+    }
+
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryStats stats = QueryStats.start();
+        // Headers have to be set before the body is written, so the body is held back; never for event streams
+        boolean buffer = exposeHeaders && !acceptsEventStream(request);
+        ContentCachingResponseWrapper bufferedResponse = buffer ? new ContentCachingResponseWrapper(response) : null;
+
+        try {
+            filterChain.doFilter(request, buffer ? bufferedResponse : response);
+        } finally {
+            QueryStats.stop();
+            record(request, stats);
+
+            if (buffer) {
+                bufferedResponse.setHeader("X-Query-Count", String.valueOf(stats.getStatements()));
+                bufferedResponse.setHeader("X-Query-Time", String.valueOf(TimeUnit.NANOSECONDS.toMillis(stats.getJdbcNanos())));
+                bufferedResponse.copyBodyToResponse();
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void record(HttpServletRequest request, QueryStats stats) {
+        // The matched pattern keeps the number of tag values bounded, unlike the raw URI with IBANs and IDs
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+
+        DistributionSummary.builder("springyield.http.statements")
+                .description("SQL statements executed per HTTP request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(stats.getStatements());
+        Timer.builder("springyield.http.jdbc")
+                .description("Time spent executing SQL statements per HTTP request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(stats.getJdbcNanos(), TimeUnit.NANOSECONDS);
+
+        if (statementBudget > 0 && stats.getStatements() > statementBudget)
+            log.warn("{} {} executed {} SQL statements (budget {}) in {} ms, most repeated:\n{}",
+                    request.getMethod(), request.getRequestURI(), stats.getStatements(), statementBudget,
+                    TimeUnit.NANOSECONDS.toMillis(stats.getJdbcNanos()), describeShapes(stats));
+    }
+
+    private static String describeShapes(QueryStats stats) {
+        return stats.getShapes().entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(LOGGED_SHAPES)
+                .map(shape -> "  " + shape.getValue() + "x " + shape.getKey())
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static boolean acceptsEventStream(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        return accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+    }
+}
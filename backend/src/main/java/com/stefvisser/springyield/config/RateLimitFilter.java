@@ -0,0 +1,201 @@
+package com.stefvisser.springyield.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throttles expensive endpoints, like login (BCrypt) and transfers (ledger), per client.
+ * <p>
+ * Every client gets a token bucket, stored as a single "theoretical arrival time" in an {@link AtomicLong}
+ * (the GCRA form of a token bucket), so a request is admitted or rejected with one compare-and-swap and no locks.
+ * Buckets live in a {@link ConcurrentHashMap}, which is already striped internally. A bucket whose arrival time
+ * has passed is full again and indistinguishable from a new one, so it can be evicted at any moment, which keeps
+ * memory bounded by {@code rate-limit.max-buckets}.
+ * </p>
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final long INITIAL_ARRIVAL_TIME = Long.MIN_VALUE;
+
+    private final RateLimitProperties properties;
+    private final List<CompiledRule> rules = new ArrayList<>();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final Counter overflowCounter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /// A rule with its emission interval and burst tolerance precomputed per role
+    private record CompiledRule(String name, RateLimitProperties.Rule rule, Limit defaultLimit,
+                                Map<UserRole, Limit> roleLimits, Counter rejections) {
+        Limit limitFor(UserRole role) {
+            return role == null ? defaultLimit : roleLimits.getOrDefault(role, defaultLimit);
+        }
+    }
+
+    /// interval: nanoseconds between two requests at the sustained rate, tolerance: how far ahead a burst may get
+    private record Limit(long interval, long tolerance) {
+        static Limit of(int capacity, long periodNanos) {
+            long interval = periodNanos / Math.max(1, capacity);
+            return new Limit(interval, interval * (Math.max(1, capacity) - 1));
+        }
+    }
+
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+
+        properties.getRules().forEach((name, rule) -> {
+            long periodNanos = rule.getPeriod().toNanos();
+            Map<UserRole, Limit> roleLimits = new EnumMap<>(UserRole.class);
+            rule.getRoleCapacity().forEach((role, capacity) -> roleLimits.put(role, Limit.of(capacity, periodNanos)));
+
+            rules.add(new CompiledRule(name, rule, Limit.of(rule.getCapacity(), periodNanos), roleLimits,
+                    Counter.builder("springyield.ratelimit.rejected")
+                            .description("Requests rejected by the rate limiter")
+                            .tag("rule", name)
+                            .register(meterRegistry)));
+        });
+
+        this.overflowCounter = Counter.builder("springyield.ratelimit.overflow")
+                .description("Requests admitted untracked because the bucket table was full")
+                .register(meterRegistry);
+        Gauge.builder("springyield.ratelimit.buckets", buckets, Map::size)
+                .description("Number of clients currently tracked by the rate limiter")
+                .register(meterRegistry);
+    }
+
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        CompiledRule compiledRule = properties.isEnabled() ? findRule(request) : null;
+        if (compiledRule == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        User user = authenticatedUser();
+        String bucketKey = (compiledRule.rule().getKey() == RateLimitProperties.KeyType.USER && user != null)
+                ? compiledRule.name() + ":user:" + user.getUserId()
+                : compiledRule.name() + ":ip:" + request.getRemoteAddr();
+
+        long waitNanos = tryAcquire(bucketKey, compiledRule.limitFor(user != null ? user.getRole() : null));
+        if (waitNanos > 0) {
+            compiledRule.rejections().increment();
+            sendTooManyRequests(response, waitNanos);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Takes a token from the bucket.
+     *
+     * @return 0 when the request is admitted, otherwise the nanoseconds until a token becomes available
+     */
+    private long tryAcquire(String bucketKey, Limit limit) {
+        AtomicLong bucket = bucketFor(bucketKey);
+        if (bucket == null)
+            return 0;
+
+        long now = System.nanoTime();
+        while (true) {
+            long arrivalTime = bucket.get();
+            long base = (arrivalTime == INITIAL_ARRIVAL_TIME || arrivalTime - now < 0) ? now : arrivalTime;
+            long ahead = base - now;
+            if (ahead > limit.tolerance())
+                return ahead - limit.tolerance();
+            if (bucket.compareAndSet(arrivalTime, base + limit.interval()))
+                return 0;
+        }
+    }
+
+    private AtomicLong bucketFor(String bucketKey) {
+        AtomicLong bucket = buckets.get(bucketKey);
+        if (bucket != null)
+            return bucket;
+
+        if (buckets.size() >= properties.getMaxBuckets()) {
+            evictIdleBuckets();
+            if (buckets.size() >= properties.getMaxBuckets()) {
+                // Fail open rather than locking out new clients, the overflow counter shows when this happens
+                overflowCounter.increment();
+                return null;
+            }
+        }
+        return buckets.computeIfAbsent(bucketKey, key -> new AtomicLong(INITIAL_ARRIVAL_TIME));
+    }
+
+    /**
+     * Removes buckets that have fully refilled. A request racing with the eviction of its bucket can at most
+     * receive one extra token, since the evicted bucket was full anyway.
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.eviction-interval:PT1M}")
+    public void evictIdleBuckets() {
+        if (!evicting.compareAndSet(false, true))
+            return;
+        try {
+            long now = System.nanoTime();
+            buckets.values().removeIf(bucket -> bucket.get() == INITIAL_ARRIVAL_TIME || bucket.get() - now <= 0);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private CompiledRule findRule(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (CompiledRule compiledRule : rules) {
+            RateLimitProperties.Rule rule = compiledRule.rule();
+            if (rule.getMethod() != null && !rule.getMethod().isBlank() && !rule.getMethod().equalsIgnoreCase(request.getMethod()))
+                continue;
+            if (pathMatcher.match(rule.getPath(), path))
+                return compiledRule;
+        }
+        return null;
+    }
+
+    private User authenticatedUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user)
+            return user;
+        return null;
+    }
+
+    private void sendTooManyRequests(HttpServletResponse response, long waitNanos) throws IOException {
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+
+        response.getWriter().write(objectMapper.writeValueAsString(Map.of(
+                "status", status.value(),
+                "error", status.getReasonPhrase(),
+                "message", "Too many requests, please try again later"
+        )));
+    }
+}
@@ -0,0 +1,54 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.models.UserRole;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rate limit rules applied by {@link RateLimitFilter}, bound from the {@code rate-limit.*} properties.
+ * <p>
+ * Each rule allows {@code capacity} requests per {@code period} for a single client, with bursts of up to
+ * {@code capacity} requests. Clients are identified by their IP address or, for authenticated routes, by their
+ * user id. The capacity can be raised or lowered per role with {@code role-capacity.<ROLE>}.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    private boolean enabled = true;
+
+    /// upper bound on the number of tracked clients, so a flood of distinct IPs cannot exhaust memory
+    private int maxBuckets = 100_000;
+
+    /// how often refilled (idle) buckets are evicted
+    private Duration evictionInterval = Duration.ofMinutes(1);
+
+    /// rules by name, the first rule matching the request path and method applies
+    private Map<String, Rule> rules = new LinkedHashMap<>();
+
+    public enum KeyType {
+        IP,
+        USER
+    }
+
+    @Data
+    public static class Rule {
+        /// Ant-style path pattern, e.g. /api/auth/login
+        private String path;
+
+        /// HTTP method this rule applies to, blank for every method
+        private String method = "POST";
+
+        /// USER falls back to IP for unauthenticated requests
+        private KeyType key = KeyType.IP;
+
+        private int capacity = 10;
+        private Duration period = Duration.ofMinutes(1);
+        private Map<UserRole, Integer> roleCapacity = new HashMap<>();
+    }
+}
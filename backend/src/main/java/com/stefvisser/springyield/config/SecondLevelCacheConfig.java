@@ -0,0 +1,40 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.utils.SeedingCompletedEvent;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Keeps the Hibernate second-level cache in line with data written around Hibernate.
+ * <p>
+ * Users, accounts and the accounts of a user are cached in the regions configured in {@code ehcache.xml}, and
+ * Hibernate updates them on every write it makes itself. Restoring a snapshot and generating the synthetic dataset
+ * write through JDBC, so whatever was cached before seeding completed is evicted before anything else reads it.
+ * Cache hits, misses and puts per region are published by Spring Boot under {@code hibernate.second.level.cache.*}
+ * and the query cache under {@code hibernate.cache.query.*}.
+ * </p>
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+    private static final Logger log = LoggerFactory.getLogger(SecondLevelCacheConfig.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public SecondLevelCacheConfig(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /// Runs before the other listeners, which read the seeded data through Hibernate
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(SeedingCompletedEvent.class)
+    public void evictAfterSeeding() {
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+        log.info("Second-level cache cleared after seeding");
+    }
+}
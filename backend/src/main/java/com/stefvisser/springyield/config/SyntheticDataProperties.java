@@ -0,0 +1,45 @@
+package com.stefvisser.springyield.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Size and shape of the dataset created by {@link com.stefvisser.springyield.utils.SyntheticDataGenerator},
+ * bound from the {@code synthetic-data.*} properties of the {@code loadtest} profile.
+ * <p>
+ * The same seed and sizes always produce the same rows, regardless of the number of threads.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "synthetic-data")
+public class SyntheticDataProperties {
+    private int users = 100_000;
+    private int accounts = 200_000;
+    private long transactions = 10_000_000L;
+    private long seed = 42L;
+
+    /// transactions are spread over this many days before now, with a daily and weekly rhythm
+    private int historyDays = 365;
+
+    /// fraction of the accounts that are "hot" (merchants, salary payers) ...
+    private double hotAccountShare = 0.01;
+
+    /// ... and the fraction of all transfers that involves one of them
+    private double hotTrafficShare = 0.3;
+
+    /// rows generated and loaded per task, each task uses its own random stream derived from the seed
+    private int chunkSize = 50_000;
+
+    /// generator threads, 0 uses one per core
+    private int threads = 0;
+
+    /// how rows are loaded into the database
+    private Loader loader = Loader.JDBC;
+
+    public enum Loader {
+        /// batched JDBC inserts, works on every database
+        JDBC,
+        /// chunks are written to CSV files and loaded with H2's CSVREAD, the fastest option on H2
+        CSV
+    }
+}
@@ -0,0 +1,47 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.models.AccountType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transfer validation rules, bound from the {@code transfer-rules.*} properties.
+ * <p>
+ * {@code pipelines.<ACCOUNT_TYPE>} lists the rules checked for transfers from an account of that type, in order.
+ * The first rule that rejects the transfer determines the error, so cheap and common rejections go first.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "transfer-rules")
+public class TransferRuleProperties {
+    public static final List<String> DEFAULT_PIPELINE = List.of(
+            "savings-owner",
+            "positive-amount",
+            "absolute-limit",
+            "balance-floor",
+            "daily-limit",
+            "weekly-limit",
+            "monthly-limit",
+            "velocity",
+            "blocklist"
+    );
+
+    /// rule names per account type of the sending account, types without an entry use the default pipeline
+    private Map<AccountType, List<String>> pipelines = new EnumMap<>(AccountType.class);
+
+    /// max external transfers per account within a rolling day, 0 disables the velocity rule
+    private int maxTransfersPerDay = 100;
+
+    /// IBANs that may not receive transfers, e.g. accounts under investigation
+    private Set<String> blockedIbans = new HashSet<>();
+
+    public List<String> pipelineFor(AccountType accountType) {
+        return pipelines.getOrDefault(accountType, DEFAULT_PIPELINE);
+    }
+}
@@ -1,8 +1,13 @@
 package com.stefvisser.springyield.config;
 
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
 import com.stefvisser.springyield.security.JwtAuthenticationFilter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -11,13 +16,46 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties({RateLimitProperties.class, BulkheadProperties.class, AdaptiveLimitProperties.class})
 public class WebSecurityConfig {
     private final AccountTypeFilter accountTypeFilter;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final RateLimitFilter rateLimitFilter;
+    private final BulkheadFilter bulkheadFilter;
+    private final AdaptiveLimitFilter adaptiveLimitFilter;
 
-    public WebSecurityConfig(AccountTypeFilter accountTypeFilter, JwtAuthenticationFilter jwtAuthenticationFilter) {
+    public WebSecurityConfig(AccountTypeFilter accountTypeFilter, JwtAuthenticationFilter jwtAuthenticationFilter, RateLimitFilter rateLimitFilter,
+                             BulkheadFilter bulkheadFilter, AdaptiveLimitFilter adaptiveLimitFilter) {
         this.accountTypeFilter = accountTypeFilter;
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+        this.rateLimitFilter = rateLimitFilter;
+        this.bulkheadFilter = bulkheadFilter;
+        this.adaptiveLimitFilter = adaptiveLimitFilter;
+    }
+
+    /// Only run the rate limiter inside the security chain, where the authenticated user is known
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter filter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    /// Like the rate limiter, the bulkheads only run inside the security chain, after it so throttled requests never take a slot
+    @Bean
+    public FilterRegistrationBean<BulkheadFilter> bulkheadFilterRegistration(BulkheadFilter filter) {
+        FilterRegistrationBean<BulkheadFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    /// The adaptive limit runs inside the security chain too, after the bulkheads so queued requests hold no slot
+    /// and their queue wait is not sampled as latency. A shed request still pays for authentication and the rate limit.
+    @Bean
+    public FilterRegistrationBean<AdaptiveLimitFilter> adaptiveLimitFilterRegistration(AdaptiveLimitFilter filter) {
+        FilterRegistrationBean<AdaptiveLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
     }
 
     // JWT token validation and role-based access control
@@ -32,6 +70,11 @@ public class WebSecurityConfig {
                                 "/api-docs/**",
                                 "/v3/api-docs/**"
                         ).permitAll()
+                        // Probes and the metrics scrape, nginx only proxies /api/ so these are not reachable publicly
+                        .requestMatchers("/actuator/health/**", "/actuator/prometheus").permitAll()
+                        // Slow operations show who searched for what, admins only
+                        .requestMatchers("/actuator/slowoperations").access((authentication, context) -> new AuthorizationDecision(
+                                authentication.get().getPrincipal() instanceof User user && user.getRole() == UserRole.ADMIN))
                         // Allow OPTIONS requests for CORS preflight
                         .requestMatchers(org.springframework.http.HttpMethod.OPTIONS, "/**").permitAll()
                         .requestMatchers("/api/**").authenticated() // All other API endpoints require authentication
@@ -49,7 +92,14 @@ public class WebSecurityConfig {
                 .httpBasic(httpBasic -> httpBasic.disable())
                 // Add JWT filter before the account type filter
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
-                .addFilterBefore(accountTypeFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(accountTypeFilter, UsernamePasswordAuthenticationFilter.class)
+                // Rate limit after authentication, so transfers can be limited per user instead of per IP
+                .addFilterAfter(rateLimitFilter, UsernamePasswordAuthenticationFilter.class)
+                // Bulkheads after that, a request only holds a slot while it is actually handled
+                .addFilterAfter(bulkheadFilter, RateLimitFilter.class)
+                // Adaptive limit last, so requests waiting in a bulkhead queue hold no slot and their wait is not
+                // taken for server latency, which would let a burst in one compartment shed every other request
+                .addFilterAfter(adaptiveLimitFilter, BulkheadFilter.class);
 
         return http.build();
     }
@@ -82,4 +82,30 @@ public class AccountController {
             return ResponseEntity.status(e.getStatusCode()).body(e.getReason());
         }
     }
+
+    /**
+     * Updates the rolling weekly and monthly spend limits for a specific account.
+     *
+     * @param execUser the user executing the request
+     * @param accountId the ID of the account to update
+     * @param limitsDto the DTO containing the new spend limits, null removes a limit
+     * @return ResponseEntity with updated account profile or error message
+     */
+    @PutMapping("/{accountId}/spend-limits")
+    public ResponseEntity<?> updateSpendLimits(
+            @AuthenticationPrincipal User execUser,
+            @PathVariable Long accountId,
+            @RequestBody SpendLimitsDto limitsDto) {
+        try {
+            Account updatedAccount = accountService.updateSpendLimits(
+                    execUser, accountId,
+                    limitsDto.getWeeklyLimit(),
+                    limitsDto.getMonthlyLimit()
+            );
+            return ResponseEntity.ok(AccountProfileDto.wrap(updatedAccount));
+
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(e.getReason());
+        }
+    }
 }
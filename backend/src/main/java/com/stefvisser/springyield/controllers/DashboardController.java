@@ -0,0 +1,49 @@
+package com.stefvisser.springyield.controllers;
+
+import com.stefvisser.springyield.dto.DashboardDto;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.services.DashboardService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * REST controller for the customer dashboard.
+ * <p>
+ * Returns the profile, the accounts and the recent transactions of the authenticated user in one response, instead
+ * of one request for the profile and two for every account. Mapped to the "/api/dashboard" path.
+ * </p>
+ */
+@RestController
+@RequestMapping("/api/dashboard")
+public class DashboardController {
+
+    private final DashboardService dashboardService;
+
+    public DashboardController(DashboardService dashboardService) {
+        this.dashboardService = dashboardService;
+    }
+
+    /**
+     * Retrieves the dashboard of the authenticated user.
+     * <p>
+     * When not every part could be fetched in time the response is still 200, with the missing parts listed
+     * in the "missing" field and "complete" set to false.
+     * </p>
+     *
+     * @param execUser     the authenticated user performing the request
+     * @param transactions the number of recent transactions per account (defaults to 5)
+     * @return ResponseEntity containing the dashboard
+     */
+    @GetMapping
+    public ResponseEntity<?> getDashboard(@AuthenticationPrincipal User execUser,
+                                          @RequestParam(defaultValue = "5") int transactions) {
+        try {
+            DashboardDto dashboard = dashboardService.getDashboard(execUser, transactions);
+            return ResponseEntity.ok(dashboard);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(e.getReason());
+        }
+    }
+}
@@ -5,12 +5,15 @@ import com.stefvisser.springyield.dto.PaginatedDataDto;
 import com.stefvisser.springyield.models.Transaction;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.services.TransactionService;
+import com.stefvisser.springyield.services.TransactionStreamService;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -20,9 +23,11 @@ import java.util.List;
 @RequestMapping("/api/transactions")
 public class TransactionController {
     private final TransactionService transactionService;
+    private final TransactionStreamService transactionStreamService;
 
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService, TransactionStreamService transactionStreamService) {
         this.transactionService = transactionService;
+        this.transactionStreamService = transactionStreamService;
     }
 
     @GetMapping("/search")
@@ -72,6 +77,18 @@ public class TransactionController {
         }
     }
 
+    /// Server-sent events of new transactions of the account, a reconnecting client resumes with Last-Event-ID
+    @GetMapping(value = "/iban/{iban}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamTransactionsByIban(@AuthenticationPrincipal User execUser, @PathVariable String iban,
+                                                      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        try {
+            SseEmitter emitter = transactionStreamService.subscribe(execUser, iban, lastEventId);
+            return ResponseEntity.ok(emitter);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(e.getReason());
+        }
+    }
+
     @GetMapping("/reference/{reference}")
     public ResponseEntity<?> getTransactionsByReference(@AuthenticationPrincipal User execUser, @PathVariable String reference) {
         try {
@@ -32,6 +32,8 @@ public class AccountProfileDto {
     private BigDecimal dailyLimit;
     private BigDecimal absoluteLimit;
     private BigDecimal balanceLimit;
+    private BigDecimal weeklyLimit;
+    private BigDecimal monthlyLimit;
     private AccountStatus status;
 
     /**
@@ -52,6 +54,8 @@ public class AccountProfileDto {
         this.dailyLimit = account.getDailyLimit();
         this.absoluteLimit = account.getAbsoluteLimit();
         this.balanceLimit = account.getBalanceLimit();
+        this.weeklyLimit = account.getWeeklyLimit();
+        this.monthlyLimit = account.getMonthlyLimit();
         this.status = account.getStatus();
     }
 
@@ -0,0 +1,63 @@
+package com.stefvisser.springyield.dto;
+
+import com.stefvisser.springyield.models.AccountStatus;
+import com.stefvisser.springyield.models.AccountType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Data Transfer Object for the customer dashboard.
+ * <p>
+ * Combines the user profile, the balance of every account and the most recent transactions per account in one
+ * response, so the dashboard needs a single request instead of one per account. The parts are fetched in parallel
+ * within a deadline; parts that did not finish in time or failed are left empty and listed in {@link #missing}.
+ * </p>
+ */
+@Data
+@AllArgsConstructor
+public class DashboardDto {
+    /**
+     * The profile of the user, without accounts, null when it could not be fetched.
+     */
+    private UserProfileDto profile;
+
+    /**
+     * The accounts of the user, in the order of the user's account list.
+     */
+    private List<AccountSummary> accounts;
+
+    /**
+     * The parts that are missing, e.g. {@code "profile"} or {@code "transactions:<iban>"}, empty when complete.
+     */
+    private List<String> missing;
+
+    /**
+     * Whether every part of the dashboard was fetched.
+     */
+    public boolean isComplete() {
+        return missing.isEmpty();
+    }
+
+    /**
+     * One account on the dashboard with its most recent transactions.
+     * <p>
+     * The balance fields are null when the account could not be fetched in time, the transactions are null when
+     * they could not be fetched in time.
+     * </p>
+     */
+    @Data
+    @AllArgsConstructor
+    public static class AccountSummary {
+        private String iban;
+        private AccountType accountType;
+        private AccountStatus status;
+        private BigDecimal balance;
+        private BigDecimal balanceLimit;
+        private BigDecimal spendToday;
+        private BigDecimal dailyLimit;
+        private List<TransactionRequestDto> recentTransactions;
+    }
+}
@@ -0,0 +1,21 @@
+package com.stefvisser.springyield.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Data Transfer Object for the rolling outbound spend limits of an account.
+ * <p>
+ * A null limit means the account has no limit over that window.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendLimitsDto {
+    private BigDecimal weeklyLimit;
+    private BigDecimal monthlyLimit;
+}
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.stefvisser.springyield.dto.AccountProfileDto;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -13,6 +15,8 @@ import java.util.List;
 
 @Entity
 @Table(name = "accounts")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "accounts")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -51,10 +55,61 @@ public class Account {
     /// indicates if this account is active or has been deactivated (e.g., after user deletion)
     private AccountStatus status;
 
-    /// the amount of money that has been spent today (0:00 - 23:59)
+    /// the amount of money that has been spent on spendDay (0:00 - 23:59)
     private BigDecimal spendToday;
 
+    /// the day (epoch day) spendToday was counted on, a counter from an earlier day is rolled over lazily on use
+    private Long spendDay;
+
+    /// max amount of external transfers within a rolling 7 days, no limit when null
+    private BigDecimal weeklyLimit;
+
+    /// max amount of external transfers within a rolling 30 days, no limit when null
+    private BigDecimal monthlyLimit;
+
+    /// incremented on every update, a write based on an outdated read of the account is rejected
+    @JsonIgnore
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0 not null")
+    private Long version;
+
     @JsonIgnore
     @OneToMany(mappedBy = "fromAccount", cascade = CascadeType.ALL)
     private List<Transaction> transactions = new ArrayList<>();
+
+    /// Constructor without spendDay and weekly/monthly limits, spendToday is counted as today's spend
+    public Account(Long accountId, User user, String iban, LocalDate registrationDate, AccountType accountType,
+                   BigDecimal dailyLimit, BigDecimal absoluteLimit, BigDecimal balance, BigDecimal balanceLimit,
+                   AccountStatus status, BigDecimal spendToday, List<Transaction> transactions) {
+        this(accountId, user, iban, registrationDate, accountType, dailyLimit, absoluteLimit, balance, balanceLimit,
+                status, spendToday, LocalDate.now().toEpochDay(), null, null, null, transactions);
+    }
+
+    /// The amount spent today, a counter left over from an earlier day counts as nothing spent
+    public BigDecimal getSpendToday() {
+        return getSpendOn(LocalDate.now().toEpochDay());
+    }
+
+    /**
+     * Returns the amount spent on the given day.
+     *
+     * @param epochDay the day to get the spend for, as {@link LocalDate#toEpochDay()}
+     * @return the spend of that day, or zero if the counter belongs to another day
+     */
+    public BigDecimal getSpendOn(long epochDay) {
+        if (spendToday == null || spendDay == null || spendDay != epochDay)
+            return BigDecimal.ZERO;
+        return spendToday;
+    }
+
+    /**
+     * Adds an amount to the spend of the given day, rolling the counter over first if it belongs to an earlier day.
+     *
+     * @param epochDay the day the amount was spent on, as {@link LocalDate#toEpochDay()}
+     * @param amount   the amount to add
+     */
+    public void addSpend(long epochDay, BigDecimal amount) {
+        this.spendToday = getSpendOn(epochDay).add(amount);
+        this.spendDay = epochDay;
+    }
 }
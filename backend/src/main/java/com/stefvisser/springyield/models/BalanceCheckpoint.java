@@ -0,0 +1,31 @@
+package com.stefvisser.springyield.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Balance of an account at the close of a business day, written by the end-of-day run.
+ */
+@Entity
+@Table(name = "balance_checkpoints", uniqueConstraints = @UniqueConstraint(
+        name = "uk_balance_checkpoints_account_day", columnNames = {"account_id", "business_day"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long checkpointId;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(name = "business_day", nullable = false)
+    private LocalDate businessDay;
+
+    private BigDecimal balance;
+}
@@ -0,0 +1,64 @@
+package com.stefvisser.springyield.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of the end-of-day processing for a single business day.
+ * <p>
+ * Accounts are processed in chunks of ascending account IDs, {@code lastAccountId} is updated in the same database
+ * transaction as each chunk, so a run interrupted by a crash or restart resumes after the last committed chunk.
+ * </p>
+ * <p>
+ * The instance processing a run holds a lease on it, renewed with every chunk, so other instances leave the run
+ * alone until the lease has expired.
+ * </p>
+ */
+@Entity
+@Table(name = "end_of_day_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EndOfDayRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long runId;
+
+    /// the day that is closed by this run
+    @Column(unique = true, nullable = false)
+    private LocalDate businessDay;
+
+    @Enumerated(EnumType.STRING)
+    private EndOfDayStatus status;
+
+    /// every account with an ID up to and including this one has been processed
+    private long lastAccountId;
+
+    private long checkpointsWritten;
+
+    /// accounts whose daily spend counter was rolled over to the new day
+    private long countersReset;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    /// time spent processing, summed over every attempt when the run was resumed
+    private long durationMillis;
+
+    /// the instance that holds the lease on this run, null when no instance is processing it
+    private String owner;
+
+    /// the lease expires at this moment unless the owner renews it, after that any instance may take the run over
+    private LocalDateTime leaseUntil;
+
+    public EndOfDayRun(LocalDate businessDay) {
+        this.businessDay = businessDay;
+        this.status = EndOfDayStatus.RUNNING;
+        this.startedAt = LocalDateTime.now();
+    }
+}
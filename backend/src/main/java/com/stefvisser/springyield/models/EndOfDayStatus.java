@@ -0,0 +1,7 @@
+package com.stefvisser.springyield.models;
+
+public enum EndOfDayStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
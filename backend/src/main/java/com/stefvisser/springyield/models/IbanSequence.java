@@ -0,0 +1,21 @@
+package com.stefvisser.springyield.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Next unallocated position in the account number space of a bank code, shared by all backend nodes.
+ * Nodes reserve a block of positions at a time, so this row is only locked once per block.
+ */
+@Entity
+@Table(name = "iban_sequences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IbanSequence {
+
+    @Id
+    private String bankCode;
+
+    private long nextValue;
+}
@@ -0,0 +1,28 @@
+package com.stefvisser.springyield.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Revocation of all JWT tokens a user received up to a certain moment, e.g. after deletion or a role change.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = @Index(name = "idx_revoked_tokens_user_id", columnList = "user_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long revocationId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /// tokens of this user issued at or before this moment (epoch seconds, like the JWT "iat" claim) are rejected
+    private long revokedAt;
+
+    /// moment (epoch seconds) after which every token issued before revokedAt has expired, so the row can be purged
+    private long expiresAt;
+}
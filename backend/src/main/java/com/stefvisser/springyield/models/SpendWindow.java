@@ -0,0 +1,18 @@
+package com.stefvisser.springyield.models;
+
+/// Rolling windows over which outbound spend is tracked, counted in whole hours up to and including the current hour
+public enum SpendWindow {
+    DAY(24),
+    WEEK(24 * 7),
+    MONTH(24 * 30);
+
+    private final int hours;
+
+    SpendWindow(int hours) {
+        this.hours = hours;
+    }
+
+    public int getHours() {
+        return hours;
+    }
+}
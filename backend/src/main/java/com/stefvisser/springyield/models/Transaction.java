@@ -8,7 +8,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        // The postings of an account since a moment, for the closing balance of end-of-day checkpoints
+        @Index(name = "idx_transactions_from_account_timestamp", columnList = "from_account, timestamp"),
+        @Index(name = "idx_transactions_to_account_timestamp", columnList = "to_account, timestamp")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
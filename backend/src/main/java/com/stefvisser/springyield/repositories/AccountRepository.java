@@ -3,9 +3,17 @@ package com.stefvisser.springyield.repositories;
 import com.stefvisser.springyield.models.*;
 import com.stefvisser.springyield.dto.AccountProfileDto;
 import com.stefvisser.springyield.dto.PaginatedDataDto;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
@@ -18,6 +26,36 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
     Optional<Account> findByAccountId(Long accountId);
     Account findByIban(String iban);
 
+    /// Reads the account and locks its row until the transaction ends, so concurrent postings on it run one by one
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Account a where a.iban = :iban")
+    Account findByIbanForUpdate(@Param("iban") String iban);
+    boolean existsByIban(String iban);
+
+    @Query("select coalesce(max(a.accountId), 0) from Account a")
+    long findMaxAccountId();
+
+    @Query("select coalesce(sum(a.balance), 0) from Account a")
+    BigDecimal sumBalances();
+
+    /// Rolls daily spend counters left over from an earlier day over to the given day, for one range of account IDs
+    @Modifying
+    @Query("""
+            update Account a set a.spendToday = 0, a.spendDay = :today
+            where a.accountId > :fromAccountId and a.accountId <= :toAccountId
+              and (a.spendDay is null or a.spendDay < :today)
+            """)
+    int resetSpendCounters(@Param("today") long today,
+                           @Param("fromAccountId") long fromAccountId,
+                           @Param("toAccountId") long toAccountId);
+
+    /// Sets the version of accounts stored before accounts were versioned, Hibernate cannot update a null version
+    @Transactional
+    @Modifying
+    @Query("update Account a set a.version = 0 where a.version is null")
+    int initializeMissingVersions();
+
+    @Timed(value = "springyield.repository.search", extraTags = {"repository", "account"})
     default PaginatedDataDto<AccountProfileDto> search(String query, AccountType accountType, AccountStatus status, int limit, int offset) {
         if (limit <= 0 || offset < 0)
             throw new IllegalArgumentException("Limit must be greater than 0 and offset must be non-negative.");
@@ -1,7 +1,10 @@
 package com.stefvisser.springyield.repositories;
 
 import com.stefvisser.springyield.models.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -9,5 +12,8 @@ public interface AuthRepository extends JpaRepository<User, Integer> {
     /// Return status on whether a user with the given email exists in the database
     /// when creating a user
     boolean existsByEmail(String email);
+
+    /// Resolves the user of every authenticated request, cached in the second-level query cache
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     User findByEmail(String email);
 }
@@ -0,0 +1,47 @@
+package com.stefvisser.springyield.repositories;
+
+import com.stefvisser.springyield.models.BalanceCheckpoint;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BalanceCheckpointRepository extends JpaRepository<BalanceCheckpoint, Long> {
+    List<BalanceCheckpoint> findByAccountIdOrderByBusinessDayDesc(Long accountId);
+
+    /// Writes the balance of every account in the ID range as it was at the end of the business day: the current
+    /// balance with the postings made since dayEnd taken back out, so a run that starts late or is resumed the next
+    /// morning writes the same closing balance. Accounts that already have a checkpoint for the day are skipped, so a
+    /// chunk that is retried after a crash does not write duplicates. The query space tells Hibernate only this table
+    /// changes, otherwise the native insert would clear the whole second-level cache
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "balance_checkpoints"))
+    @Query(value = """
+            INSERT INTO balance_checkpoints (account_id, business_day, balance)
+            SELECT a.account_id, :businessDay,
+                   a.balance
+                   - COALESCE((SELECT SUM(t.transfer_amount) FROM transactions t
+                               WHERE t.to_account = a.iban AND t.timestamp >= :dayEnd), 0)
+                   + COALESCE((SELECT SUM(t.transfer_amount) FROM transactions t
+                               WHERE t.from_account = a.iban AND t.timestamp >= :dayEnd), 0)
+            FROM accounts a
+            WHERE a.account_id > :fromAccountId AND a.account_id <= :toAccountId
+              AND NOT EXISTS (
+                  SELECT 1 FROM balance_checkpoints c
+                  WHERE c.account_id = a.account_id AND c.business_day = :businessDay
+              )
+            """, nativeQuery = true)
+    int insertCheckpoints(@Param("businessDay") LocalDate businessDay,
+                          @Param("dayEnd") LocalDateTime dayEnd,
+                          @Param("fromAccountId") long fromAccountId,
+                          @Param("toAccountId") long toAccountId);
+}
@@ -0,0 +1,43 @@
+package com.stefvisser.springyield.repositories;
+
+import com.stefvisser.springyield.models.EndOfDayRun;
+import com.stefvisser.springyield.models.EndOfDayStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EndOfDayRunRepository extends JpaRepository<EndOfDayRun, Long> {
+    Optional<EndOfDayRun> findByBusinessDay(LocalDate businessDay);
+
+    List<EndOfDayRun> findByStatusNotOrderByBusinessDayAsc(EndOfDayStatus status);
+
+    Optional<EndOfDayRun> findFirstByStatusOrderByBusinessDayDesc(EndOfDayStatus status);
+
+    /// Takes the lease on an unfinished run, unless another instance holds a lease on it that has not expired yet
+    @Modifying
+    @Query("""
+            update EndOfDayRun r
+            set r.owner = :owner, r.leaseUntil = :leaseUntil, r.status = com.stefvisser.springyield.models.EndOfDayStatus.RUNNING
+            where r.runId = :runId and r.status <> com.stefvisser.springyield.models.EndOfDayStatus.COMPLETED
+              and (r.owner is null or r.owner = :owner or r.leaseUntil is null or r.leaseUntil < :now)
+            """)
+    int claim(@Param("runId") long runId,
+              @Param("owner") String owner,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("now") LocalDateTime now);
+
+    /// Extends the lease of the owner, returns 0 when another instance has taken the run over in the meantime
+    @Modifying
+    @Query("update EndOfDayRun r set r.leaseUntil = :leaseUntil where r.runId = :runId and r.owner = :owner")
+    int renewLease(@Param("runId") long runId,
+                   @Param("owner") String owner,
+                   @Param("leaseUntil") LocalDateTime leaseUntil);
+}
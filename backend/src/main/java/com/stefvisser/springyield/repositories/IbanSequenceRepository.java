@@ -0,0 +1,19 @@
+package com.stefvisser.springyield.repositories;
+
+import com.stefvisser.springyield.models.IbanSequence;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface IbanSequenceRepository extends JpaRepository<IbanSequence, String> {
+    /// Locks the sequence row until the surrounding transaction ends, so two nodes never reserve the same block
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from IbanSequence s where s.bankCode = :bankCode")
+    Optional<IbanSequence> findForUpdate(@Param("bankCode") String bankCode);
+}
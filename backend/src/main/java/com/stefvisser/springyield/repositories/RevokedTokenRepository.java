@@ -0,0 +1,19 @@
+package com.stefvisser.springyield.repositories;
+
+import com.stefvisser.springyield.models.RevokedToken;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+    /// Whether the user has a revocation covering a token issued at the given moment (epoch seconds)
+    boolean existsByUserIdAndRevokedAtGreaterThanEqual(Long userId, long issuedAt);
+
+    List<RevokedToken> findByExpiresAtGreaterThan(long now);
+
+    @Transactional
+    long deleteByExpiresAtLessThanEqual(long now);
+}
@@ -3,7 +3,11 @@ package com.stefvisser.springyield.repositories;
 import com.stefvisser.springyield.models.Transaction;
 import com.stefvisser.springyield.dto.PaginatedDataDto;
 import com.stefvisser.springyield.dto.TransactionRequestDto;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
@@ -21,8 +25,19 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     List<Transaction> findByFromAccount(String fromAccount);
     List<Transaction> findByReference(String reference);
     List<Transaction> findByFromAccountOrToAccount(String fromAccount, String toAccount);
+    List<Transaction> findByFromAccountOrToAccountOrderByTimestampDesc(String fromAccount, String toAccount, Limit limit);
     List<Transaction> findAll();
+    List<Transaction> findByTimestampAfter(LocalDateTime timestamp);
 
+    /// Transactions of an IBAN with an ID above the given one, in ID order, to resume a transaction stream
+    @Query("""
+            select t from Transaction t
+            where (t.fromAccount = :iban or t.toAccount = :iban) and t.transactionId > :afterId
+            order by t.transactionId
+            """)
+    List<Transaction> findByIbanAfter(@Param("iban") String iban, @Param("afterId") long afterId, Limit limit);
+
+    @Timed(value = "springyield.repository.search", extraTags = {"repository", "transaction"})
     default PaginatedDataDto<TransactionRequestDto> searchTransactions(
             String searchQuery,
             String type,
@@ -3,9 +3,13 @@ package com.stefvisser.springyield.repositories;
 import jakarta.validation.constraints.Email;
 import com.stefvisser.springyield.dto.PaginatedDataDto;
 import com.stefvisser.springyield.dto.UserProfileDto;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.QueryHint;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.models.UserRole;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Comparator;
@@ -21,10 +25,14 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     /// when creating a user
     boolean existsByEmail(String email);
 
+    /// Cached in the second-level query cache, invalidated by any write to the users table
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     User findByUserId(Long userId);
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     User findByEmail(String email);
 
+    @Timed(value = "springyield.repository.search", extraTags = {"repository", "user"})
     default List<User> findByName(String firstName, String lastName) {
         return this.findAll().stream().filter(user ->
                 user.getFirstName().toLowerCase(Locale.ROOT).contains(firstName.toLowerCase(Locale.ROOT))
@@ -32,6 +40,7 @@ public interface UserRepository extends JpaRepository<User, Integer> {
         ).toList();
     }
 
+    @Timed(value = "springyield.repository.search", extraTags = {"repository", "user"})
     default PaginatedDataDto<UserProfileDto> search(String query, UserRole role, int limit, int offset, boolean isAdmin) {
         if (limit <= 0 || offset < 0)
             throw new IllegalArgumentException("Limit must be greater than 0 and offset must be non-negative.");
@@ -0,0 +1,272 @@
+package com.stefvisser.springyield.security;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keyring holding the HMAC keys used to sign and verify JWT tokens.
+ * <p>
+ * Keys are loaded from {@code jwt.keyring.path}, one {@code <kid>.key} file per key, so a restart or a second
+ * backend node sharing the same directory keeps accepting tokens issued earlier. The newest key signs new tokens,
+ * older keys stay valid for verification until {@code jwt.keyring.verification-window} has passed since they were
+ * superseded. A token with a key ID the keyring does not know triggers a re-read of the directory, at most once per
+ * {@code jwt.keyring.unknown-kid-reload-interval}, so a key rotated by another node is accepted right away. When the
+ * path is left blank, the keyring only lives in memory (used by the tests).
+ * </p>
+ */
+@Component
+public class JwtKeyring {
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyring.class);
+    private static final String KEY_FILE_SUFFIX = ".key";
+
+    /// Immutable view of the keys, swapped as a whole so token verification never has to lock
+    private record KeySet(List<SigningKey> keys) {
+        SigningKey active() {
+            return keys.getLast();
+        }
+
+        int indexOf(String kid) {
+            for (int i = keys.size() - 1; i >= 0; i--) {
+                if (keys.get(i).kid().equals(kid))
+                    return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A single signing key together with its key ID and the moment it was created.
+     */
+    public record SigningKey(String kid, Instant createdAt, Key key) {
+    }
+
+    private final Path directory;
+    private final Duration verificationWindow;
+    private final Duration rotationInterval;
+    private final long unknownKidReloadNanos;
+    /// {@link System#nanoTime()} of the last reload triggered by an unknown key ID
+    private final AtomicLong lastUnknownKidReload;
+    private volatile KeySet keySet;
+
+    public JwtKeyring(@Value("${jwt.keyring.path:}") String path,
+                      @Value("${jwt.keyring.verification-window:PT1H}") Duration verificationWindow,
+                      @Value("${jwt.keyring.rotation-interval:P7D}") Duration rotationInterval,
+                      @Value("${jwt.keyring.unknown-kid-reload-interval:PT10S}") Duration unknownKidReloadInterval) {
+        this.directory = (path == null || path.isBlank()) ? null : Path.of(path);
+        this.verificationWindow = verificationWindow;
+        this.rotationInterval = rotationInterval;
+        this.unknownKidReloadNanos = unknownKidReloadInterval.toNanos();
+        this.lastUnknownKidReload = new AtomicLong(System.nanoTime() - unknownKidReloadNanos);
+        this.keySet = new KeySet(List.of());
+        reload();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Lookup
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the key that should be used to sign new tokens.
+     */
+    public SigningKey activeKey() {
+        return keySet.active();
+    }
+
+    /**
+     * Finds the key that may be used to verify a token with the given key ID. An unknown key ID may be one another
+     * node has just rotated to, so the key directory is re-read once, throttled, before the key ID is rejected.
+     *
+     * @param kid the key ID from the token header, tokens without one are checked against the active key
+     * @return the matching key, or null if the key is unknown or its verification window has passed
+     */
+    public Key verificationKey(String kid) {
+        KeySet current = keySet;
+        if (kid == null)
+            return current.active().key();
+
+        if (current.indexOf(kid) < 0 && reloadForUnknownKid())
+            current = keySet;
+        int i = current.indexOf(kid);
+        if (i < 0)
+            return null;
+
+        // The active key is always valid, older keys only until the window after their successor was created
+        List<SigningKey> keys = current.keys();
+        if (i == keys.size() - 1 || !isRetired(keys.get(i + 1), Instant.now()))
+            return keys.get(i).key();
+        return null;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Rotation
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new active key. Tokens signed with the previous key stay valid during the verification window.
+     */
+    public synchronized SigningKey rotate() {
+        SigningKey created = newKey();
+        if (directory != null)
+            writeKey(created);
+
+        List<SigningKey> keys = new ArrayList<>(keySet.keys());
+        keys.add(created);
+        keySet = new KeySet(prune(keys));
+        log.info("Rotated JWT signing key, new kid: {}", created.kid());
+        return created;
+    }
+
+    /**
+     * Re-reads the key directory, so keys rotated by another node are picked up, and rotates the active key when
+     * it is older than the rotation interval.
+     */
+    @Scheduled(fixedDelayString = "${jwt.keyring.refresh-interval:PT5M}", initialDelayString = "${jwt.keyring.refresh-interval:PT5M}")
+    public synchronized void reload() {
+        List<SigningKey> keys = directory == null ? new ArrayList<>(keySet.keys()) : readKeys();
+
+        if (keys.isEmpty() || keys.getLast().createdAt().plus(rotationInterval).isBefore(Instant.now())) {
+            keySet = new KeySet(keys.isEmpty() ? List.of() : List.copyOf(keys));
+            rotate();
+            return;
+        }
+        keySet = new KeySet(prune(keys));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Reloads for an unknown key ID unless that happened less than the interval ago, so a stream of tokens with
+    /// made-up key IDs costs at most one directory read per interval. Only the thread that claims the slot reloads.
+    private boolean reloadForUnknownKid() {
+        if (directory == null)
+            return false;
+        long now = System.nanoTime();
+        long last = lastUnknownKidReload.get();
+        if (now - last < unknownKidReloadNanos || !lastUnknownKidReload.compareAndSet(last, now))
+            return false;
+        reload();
+        return true;
+    }
+
+    /// A key is retired once its successor has been active for longer than the verification window
+    private boolean isRetired(SigningKey successor, Instant now) {
+        return successor.createdAt().plus(verificationWindow).isBefore(now);
+    }
+
+    /// Drops keys that can no longer verify any token, removing their files as well
+    private List<SigningKey> prune(List<SigningKey> keys) {
+        keys.sort(Comparator.comparing(SigningKey::createdAt).thenComparing(SigningKey::kid));
+        Instant now = Instant.now();
+
+        List<SigningKey> kept = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (i < keys.size() - 1 && isRetired(keys.get(i + 1), now)) {
+                deleteKey(keys.get(i));
+                continue;
+            }
+            kept.add(keys.get(i));
+        }
+        return List.copyOf(kept);
+    }
+
+    private SigningKey newKey() {
+        Instant createdAt = Instant.now();
+        String kid = Long.toString(createdAt.toEpochMilli(), 36) + "-"
+                + HexFormat.of().toHexDigits((short) ThreadLocalRandom.current().nextInt());
+        return new SigningKey(kid, createdAt, Keys.secretKeyFor(SignatureAlgorithm.HS256));
+    }
+
+    private List<SigningKey> readKeys() {
+        List<SigningKey> keys = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + KEY_FILE_SUFFIX)) {
+                for (Path file : files) {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        Properties properties = new Properties();
+                        properties.load(in);
+                        String fileName = file.getFileName().toString();
+                        keys.add(new SigningKey(
+                                fileName.substring(0, fileName.length() - KEY_FILE_SUFFIX.length()),
+                                Instant.parse(properties.getProperty("created")),
+                                Keys.hmacShaKeyFor(Base64.getDecoder().decode(properties.getProperty("secret")))
+                        ));
+                    } catch (RuntimeException e) {
+                        log.warn("Skipping unreadable JWT key file {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read JWT keyring from " + directory, e);
+        }
+        keys.sort(Comparator.comparing(SigningKey::createdAt).thenComparing(SigningKey::kid));
+        return keys;
+    }
+
+    private void writeKey(SigningKey signingKey) {
+        Properties properties = new Properties();
+        properties.setProperty("created", signingKey.createdAt().toString());
+        properties.setProperty("secret", Base64.getEncoder().encodeToString(signingKey.key().getEncoded()));
+
+        try {
+            Files.createDirectories(directory);
+            // Write to a temp file first, so other nodes never read a half-written key
+            Path temp = Files.createTempFile(directory, signingKey.kid(), ".tmp");
+            try {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException ignored) {
+                // Non-POSIX file system (e.g. Windows), rely on the directory permissions instead
+            }
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "SpringYield JWT signing key");
+            }
+
+            Path target = directory.resolve(signingKey.kid() + KEY_FILE_SUFFIX);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write JWT key " + signingKey.kid() + " to " + directory, e);
+        }
+    }
+
+    private void deleteKey(SigningKey signingKey) {
+        if (directory == null)
+            return;
+        try {
+            Files.deleteIfExists(directory.resolve(signingKey.kid() + KEY_FILE_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Could not delete retired JWT key {}: {}", signingKey.kid(), e.getMessage());
+        }
+    }
+}
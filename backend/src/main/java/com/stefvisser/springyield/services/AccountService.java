@@ -12,7 +12,9 @@ public interface AccountService {
     // API Methods
     PaginatedDataDto<AccountProfileDto> search(User execUser, String query, AccountType accountType, AccountStatus status, int limit, int offset);
     Account getAccountByIban(User execUser, String iban);
+    Account getAccountByIbanForUpdate(User execUser, String iban);
     Account updateBalanceLimits(User execUser, Long accountId, BigDecimal dailyLimit, BigDecimal absoluteLimit, BigDecimal balanceLimit);
+    Account updateSpendLimits(User execUser, Long accountId, BigDecimal weeklyLimit, BigDecimal monthlyLimit);
 
 
     // Non-API Methods (Less authentication required, since they are used internally)
@@ -8,10 +8,14 @@ import com.stefvisser.springyield.models.AccountStatus;
 import com.stefvisser.springyield.models.AccountType;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.repositories.AccountRepository;
-import org.iban4j.CountryCode;
-import org.iban4j.Iban;
+import com.stefvisser.springyield.utils.AccountCache;
+import com.stefvisser.springyield.utils.SearchCoalescer;
+import com.stefvisser.springyield.utils.SearchEvent;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
@@ -21,12 +25,24 @@ import java.util.List;
 import java.util.Objects;
 
 @Service
+@Timed(value = "springyield.service", extraTags = {"service", "account"})
 public class AccountServiceImpl implements AccountService {
 
     private final AccountRepository accountRepository;
+    private final IbanService ibanService;
+    private final SearchCoalescer searchCoalescer;
+    private final AccountCache accountCache;
 
-    public AccountServiceImpl(AccountRepository accountRepository) {
+    /// The normalized parameters of an account search, identical searches running at the same time are coalesced
+    private record SearchKey(String query, AccountType accountType, AccountStatus status, int limit, int offset) {
+    }
+
+    public AccountServiceImpl(AccountRepository accountRepository, IbanService ibanService, SearchCoalescer searchCoalescer,
+                              AccountCache accountCache) {
         this.accountRepository = accountRepository;
+        this.ibanService = ibanService;
+        this.searchCoalescer = searchCoalescer;
+        this.accountCache = accountCache;
     }
 
     // -----------------------------------------------------------------------------------------------------------------
@@ -58,13 +74,21 @@ public class AccountServiceImpl implements AccountService {
         if (offset < 0) offset = 0;
         if (query == null) query = "";
 
-        return accountRepository.search(query, accountType, status, limit, offset);
+        String searchQuery = query;
+        int pageLimit = limit;
+        int pageOffset = offset;
+        // Every employee sees the same results, so identical searches running at the same time share one execution
+        SearchKey key = new SearchKey(SearchCoalescer.normalize(searchQuery).replaceAll("\\s+", ""), accountType, status, pageLimit, pageOffset);
+        return searchCoalescer.coalesce("account", key, () -> SearchEvent.record("account", searchQuery, pageLimit, pageOffset,
+                () -> accountRepository.search(searchQuery, accountType, status, pageLimit, pageOffset)));
     }
 
     /**
      * Retrieves an account by its IBAN.
      * <p>
-     * This method allows users to retrieve account details using the IBAN.
+     * This method allows users to retrieve account details using the IBAN. The account may come from the
+     * {@link AccountCache}, as a copy that must not be changed or saved, use
+     * {@link #getAccountByIbanForUpdate(User, String)} to change an account.
      * </p>
      *
      * @param execUser the user executing the request
@@ -75,13 +99,34 @@ public class AccountServiceImpl implements AccountService {
         if (execUser == null)
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
 
-        Account account = accountRepository.findByIban(iban);
-        if (account == null)
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found with IBAN: " + iban);
+        Account account = accountCache.getOrLoad(iban, accountRepository::findByIban);
+        checkAccess(execUser, account, iban);
+        return account;
+    }
 
-        if (!Objects.equals(account.getUser().getUserId(), execUser.getUserId()) && !execUser.isEmployee())
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permission to view this account");
+    /**
+     * Retrieves an account by its IBAN from the database, to change its balance or spend.
+     * <p>
+     * The account is always read from the database, never from the cache, and the cached copy is checked against it.
+     * Within a transaction the row is locked until the transaction ends, so postings on the same account cannot
+     * overwrite each other's balance. Lock the account before anything else in the transaction reads it: a copy
+     * already in the session is not re-read, and is rejected as stale if a posting committed since. Outside a
+     * transaction only the version check in {@link #updateAccount(Account)} guards the update.
+     * </p>
+     *
+     * @param execUser the user executing the request
+     * @param iban the IBAN of the account to retrieve
+     * @return the Account object associated with the given IBAN
+     */
+    public Account getAccountByIbanForUpdate(User execUser, String iban) {
+        if (execUser == null)
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
 
+        Account account = TransactionSynchronizationManager.isActualTransactionActive()
+                ? accountRepository.findByIbanForUpdate(iban)
+                : accountRepository.findByIban(iban);
+        accountCache.refresh(account);
+        checkAccess(execUser, account, iban);
         return account;
     }
 
@@ -113,7 +158,43 @@ public class AccountServiceImpl implements AccountService {
         account.setAbsoluteLimit(absoluteLimit);
         account.setBalanceLimit(balanceLimit);
 
-        return accountRepository.save(account);
+        Account savedAccount = accountRepository.save(account);
+        accountCache.evict(savedAccount);
+        return savedAccount;
+    }
+
+    /**
+     * Updates the rolling weekly and monthly spend limits for a specific account.
+     * <p>
+     * These limits apply to external transfers on top of the daily limit. A null limit removes the limit.
+     * </p>
+     *
+     * @param execUser the user executing the request (must be an employee)
+     * @param accountId the ID of the account to update
+     * @param weeklyLimit the max amount of external transfers within a rolling 7 days
+     * @param monthlyLimit the max amount of external transfers within a rolling 30 days
+     * @return the updated Account object
+     */
+    @Transactional
+    public Account updateSpendLimits(User execUser, Long accountId, BigDecimal weeklyLimit, BigDecimal monthlyLimit) {
+        if (execUser == null)
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
+
+        if (!execUser.isEmployee())
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permission to update account limits");
+
+        if ((weeklyLimit != null && weeklyLimit.signum() < 0) || (monthlyLimit != null && monthlyLimit.signum() < 0))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Spend limits cannot be negative");
+
+        Account account = accountRepository.findByAccountId(accountId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found"));
+
+        account.setWeeklyLimit(weeklyLimit);
+        account.setMonthlyLimit(monthlyLimit);
+
+        Account savedAccount = accountRepository.save(account);
+        accountCache.evict(savedAccount);
+        return savedAccount;
     }
 
     // -----------------------------------------------------------------------------------------------------------------
@@ -123,7 +204,7 @@ public class AccountServiceImpl implements AccountService {
     /**
      * ONLY USED EXTERNALLY: Creates a new account for a user with the specified parameters.
      * <p>
-     * This method generates a random IBAN in the NL SPYD format and initializes the account with the provided
+     * This method allocates a unique IBAN in the NL SPYD format and initializes the account with the provided
      * parameters. The account is set to ACTIVE status and has an empty transaction list.
      * </p>
      *
@@ -137,18 +218,16 @@ public class AccountServiceImpl implements AccountService {
      */
     public Account createAccount(User user, AccountType accountType, BigDecimal dailyLimit,
                                  BigDecimal absoluteLimit, BigDecimal initialBalance, BigDecimal balanceLimit) {
-        // Generate NL SPYD format IBAN
-        String iban = new Iban.Builder()
-                .countryCode(CountryCode.NL)
-                .bankCode("SPYD")
-                .buildRandom()
-                .toFormattedString();
+        // Allocate NL SPYD format IBAN, skipping numbers taken by accounts created before the allocator existed
+        String iban = ibanService.nextIban();
+        while (accountRepository.existsByIban(iban))
+            iban = ibanService.nextIban();
 
         // Create account with defaults for id, date, status, and transaction list
         Account account = new Account(
                 null,         // id always null for new accounts
                 user,
-                iban,                  // generated IBAN
+                iban,                  // allocated IBAN
                 LocalDate.now(),       // always current date (UNUSED IN FINAL BUILD)
                 accountType,           // specified account type
                 dailyLimit,
@@ -166,13 +245,21 @@ public class AccountServiceImpl implements AccountService {
     /**
      * Updates an existing account in the repository.
      * <p>
-     * This method is used to persist changes made to an account entity.
+     * This method is used to persist changes made to an account entity. The change is flushed right away, so an
+     * account that was changed by someone else since it was read is rejected here, with 409, instead of at commit.
      * </p>
      *
      * @param account the account to be updated
      */
     public void updateAccount(Account account) {
-        accountRepository.save(account);
+        try {
+            Account savedAccount = accountRepository.save(account);
+            accountRepository.flush();
+            accountCache.evict(savedAccount);
+        } catch (OptimisticLockingFailureException e) {
+            accountCache.evict(account);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Account was changed by another transaction, please try again");
+        }
     }
 
     /**
@@ -184,6 +271,19 @@ public class AccountServiceImpl implements AccountService {
      * @param accounts the list of accounts to be saved
      */
     public void saveAll(List<Account> accounts) {
-        accountRepository.saveAll(accounts);
+        List<Account> savedAccounts = accountRepository.saveAll(accounts);
+        savedAccounts.forEach(accountCache::evict);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static void checkAccess(User execUser, Account account, String iban) {
+        if (account == null)
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found with IBAN: " + iban);
+
+        if (!Objects.equals(account.getUser().getUserId(), execUser.getUserId()) && !execUser.isEmployee())
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permission to view this account");
     }
 }
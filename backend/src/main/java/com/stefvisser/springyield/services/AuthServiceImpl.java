@@ -3,37 +3,56 @@ package com.stefvisser.springyield.services;
 import com.stefvisser.springyield.dto.AuthSessionDto;
 import com.stefvisser.springyield.dto.UserLoginDto;
 import com.stefvisser.springyield.dto.UserSignupDto;
-import com.stefvisser.springyield.models.Account;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.models.UserRole;
 import com.stefvisser.springyield.repositories.AuthRepository;
+import com.stefvisser.springyield.security.JwtKeyring;
+import com.stefvisser.springyield.utils.JwtVerificationEvent;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import com.stefvisser.springyield.dto.UserProfileDto;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.userdetails.UserDetails;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
-import java.math.BigDecimal;
 import java.security.Key;
-import java.time.LocalDate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
 
 @Primary
 @Service
+@Timed(value = "springyield.service", extraTags = {"service", "auth"})
 public class AuthServiceImpl implements AuthService {
-    private final Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+    /// Tokens are valid for 15m, upon page transition is checked if the token is still valid
+    public static final Duration TOKEN_VALIDITY = Duration.ofMinutes(15);
+
     private final AuthRepository authRepository;
+    private final JwtKeyring keyring;
+    private final TokenRevocationService tokenRevocationService;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
-    public AuthServiceImpl(AuthRepository authRepository) {
+    /// Resolves the verification key from the "kid" header, so tokens signed before a restart or key rotation stay valid
+    private final SigningKeyResolverAdapter signingKeyResolver = new SigningKeyResolverAdapter() {
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            Key key = keyring.verificationKey(header.getKeyId());
+            if (key == null)
+                throw new io.jsonwebtoken.security.SignatureException("Unknown or retired signing key: " + header.getKeyId());
+            return key;
+        }
+    };
+
+    public AuthServiceImpl(AuthRepository authRepository, JwtKeyring keyring, TokenRevocationService tokenRevocationService) {
         this.authRepository = authRepository;
+        this.keyring = keyring;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     public AuthSessionDto signup(UserSignupDto dto) {
@@ -70,32 +89,9 @@ public class AuthServiceImpl implements AuthService {
             // If the user does not exist, throw an unauthorized exception
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid email or password");
 
-        // Check if we need to reset spendToday values for accounts
-        checkDailySpendLimitReset(user);
-
         return createNewLoginSession(user);
     }
 
-    /**
-     * Reset the spendToday values of all accounts if the user hasn't logged in today
-     */
-    private void checkDailySpendLimitReset(User user) {
-        LocalDate today = LocalDate.now();
-        LocalDate lastLogin = user.getLastLoginDate();
-
-        // If this is the first login or user logged in on a different day
-        if (lastLogin == null || !lastLogin.equals(today)) {
-            // Reset spendToday for all accounts
-            for (Account account : user.getAccounts()) {
-                account.setSpendToday(BigDecimal.ZERO);
-            }
-
-            // Update the last login date
-            user.setLastLoginDate(today);
-            authRepository.save(user);
-        }
-    }
-
     // Create a new login session for the user, used by signup and login
     private AuthSessionDto createNewLoginSession(User user) {
         UserProfileDto userProfile = new UserProfileDto(user);
@@ -106,13 +102,15 @@ public class AuthServiceImpl implements AuthService {
     //------------------------------------------------------------------------------------------------------------------
 
     public String generateJwtToken(UserProfileDto user) {
+        JwtKeyring.SigningKey signingKey = keyring.activeKey();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.kid())
                 .setSubject(user.getEmail())
                 .claim("userId", user.getUserId())
                 .claim("role", user.getRole())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 15)) // valid for 15m, upon page transition is checked if the token is still valid
-                .signWith(key)
+                .setExpiration(new Date(System.currentTimeMillis() + TOKEN_VALIDITY.toMillis()))
+                .signWith(signingKey.key())
                 .compact();
     }
 
@@ -121,13 +119,36 @@ public class AuthServiceImpl implements AuthService {
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
+        // Recorded as a JFR event, committed only when a recording has the event enabled
+        JwtVerificationEvent event = new JwtVerificationEvent();
+        event.begin();
+        String outcome = JwtVerificationEvent.INVALID;
         try {
-            final String username = extractUsername(token);
-            return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+            // Parse once, the signature, subject, expiry and revocation checks all use the same claims
+            final Jws<Claims> jws = parseToken(token);
+            final Claims claims = jws.getBody();
+            event.kid = jws.getHeader().getKeyId();
+
+            if (!claims.getSubject().equals(userDetails.getUsername()))
+                return false;
+            if (claims.getExpiration().before(new Date())) {
+                outcome = JwtVerificationEvent.EXPIRED;
+                return false;
+            }
+            if (tokenRevocationService.isRevoked(claims.get("userId", Long.class), claims.getIssuedAt())) {
+                outcome = JwtVerificationEvent.REVOKED;
+                return false;
+            }
+            outcome = JwtVerificationEvent.VALID;
+            return true;
         } catch (io.jsonwebtoken.ExpiredJwtException e) {
+            outcome = JwtVerificationEvent.EXPIRED;
             return false; // Token is expired, so it's not valid
         } catch (Exception e) {
             return false; // Any other exception means the token is invalid
+        } finally {
+            event.outcome = outcome;
+            event.commit();
         }
     }
 
@@ -137,18 +158,13 @@ public class AuthServiceImpl implements AuthService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parseToken(token).getBody();
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private Jws<Claims> parseToken(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKeyResolver(signingKeyResolver)
+                .build()
+                .parseClaimsJws(token);
     }
 }
@@ -0,0 +1,9 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.DashboardDto;
+import com.stefvisser.springyield.models.User;
+
+public interface DashboardService {
+    // Profile, balances and recent transactions of the user's accounts, fetched in parallel within a deadline
+    DashboardDto getDashboard(User execUser, int transactionLimit);
+}
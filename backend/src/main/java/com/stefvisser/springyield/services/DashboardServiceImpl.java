@@ -0,0 +1,205 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.DashboardDto;
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.dto.UserProfileDto;
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.User;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Builds the customer dashboard from the profile, every account and the recent transactions of every account.
+ * <p>
+ * Every part runs on its own virtual thread in a short read-only transaction, so the dashboard takes as long as the
+ * slowest part instead of the sum of all parts. Parts still running at the {@code dashboard.timeout} deadline are
+ * cancelled and reported as missing, as are parts that failed, and the dashboard is returned with what was fetched.
+ * Statements of the parts run on other threads and are not counted in the request's {@code QueryStats}.
+ * </p>
+ * <p>
+ * Each running part holds a database connection, so a single dashboard runs at most
+ * {@code dashboard.max-parallel-parts} parts at once; its other parts wait for a slot until the deadline. The limit is
+ * per dashboard, so concurrent dashboards do not queue behind each other's parts; the number of dashboards running
+ * at once, and with it the connections they hold, is bounded by the dashboard bulkhead compartment.
+ * </p>
+ */
+@Service
+@Timed(value = "springyield.service", extraTags = {"service", "dashboard"})
+public class DashboardServiceImpl implements DashboardService {
+    private static final Logger log = LoggerFactory.getLogger(DashboardServiceImpl.class);
+
+    private static final String PROFILE = "profile";
+    private static final String ACCOUNT = "account:";
+    private static final String TRANSACTIONS = "transactions:";
+
+    private final UserService userService;
+    private final AccountService accountService;
+    private final TransactionService transactionService;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration timeout;
+    private final int maxTransactions;
+    private final int maxParallelParts;
+    private final Counter partialCounter;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dashboard-", 0).factory());
+
+    public DashboardServiceImpl(UserService userService,
+                                AccountService accountService,
+                                TransactionService transactionService,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${dashboard.timeout:PT2S}") Duration timeout,
+                                @Value("${dashboard.max-transactions:50}") int maxTransactions,
+                                @Value("${dashboard.max-parallel-parts:6}") int maxParallelParts) {
+        this.userService = userService;
+        this.accountService = accountService;
+        this.transactionService = transactionService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.timeout = timeout;
+        this.maxTransactions = maxTransactions;
+        this.maxParallelParts = Math.max(1, maxParallelParts);
+        this.partialCounter = Counter.builder("springyield.dashboard.partial")
+                .description("Dashboards returned with one or more parts missing")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Retrieves the dashboard of the executing user.
+     *
+     * @param execUser         The user executing the request (should be an authenticated user).
+     * @param transactionLimit The number of recent transactions per account, capped at dashboard.max-transactions.
+     * @return The dashboard, with the parts that did not finish in time listed as missing.
+     */
+    public DashboardDto getDashboard(User execUser, int transactionLimit) {
+        if (execUser == null)
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
+
+        int limit = Math.clamp(transactionLimit, 0, maxTransactions);
+        // The principal was loaded for this request, its account list decides which accounts are fetched
+        List<Account> accounts = List.copyOf(execUser.getAccounts());
+
+        Map<String, Supplier<?>> parts = new LinkedHashMap<>();
+        parts.put(PROFILE, () -> new UserProfileDto().withoutAccounts(userService.getUserById(execUser, execUser.getUserId())));
+        for (Account account : accounts) {
+            String iban = account.getIban();
+            parts.put(ACCOUNT + iban, () -> accountService.getAccountByIban(execUser, iban));
+            if (limit > 0)
+                parts.put(TRANSACTIONS + iban, () -> transactionService.getRecentTransactionsByIban(execUser, iban, limit).stream()
+                        .map(TransactionRequestDto::wrap)
+                        .toList());
+        }
+
+        List<String> missing = new ArrayList<>();
+        Map<String, Object> results = fetchAll(parts, missing);
+
+        List<DashboardDto.AccountSummary> summaries = accounts.stream()
+                .map(account -> summarize(account, results, limit))
+                .toList();
+        if (!missing.isEmpty())
+            partialCounter.increment();
+        return new DashboardDto((UserProfileDto) results.get(PROFILE), summaries, missing);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Runs every part on its own virtual thread and waits until all are done or the deadline passed
+    private Map<String, Object> fetchAll(Map<String, Supplier<?>> parts, List<String> missing) {
+        // One permit per part holding a connection, for the parts of this dashboard only
+        Semaphore permits = new Semaphore(maxParallelParts);
+        List<Callable<Object>> tasks = parts.values().stream()
+                .map(part -> (Callable<Object>) () -> fetchPart(part, permits))
+                .toList();
+
+        List<Future<Object>> futures;
+        try {
+            // Cancels, and so interrupts, every part that is still running at the deadline
+            futures = executor.invokeAll(tasks, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Dashboard request was interrupted");
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        int i = 0;
+        for (String name : parts.keySet()) {
+            Future<Object> future = futures.get(i++);
+            if (future.isCancelled()) {
+                missing.add(name);
+                continue;
+            }
+            try {
+                results.put(name, future.get());
+            } catch (ExecutionException e) {
+                log.debug("Dashboard part {} failed", name, e.getCause());
+                missing.add(name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                missing.add(name);
+            }
+        }
+        return results;
+    }
+
+    /// Waits for a slot, interrupted when the deadline passes, and fetches the part in its own transaction
+    private Object fetchPart(Supplier<?> part, Semaphore permits) throws InterruptedException {
+        permits.acquire();
+        try {
+            return readOnlyTransaction.execute(status -> part.get());
+        } finally {
+            permits.release();
+        }
+    }
+
+    /// Combines the fetched account and transactions, the IBAN and type of the principal's account are always known
+    @SuppressWarnings("unchecked")
+    private DashboardDto.AccountSummary summarize(Account known, Map<String, Object> results, int limit) {
+        Account account = (Account) results.get(ACCOUNT + known.getIban());
+        List<TransactionRequestDto> transactions = limit > 0
+                ? (List<TransactionRequestDto>) results.get(TRANSACTIONS + known.getIban())
+                : List.of();
+
+        if (account == null)
+            return new DashboardDto.AccountSummary(known.getIban(), known.getAccountType(), null, null, null, null, null, transactions);
+        return new DashboardDto.AccountSummary(
+                account.getIban(),
+                account.getAccountType(),
+                account.getStatus(),
+                account.getBalance(),
+                account.getBalanceLimit(),
+                account.getSpendToday(),
+                account.getDailyLimit(),
+                transactions
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.EndOfDayRun;
+
+import java.time.LocalDate;
+
+public interface EndOfDayService {
+    // Close a business day: write balance checkpoints and roll daily counters over, resuming an interrupted run
+    EndOfDayRun run(LocalDate businessDay);
+
+    // Close the previous day and any day missed since the last completed one, after finishing interrupted runs
+    void runScheduled();
+}
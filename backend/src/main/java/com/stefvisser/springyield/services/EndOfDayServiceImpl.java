@@ -0,0 +1,263 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.EndOfDayRun;
+import com.stefvisser.springyield.models.EndOfDayStatus;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.BalanceCheckpointRepository;
+import com.stefvisser.springyield.repositories.EndOfDayRunRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * End-of-day processing: writes a balance checkpoint for every account and rolls daily spend counters over.
+ * <p>
+ * Accounts are processed in ranges of {@code end-of-day.chunk-size} account IDs. Each range is handled by two
+ * set-based statements and a progress update in one short database transaction, so online transfers only wait
+ * for the rows of a single chunk and a crashed run continues after the last committed chunk. Both statements are
+ * idempotent, a chunk that is retried does not write duplicate checkpoints or reset today's spend.
+ * </p>
+ * <p>
+ * A checkpoint holds the balance at midnight after the business day, not the balance when its chunk happened to
+ * run: postings made since midnight are taken back out of the current balance.
+ * </p>
+ * <p>
+ * Several instances may run the schedule against one database. An instance only processes a run after taking its
+ * lease with a conditional update, and renews the lease with every chunk, so a run in progress elsewhere is skipped
+ * and a run whose instance died is taken over once {@code end-of-day.lease} has passed.
+ * </p>
+ */
+@Service
+public class EndOfDayServiceImpl implements EndOfDayService {
+    private static final Logger log = LoggerFactory.getLogger(EndOfDayServiceImpl.class);
+
+    /// Thrown inside a chunk when another instance has taken the run over, rolling the chunk back
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final AccountRepository accountRepository;
+    private final BalanceCheckpointRepository balanceCheckpointRepository;
+    private final EndOfDayRunRepository endOfDayRunRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final Duration lease;
+    private final int catchUpDays;
+    /// identifies this instance as the owner of the runs it processes
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    private final Timer runTimer;
+    private final Counter checkpointCounter;
+    private final Counter resetCounter;
+
+    public EndOfDayServiceImpl(AccountRepository accountRepository,
+                               BalanceCheckpointRepository balanceCheckpointRepository,
+                               EndOfDayRunRepository endOfDayRunRepository,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${end-of-day.chunk-size:5000}") int chunkSize,
+                               @Value("${end-of-day.lease:PT5M}") Duration lease,
+                               @Value("${end-of-day.catch-up-days:7}") int catchUpDays) {
+        this.accountRepository = accountRepository;
+        this.balanceCheckpointRepository = balanceCheckpointRepository;
+        this.endOfDayRunRepository = endOfDayRunRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.lease = lease;
+        this.catchUpDays = Math.max(1, catchUpDays);
+
+        this.runTimer = Timer.builder("springyield.eod.duration")
+                .description("Time spent on an end-of-day run")
+                .register(meterRegistry);
+        this.checkpointCounter = Counter.builder("springyield.eod.checkpoints")
+                .description("Balance checkpoints written by end-of-day runs")
+                .register(meterRegistry);
+        this.resetCounter = Counter.builder("springyield.eod.counters.reset")
+                .description("Daily spend counters rolled over by end-of-day runs")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Closes the previous day shortly after midnight. Runs that were interrupted earlier are finished first, and
+     * days missed while no instance was running are closed as well, going back from the last completed day at
+     * most {@code end-of-day.catch-up-days}.
+     */
+    @Scheduled(cron = "${end-of-day.cron:0 5 0 * * *}")
+    public void runScheduled() {
+        resumeInterrupted();
+
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate day = endOfDayRunRepository.findFirstByStatusOrderByBusinessDayDesc(EndOfDayStatus.COMPLETED)
+                .map(completed -> completed.getBusinessDay().plusDays(1))
+                .orElse(yesterday);
+        LocalDate earliest = yesterday.minusDays(catchUpDays - 1);
+        if (day.isBefore(earliest)) {
+            log.warn("End-of-day runs for {} to {} are beyond the catch-up window and are not run", day, earliest.minusDays(1));
+            day = earliest;
+        }
+        for (; !day.isAfter(yesterday); day = day.plusDays(1))
+            run(day);
+    }
+
+    /**
+     * Finishes runs that were interrupted by a crash or restart, without waiting for the next scheduled run. Runs
+     * another instance is still processing are left to it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        for (EndOfDayRun unfinished : endOfDayRunRepository.findByStatusNotOrderByBusinessDayAsc(EndOfDayStatus.COMPLETED))
+            run(unfinished.getBusinessDay());
+    }
+
+    /**
+     * Processes every account for the given business day. A completed day is not processed again, an interrupted
+     * run continues after the last committed chunk, and a run another instance holds the lease on is skipped.
+     *
+     * @param businessDay the day to close
+     * @return the run with its progress and the number of rows processed
+     */
+    public EndOfDayRun run(LocalDate businessDay) {
+        // A run started by hand while the scheduled one is busy would only compete for the same rows
+        if (!runLock.tryLock()) {
+            log.info("End-of-day run for {} skipped, another run is in progress", businessDay);
+            return endOfDayRunRepository.findByBusinessDay(businessDay).orElse(null);
+        }
+        try {
+            EndOfDayRun run;
+            try {
+                run = endOfDayRunRepository.findByBusinessDay(businessDay)
+                        .orElseGet(() -> endOfDayRunRepository.save(new EndOfDayRun(businessDay)));
+            } catch (DataIntegrityViolationException e) {
+                // Another instance created the run for this day between the lookup and the insert, and processes it
+                log.info("End-of-day run for {} skipped, another instance started it", businessDay);
+                return endOfDayRunRepository.findByBusinessDay(businessDay).orElse(null);
+            }
+            if (run.getStatus() == EndOfDayStatus.COMPLETED)
+                return run;
+
+            if (!claim(run)) {
+                log.info("End-of-day run for {} skipped, instance {} holds it until {}", businessDay, run.getOwner(), run.getLeaseUntil());
+                return run;
+            }
+            if (run.getLastAccountId() > 0)
+                log.info("Resuming end-of-day run for {} after account {}", businessDay, run.getLastAccountId());
+
+            return process(run);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private EndOfDayRun process(EndOfDayRun run) {
+        long started = System.nanoTime();
+        // Counters are rolled over to the day after the business day, which is today for a scheduled run
+        long rolloverDay = run.getBusinessDay().plusDays(1).toEpochDay();
+        // Derived from the business day alone, so a resumed run closes its remaining chunks at the same moment
+        LocalDateTime dayEnd = run.getBusinessDay().plusDays(1).atStartOfDay();
+        // Accounts opened after this point already start with fresh counters, they have no balance to close either
+        long maxAccountId = accountRepository.findMaxAccountId();
+
+        EndOfDayRun current = run;
+        try {
+            while (current.getLastAccountId() < maxAccountId) {
+                long checkpoints = current.getCheckpointsWritten();
+                long resets = current.getCountersReset();
+                current = processChunk(current, dayEnd, rolloverDay, Math.min(current.getLastAccountId() + chunkSize, maxAccountId));
+
+                // Only count rows of committed chunks
+                checkpointCounter.increment(current.getCheckpointsWritten() - checkpoints);
+                resetCounter.increment(current.getCountersReset() - resets);
+            }
+        } catch (LeaseLostException e) {
+            // The lease expired and another instance took the run over, it continues after the last committed chunk
+            log.warn("End-of-day run for {} taken over by another instance after account {}", run.getBusinessDay(), current.getLastAccountId());
+            return endOfDayRunRepository.findById(run.getRunId()).orElse(current);
+        } catch (RuntimeException e) {
+            // Reload the run, the failed chunk may have changed the progress in memory without committing it
+            EndOfDayRun failed = endOfDayRunRepository.findById(run.getRunId()).orElse(current);
+            failed.setStatus(EndOfDayStatus.FAILED);
+            // Release the lease, so any instance may resume the run right away
+            failed.setOwner(null);
+            failed.setLeaseUntil(null);
+            failed.setDurationMillis(failed.getDurationMillis() + elapsedMillis(started));
+            endOfDayRunRepository.save(failed);
+            log.error("End-of-day run for {} failed after account {}, it will be resumed on the next run",
+                    failed.getBusinessDay(), failed.getLastAccountId(), e);
+            throw e;
+        }
+
+        long elapsed = elapsedMillis(started);
+        runTimer.record(elapsed, TimeUnit.MILLISECONDS);
+        current.setStatus(EndOfDayStatus.COMPLETED);
+        current.setFinishedAt(LocalDateTime.now());
+        current.setDurationMillis(current.getDurationMillis() + elapsed);
+        current.setLeaseUntil(null);
+        current = endOfDayRunRepository.save(current);
+
+        log.info("End-of-day run for {} completed in {} ms: {} balance checkpoints written, {} spend counters reset",
+                current.getBusinessDay(), current.getDurationMillis(), current.getCheckpointsWritten(), current.getCountersReset());
+        return current;
+    }
+
+    /// Takes the lease on the run for this instance, and mirrors the update on the given run when it succeeds
+    private boolean claim(EndOfDayRun run) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseUntil = now.plus(lease);
+        Integer claimed = transactionTemplate.execute(status -> endOfDayRunRepository.claim(run.getRunId(), instanceId, leaseUntil, now));
+        if (claimed == null || claimed == 0)
+            return false;
+
+        run.setOwner(instanceId);
+        run.setLeaseUntil(leaseUntil);
+        run.setStatus(EndOfDayStatus.RUNNING);
+        return true;
+    }
+
+    /// Processes the accounts after the last processed one up to and including toAccountId, in one transaction
+    private EndOfDayRun processChunk(EndOfDayRun run, LocalDateTime dayEnd, long rolloverDay, long toAccountId) {
+        return transactionTemplate.execute(status -> {
+            // Renewed first, so the lease is only extended together with the progress of this chunk
+            LocalDateTime leaseUntil = LocalDateTime.now().plus(lease);
+            if (endOfDayRunRepository.renewLease(run.getRunId(), instanceId, leaseUntil) == 0)
+                throw new LeaseLostException();
+            run.setLeaseUntil(leaseUntil);
+
+            long fromAccountId = run.getLastAccountId();
+            int checkpoints = balanceCheckpointRepository.insertCheckpoints(run.getBusinessDay(), dayEnd, fromAccountId, toAccountId);
+            int resets = accountRepository.resetSpendCounters(rolloverDay, fromAccountId, toAccountId);
+
+            run.setLastAccountId(toAccountId);
+            run.setCheckpointsWritten(run.getCheckpointsWritten() + checkpoints);
+            run.setCountersReset(run.getCountersReset() + resets);
+            return endOfDayRunRepository.save(run);
+        });
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+}
@@ -0,0 +1,11 @@
+package com.stefvisser.springyield.services;
+
+import java.util.List;
+
+public interface IbanService {
+    // Allocate a single unused IBAN of this bank, formatted like "NL12 SPYD 0123 4567 89"
+    String nextIban();
+
+    // Allocate a number of unused IBANs at once, for bulk account creation
+    List<String> nextIbans(int count);
+}
@@ -0,0 +1,179 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.IbanSequence;
+import com.stefvisser.springyield.repositories.IbanSequenceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out Dutch IBANs of this bank that are guaranteed to be unique.
+ * <p>
+ * Every IBAN is derived from a position in a sequence shared by all nodes. A node reserves a block of
+ * {@code iban.block-size} positions in one short database transaction and then allocates from that block without
+ * locking. Positions are mapped to account numbers by a fixed permutation of the ten digit account number space,
+ * so consecutive accounts do not get consecutive (guessable) numbers while uniqueness still follows from the
+ * sequence. The check digits are computed with plain arithmetic, no parsing or validation is involved.
+ * </p>
+ */
+@Service
+public class IbanServiceImpl implements IbanService {
+    /// NL account numbers have ten digits
+    static final long ACCOUNT_NUMBERS = 10_000_000_000L;
+
+    /// permutation n -> (MULTIPLIER * n + INCREMENT) mod 10^10, a bijection since MULTIPLIER shares no factor with 10
+    private static final long MULTIPLIER = 7_368_787_213L;
+    private static final long INCREMENT = 1_234_567_891L;
+
+    /// NL00 as digits (N = 23, L = 21), appended to the BBAN for the mod-97 check
+    private static final long COUNTRY_DIGITS = 232_100L;
+
+    /// a reserved block of positions, allocation only bumps next
+    private record Block(AtomicLong next, long end) {
+    }
+
+    private final IbanSequenceRepository ibanSequenceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final String bankCode;
+    private final int blockSize;
+    private final long bankCodeRemainder;
+    private volatile Block block = new Block(new AtomicLong(), 0);
+
+    public IbanServiceImpl(IbanSequenceRepository ibanSequenceRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${bank.bankCode:SPYD}") String bankCode,
+                           @Value("${iban.block-size:1000}") int blockSize) {
+        this.ibanSequenceRepository = ibanSequenceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.bankCode = bankCode.toUpperCase();
+        this.blockSize = Math.max(1, blockSize);
+        this.bankCodeRemainder = remainder(this.bankCode);
+    }
+
+    /**
+     * Allocates a single IBAN from the block reserved by this node, reserving a new block when it is used up.
+     *
+     * @return a formatted IBAN that has not been handed out before
+     */
+    public String nextIban() {
+        while (true) {
+            Block current = block;
+            long position = current.next().getAndIncrement();
+            if (position < current.end())
+                return format(bankCode, bankCodeRemainder, accountNumber(position));
+            refill(current);
+        }
+    }
+
+    /**
+     * Allocates a number of IBANs from a block reserved for this call only.
+     *
+     * @param count the number of IBANs to allocate
+     * @return formatted IBANs that have not been handed out before
+     */
+    public List<String> nextIbans(int count) {
+        List<String> ibans = new ArrayList<>(count);
+        if (count <= 0)
+            return ibans;
+
+        long start = reserve(count);
+        for (long position = start; position < start + count; position++)
+            ibans.add(format(bankCode, bankCodeRemainder, accountNumber(position)));
+        return ibans;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Replaces the block when it is still the exhausted one, threads that lost the race use the new block
+    private synchronized void refill(Block exhausted) {
+        if (block != exhausted)
+            return;
+        long start = reserve(blockSize);
+        block = new Block(new AtomicLong(start), start + blockSize);
+    }
+
+    /// Reserves count positions in the shared sequence and returns the first one
+    private long reserve(int count) {
+        try {
+            return reserveInTransaction(count);
+        } catch (DataIntegrityViolationException e) {
+            // Another node created the sequence row at the same time, it exists now so locking it will work
+            return reserveInTransaction(count);
+        }
+    }
+
+    private long reserveInTransaction(int count) {
+        Long start = transactionTemplate.execute(status -> {
+            IbanSequence sequence = ibanSequenceRepository.findForUpdate(bankCode)
+                    .orElseGet(() -> new IbanSequence(bankCode, 0L));
+            long first = sequence.getNextValue();
+            if (first + count > ACCOUNT_NUMBERS)
+                throw new IllegalStateException("No account numbers left for bank code " + bankCode);
+
+            sequence.setNextValue(first + count);
+            ibanSequenceRepository.save(sequence);
+            return first;
+        });
+        if (start == null)
+            throw new IllegalStateException("Could not reserve account numbers for bank code " + bankCode);
+        return start;
+    }
+
+    /// Maps a sequence position to an account number, (a * n + c) mod 10^10 without overflowing a long
+    static long accountNumber(long position) {
+        long high = position / 100_000;
+        long low = position % 100_000;
+        long product = ((MULTIPLIER * high) % ACCOUNT_NUMBERS * 100_000 + MULTIPLIER * low) % ACCOUNT_NUMBERS;
+        return (product + INCREMENT) % ACCOUNT_NUMBERS;
+    }
+
+    /**
+     * Formats an NL IBAN, computing the check digits with ISO 7064 mod 97-10 on the fly.
+     *
+     * @param bankCode          the four letter bank code
+     * @param bankCodeRemainder the remainder of the bank code, see {@link #remainder(String)}
+     * @param accountNumber     the ten digit account number
+     * @return the IBAN formatted in groups of four, e.g. "NL91 ABNA 0417 1643 00"
+     */
+    static String format(String bankCode, long bankCodeRemainder, long accountNumber) {
+        // BBAN = bank code + account number, followed by NL00, taken mod 97
+        long remainder = (bankCodeRemainder * (ACCOUNT_NUMBERS % 97) + accountNumber % 97) % 97;
+        remainder = (remainder * (1_000_000 % 97) + COUNTRY_DIGITS % 97) % 97;
+        int checkDigits = (int) (98 - remainder);
+
+        char[] iban = new char[22];
+        iban[0] = 'N';
+        iban[1] = 'L';
+        iban[2] = (char) ('0' + checkDigits / 10);
+        iban[3] = (char) ('0' + checkDigits % 10);
+        iban[4] = ' ';
+        bankCode.getChars(0, 4, iban, 5);
+        iban[9] = ' ';
+
+        // Ten digits in groups of four: "0417 1643 00"
+        long digits = accountNumber;
+        for (int i = 9; i >= 0; i--) {
+            iban[10 + i + i / 4] = (char) ('0' + digits % 10);
+            digits /= 10;
+        }
+        iban[14] = ' ';
+        iban[19] = ' ';
+        return new String(iban);
+    }
+
+    /// Remainder mod 97 of a bank code, letters count as two digits (A = 10 ... Z = 35)
+    static long remainder(String bankCode) {
+        long remainder = 0;
+        for (int i = 0; i < bankCode.length(); i++)
+            remainder = (remainder * 100 + (bankCode.charAt(i) - 'A' + 10)) % 97;
+        return remainder;
+    }
+}
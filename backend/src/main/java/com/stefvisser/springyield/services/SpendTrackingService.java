@@ -0,0 +1,23 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.SpendWindow;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public interface SpendTrackingService {
+    // Record outbound (external) spend of an account right away, taken out again if the surrounding transaction rolls back
+    void recordSpend(String iban, BigDecimal amount, LocalDateTime timestamp);
+
+    // Total outbound spend of an account within the rolling window ending now
+    BigDecimal getSpend(String iban, SpendWindow window);
+
+    // Number of outbound transfers of an account within the rolling window ending now
+    long getTransferCount(String iban, SpendWindow window);
+
+    // Number of accounts that currently have counters in memory
+    int getTrackedAccountCount();
+
+    // Rebuild all counters from the transactions table
+    void rebuild();
+}
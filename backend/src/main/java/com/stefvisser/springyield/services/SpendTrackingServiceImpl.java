@@ -0,0 +1,300 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.SpendWindow;
+import com.stefvisser.springyield.models.Transaction;
+import com.stefvisser.springyield.models.TransactionType;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.utils.SeedingCompletedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps rolling outbound spend totals and transfer counts per account, so limits over a day, week or month can be
+ * checked without querying the transaction history.
+ * <p>
+ * Every account with recent spend has a small ring of hourly buckets (only hours with spend are stored) and a
+ * running total per {@link SpendWindow}. Posting adds to the newest bucket and to every total, and as time moves on
+ * buckets that leave a window are subtracted from its total, so both recording and reading are constant time
+ * (amortized). The counters live in memory and are rebuilt from the transactions table once seeding has completed.
+ * </p>
+ */
+@Service
+public class SpendTrackingServiceImpl implements SpendTrackingService {
+    private static final Logger log = LoggerFactory.getLogger(SpendTrackingServiceImpl.class);
+    private static final SpendWindow[] WINDOWS = SpendWindow.values();
+    private static final int LONGEST_WINDOW = Arrays.stream(WINDOWS).mapToInt(SpendWindow::getHours).max().orElse(0);
+
+    private final TransactionRepository transactionRepository;
+    private final AccountRepository accountRepository;
+    private final Map<String, AccountSpend> spendByIban = new ConcurrentHashMap<>();
+
+    public SpendTrackingServiceImpl(TransactionRepository transactionRepository, AccountRepository accountRepository) {
+        this.transactionRepository = transactionRepository;
+        this.accountRepository = accountRepository;
+    }
+
+    /**
+     * Records outbound spend for an account.
+     * <p>
+     * The counters are updated right away, so when called after validation while the sending account is still
+     * locked, the next transfer from that account already sees this one. When called inside a transaction that
+     * rolls back, the spend is taken out again, so a rolled back transfer does not count towards any limit.
+     * </p>
+     *
+     * @param iban      the account the money was spent from
+     * @param amount    the amount spent
+     * @param timestamp the moment of the transfer
+     */
+    public void recordSpend(String iban, BigDecimal amount, LocalDateTime timestamp) {
+        long cents = toCents(amount);
+        AccountSpend spend = spendFor(iban);
+        long bucket = spend.add(toHour(timestamp), cents);
+
+        if (bucket >= 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK)
+                        spend.remove(bucket, cents);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the outbound spend of an account in the rolling window ending in the current hour.
+     *
+     * @param iban   the account to get the spend for
+     * @param window the window to sum over
+     * @return the total spend, zero if the account has not spent anything within the window
+     */
+    public BigDecimal getSpend(String iban, SpendWindow window) {
+        AccountSpend spend = spendByIban.get(normalize(iban));
+        if (spend == null)
+            return BigDecimal.ZERO;
+        return BigDecimal.valueOf(spend.total(window, toHour(LocalDateTime.now())), 2);
+    }
+
+    /**
+     * Returns the number of outbound transfers of an account in the rolling window ending in the current hour.
+     *
+     * @param iban   the account to get the transfer count for
+     * @param window the window to count over
+     * @return the number of transfers, zero if the account has not spent anything within the window
+     */
+    public long getTransferCount(String iban, SpendWindow window) {
+        AccountSpend spend = spendByIban.get(normalize(iban));
+        if (spend == null)
+            return 0;
+        return spend.count(window, toHour(LocalDateTime.now()));
+    }
+
+    /**
+     * Returns the number of accounts with counters in memory, i.e. accounts with spend in the longest window.
+     */
+    public int getTrackedAccountCount() {
+        return spendByIban.size();
+    }
+
+    /**
+     * Rebuilds the counters from the external transfers within the longest window.
+     * A transfer is external when the two accounts belong to different users, like in the daily limit check.
+     * Runs once the seed data is complete, since seeding continues in the background after startup.
+     */
+    @EventListener(SeedingCompletedEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        LocalDateTime since = LocalDateTime.now().minusHours(LONGEST_WINDOW);
+
+        // Resolve owners once instead of per transaction
+        Map<String, Long> ownerByIban = new HashMap<>();
+        for (Account account : accountRepository.findAll())
+            ownerByIban.put(normalize(account.getIban()), account.getUser() != null ? account.getUser().getUserId() : null);
+
+        List<Transaction> transactions = transactionRepository.findByTimestampAfter(since).stream()
+                .filter(transaction -> transaction.getTransactionType() == TransactionType.TRANSFER)
+                .sorted(Comparator.comparing(Transaction::getTimestamp))
+                .toList();
+
+        Map<String, AccountSpend> rebuilt = new HashMap<>();
+        for (Transaction transaction : transactions) {
+            String from = normalize(transaction.getFromAccount());
+            Long fromOwner = ownerByIban.get(from);
+            if (fromOwner == null || Objects.equals(fromOwner, ownerByIban.get(normalize(transaction.getToAccount()))))
+                continue;
+
+            rebuilt.computeIfAbsent(from, iban -> new AccountSpend())
+                    .add(toHour(transaction.getTimestamp()), toCents(transaction.getTransferAmount()));
+        }
+
+        spendByIban.clear();
+        spendByIban.putAll(rebuilt);
+        log.info("Rebuilt spend counters for {} accounts from {} transfers in {} ms",
+                rebuilt.size(), transactions.size(), System.currentTimeMillis() - start);
+    }
+
+    /// Drops accounts without any spend in the longest window, keeping memory proportional to active accounts
+    @Scheduled(fixedDelayString = "${spend-tracking.eviction-interval:PT1H}")
+    public void evictIdleAccounts() {
+        long now = toHour(LocalDateTime.now());
+        spendByIban.values().removeIf(spend -> spend.isIdle(now));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private AccountSpend spendFor(String iban) {
+        return spendByIban.computeIfAbsent(normalize(iban), key -> new AccountSpend());
+    }
+
+    private static String normalize(String iban) {
+        return iban == null ? "" : iban.replace(" ", "").toUpperCase(Locale.ROOT);
+    }
+
+    private static long toHour(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toEpochSecond() / 3600;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Hourly spend buckets of a single account, oldest first, with a running total and transfer count per window.
+     * Only hours with spend are stored, in a ring that grows when needed.
+     */
+    private static final class AccountSpend {
+        private long[] hours = new long[4];
+        private long[] cents = new long[4];
+        private int[] counts = new int[4];
+        private int head;
+        private int size;
+
+        /// sequence numbers: the bucket at head has sequence headSeq, the next bucket headSeq + 1 and so on
+        private long headSeq;
+        private final long[] firstInWindow = new long[WINDOWS.length];
+        private final long[] totals = new long[WINDOWS.length];
+        private final long[] transferCounts = new long[WINDOWS.length];
+
+        /// Adds spend to the bucket of its hour and returns the sequence number of that bucket, or -1 if too old to count
+        synchronized long add(long hour, long amount) {
+            advance(hour);
+
+            long seq = headSeq + size - 1;
+            int last = index(seq);
+            if (size > 0 && hour <= hours[last] - LONGEST_WINDOW) {
+                // Older than every window, nothing to count
+                return -1;
+            } else if (size > 0 && hours[last] >= hour) {
+                // Same hour (or an earlier one posted late), merge into the newest bucket
+                cents[last] += amount;
+                counts[last]++;
+            } else {
+                if (size == hours.length)
+                    grow();
+                seq = headSeq + size;
+                int next = index(seq);
+                hours[next] = hour;
+                cents[next] = amount;
+                counts[next] = 1;
+                size++;
+            }
+
+            for (int w = 0; w < WINDOWS.length; w++) {
+                totals[w] += amount;
+                transferCounts[w]++;
+            }
+            return seq;
+        }
+
+        /// Takes spend added earlier back out of its bucket, and out of every window that still counts that bucket
+        synchronized void remove(long seq, long amount) {
+            if (seq < headSeq || seq >= headSeq + size)
+                return;
+            int i = index(seq);
+            cents[i] -= amount;
+            counts[i]--;
+            for (int w = 0; w < WINDOWS.length; w++) {
+                if (seq >= firstInWindow[w]) {
+                    totals[w] -= amount;
+                    transferCounts[w]--;
+                }
+            }
+        }
+
+        synchronized long total(SpendWindow window, long now) {
+            advance(now);
+            return totals[window.ordinal()];
+        }
+
+        synchronized long count(SpendWindow window, long now) {
+            advance(now);
+            return transferCounts[window.ordinal()];
+        }
+
+        synchronized boolean isIdle(long now) {
+            advance(now);
+            return size == 0;
+        }
+
+        /// Subtracts buckets that left a window, and drops buckets that left the longest window
+        private void advance(long now) {
+            long endSeq = headSeq + size;
+            long oldestKept = endSeq;
+
+            for (int w = 0; w < WINDOWS.length; w++) {
+                long cutoff = now - WINDOWS[w].getHours();
+                while (firstInWindow[w] < endSeq && hours[index(firstInWindow[w])] <= cutoff) {
+                    totals[w] -= cents[index(firstInWindow[w])];
+                    transferCounts[w] -= counts[index(firstInWindow[w])];
+                    firstInWindow[w]++;
+                }
+                oldestKept = Math.min(oldestKept, firstInWindow[w]);
+            }
+
+            int dropped = (int) (oldestKept - headSeq);
+            head = index(oldestKept);
+            headSeq = oldestKept;
+            size -= dropped;
+        }
+
+        private int index(long seq) {
+            return (int) ((head + (seq - headSeq)) % hours.length);
+        }
+
+        private void grow() {
+            long[] newHours = new long[hours.length * 2];
+            long[] newCents = new long[cents.length * 2];
+            int[] newCounts = new int[counts.length * 2];
+            for (int i = 0; i < size; i++) {
+                newHours[i] = hours[index(headSeq + i)];
+                newCents[i] = cents[index(headSeq + i)];
+                newCounts[i] = counts[index(headSeq + i)];
+            }
+            hours = newHours;
+            cents = newCents;
+            counts = newCounts;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.stefvisser.springyield.services;
+
+import java.util.Date;
+
+public interface TokenRevocationService {
+    // Reject every token issued to this user up to now, e.g. after deletion or a role change
+    void revokeAllTokens(Long userId);
+
+    // Check if a token with the given userId and "iat" claim has been revoked
+    boolean isRevoked(Long userId, Date issuedAt);
+
+    // Number of users with a revocation that is still kept in memory
+    int getRecentRevocationCount();
+}
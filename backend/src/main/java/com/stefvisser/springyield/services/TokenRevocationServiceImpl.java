@@ -0,0 +1,123 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.RevokedToken;
+import com.stefvisser.springyield.repositories.RevokedTokenRepository;
+import com.stefvisser.springyield.utils.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of revoked JWT tokens without adding a query to every authenticated request.
+ * <p>
+ * Revocations are stored in the revoked_tokens table and mirrored in an in-memory Bloom filter keyed by userId.
+ * A token is only checked against the table when the filter reports a possible hit, which for the vast majority
+ * of users (who were never revoked) means the check costs a few hash computations. Rows are purged once every
+ * token they could match has expired, and the filter is then rebuilt, so both stay small.
+ * </p>
+ */
+@Service
+public class TokenRevocationServiceImpl implements TokenRevocationService {
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+    /// Revocations committed by this node, so they survive a rebuild that raced with their commit
+    private final Map<Long, Long> recentRevocations = new ConcurrentHashMap<>();
+
+    public TokenRevocationServiceImpl(RevokedTokenRepository revokedTokenRepository,
+                                      @Value("${security.revocation.expected-entries:100000}") int expectedEntries,
+                                      @Value("${security.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+    }
+
+    /**
+     * Revokes every token issued to the user up to and including the current second.
+     * <p>
+     * When called inside a transaction, the in-memory filter is only updated after commit, so a rolled back
+     * deletion or role change does not lock the user out.
+     * </p>
+     *
+     * @param userId the user whose tokens should be rejected
+     */
+    public void revokeAllTokens(Long userId) {
+        if (userId == null)
+            return;
+
+        long now = Instant.now().getEpochSecond();
+        long expiresAt = now + AuthServiceImpl.TOKEN_VALIDITY.toSeconds();
+        revokedTokenRepository.save(new RevokedToken(null, userId, now, expiresAt));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                public void afterCommit() {
+                    remember(userId, expiresAt);
+                }
+            });
+        } else {
+            remember(userId, expiresAt);
+        }
+    }
+
+    /**
+     * Checks whether a token has been revoked.
+     *
+     * @param userId   the userId claim of the token
+     * @param issuedAt the "iat" claim of the token
+     * @return true if a revocation for this user covers the moment the token was issued
+     */
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        if (userId == null || issuedAt == null)
+            return false;
+
+        // Fast path: users that were never revoked are rejected by the filter without touching the database
+        if (!filter.mightContain(userId))
+            return false;
+
+        return revokedTokenRepository.existsByUserIdAndRevokedAtGreaterThanEqual(userId, issuedAt.getTime() / 1000);
+    }
+
+    /**
+     * Returns the number of users with a revocation remembered in memory, until their last token has expired.
+     */
+    public int getRecentRevocationCount() {
+        return recentRevocations.size();
+    }
+
+    /**
+     * Removes revocations that can no longer match a valid token, and rebuilds the filter from the remaining rows.
+     * Also picks up revocations recorded by other nodes.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${security.revocation.rebuild-interval:PT5M}", initialDelayString = "${security.revocation.rebuild-interval:PT5M}")
+    public void rebuild() {
+        long now = Instant.now().getEpochSecond();
+        revokedTokenRepository.deleteByExpiresAtLessThanEqual(now);
+        recentRevocations.values().removeIf(expiresAt -> expiresAt <= now);
+
+        BloomFilter rebuilt = new BloomFilter(expectedEntries, falsePositiveRate);
+        for (RevokedToken revokedToken : revokedTokenRepository.findByExpiresAtGreaterThan(now))
+            rebuilt.add(revokedToken.getUserId());
+        filter = rebuilt;
+
+        // Revocations committed while the table was being read may have gone to the old filter only
+        recentRevocations.keySet().forEach(rebuilt::add);
+    }
+
+    private void remember(Long userId, long expiresAt) {
+        recentRevocations.merge(userId, expiresAt, Math::max);
+        filter.add(userId);
+    }
+}
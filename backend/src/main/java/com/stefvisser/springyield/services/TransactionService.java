@@ -27,6 +27,7 @@ public interface TransactionService {
     );
     Transaction getTransactionById(User execUser, long id);
     List<Transaction> getTransactionsByIban(User execUser, String iban);
+    List<Transaction> getRecentTransactionsByIban(User execUser, String iban, int limit);
     List<Transaction> getTransactionsByReference(User execUser, String reference);
     List<Transaction> getAllTransactions(User execUser);
     Transaction createTransaction(User execUser, TransactionRequestDto transaction) throws ResponseStatusException;
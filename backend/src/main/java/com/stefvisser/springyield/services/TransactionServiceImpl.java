@@ -5,24 +5,46 @@ import jakarta.transaction.Transactional;
 import com.stefvisser.springyield.dto.TransactionRequestDto;
 import com.stefvisser.springyield.dto.PaginatedDataDto;
 import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.utils.SearchCoalescer;
+import com.stefvisser.springyield.utils.SearchEvent;
+import com.stefvisser.springyield.utils.TransactionPostedEvent;
+import com.stefvisser.springyield.utils.TransferPhaseEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
+@Timed(value = "springyield.service", extraTags = {"service", "transaction"})
 public class TransactionServiceImpl implements TransactionService {
     private final TransactionRepository transactionRepository;
     private final AccountService accountService;
     private final UserService userService;
+    private final SpendTrackingService spendTrackingService;
+    private final TransferRuleEngine transferRuleEngine;
+    private final SearchCoalescer searchCoalescer;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /// The normalized parameters of a transaction search, identical searches running at the same time are coalesced
+    private record SearchKey(String query, String type, LocalDateTime startDate, LocalDateTime endDate,
+                             BigDecimal amountFrom, BigDecimal amountTo, String amountOperator, int limit, int offset) {
+    }
 
-    public TransactionServiceImpl(TransactionRepository transactionRepository, AccountService accountService, UserService userService) {
+    public TransactionServiceImpl(TransactionRepository transactionRepository, AccountService accountService, UserService userService, SpendTrackingService spendTrackingService, TransferRuleEngine transferRuleEngine, SearchCoalescer searchCoalescer, ApplicationEventPublisher eventPublisher) {
         this.transactionRepository = transactionRepository;
         this.accountService = accountService;
         this.userService = userService;
+        this.spendTrackingService = spendTrackingService;
+        this.transferRuleEngine = transferRuleEngine;
+        this.searchCoalescer = searchCoalescer;
+        this.eventPublisher = eventPublisher;
     }
 
     // -----------------------------------------------------------------------------------------------------------------
@@ -67,17 +89,24 @@ public class TransactionServiceImpl implements TransactionService {
         if (offset < 0) offset = 0;
         if (query == null) query = "";
 
-        return transactionRepository.searchTransactions(
-                query,
-                type,
-                startDate,
-                endDate,
-                amountFrom,
-                amountTo,
-                amountOperator,
-                limit,
-                offset
-        );
+        String searchQuery = query;
+        int pageLimit = limit;
+        int pageOffset = offset;
+        // Every employee sees the same results, so identical searches running at the same time share one execution
+        SearchKey key = new SearchKey(SearchCoalescer.normalize(searchQuery.trim()), type, startDate, endDate,
+                amountFrom, amountTo, amountOperator, pageLimit, pageOffset);
+        return searchCoalescer.coalesce("transaction", key, () -> SearchEvent.record("transaction", searchQuery, pageLimit, pageOffset,
+                () -> transactionRepository.searchTransactions(
+                        searchQuery,
+                        type,
+                        startDate,
+                        endDate,
+                        amountFrom,
+                        amountTo,
+                        amountOperator,
+                        pageLimit,
+                        pageOffset
+                )));
     }
 
     /**
@@ -111,20 +140,26 @@ public class TransactionServiceImpl implements TransactionService {
      * @return A list of transactions associated with the specified IBAN.
      */
     public List<Transaction> getTransactionsByIban(User execUser, String iban) {
-        if (execUser == null)
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
-
-        Account account = accountService.getAccountByIban(execUser, iban);
-        if (account == null)
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account with IBAN " + iban + " not found");
-
-        // Check if the user is an employee or the owner of the account
-        if (!execUser.isEmployee() && !account.getUser().getUserId().equals(execUser.getUserId()))
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "User does not have access to the specified account");
-
+        checkIbanAccess(execUser, iban);
         return transactionRepository.findByFromAccountOrToAccount(iban, iban);
     }
 
+    /**
+     * Retrieves the most recent transactions of an IBAN, newest first.
+     * This method is intended for use by both employees and account owners.
+     *
+     * @param execUser The user executing the request (should be an authenticated user).
+     * @param iban     The IBAN of the account to get the transactions for.
+     * @param limit    The maximum number of transactions to return.
+     * @return At most limit transactions of the IBAN, ordered by timestamp descending.
+     */
+    public List<Transaction> getRecentTransactionsByIban(User execUser, String iban, int limit) {
+        checkIbanAccess(execUser, iban);
+        if (limit <= 0)
+            return List.of();
+        return transactionRepository.findByFromAccountOrToAccountOrderByTimestampDesc(iban, iban, Limit.of(limit));
+    }
+
     /**
      * Retrieves transactions by their reference number.
      * This method is intended for use by employees who have permission to search transactions by reference.
@@ -175,23 +210,45 @@ public class TransactionServiceImpl implements TransactionService {
 
         // Net zoals @Daan 4 uur werk om deze enkele regel toe te moeten voegen.
         // User user werkt niet want een authenticatedPrincipal User is niet een user entity...
-        User accountOwner = userService.getUserById(execUser, execUser.getUserId());
+        // Every phase is recorded as a JFR event (see TransferPhaseEvent), to find out where a slow transfer spent its time
+        String iban = transactionReqDto.getFromAccount();
+        BigDecimal amount = transactionReqDto.getTransferAmount();
+        User accountOwner = TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.USER_LOOKUP, iban, amount,
+                () -> userService.getUserById(execUser, execUser.getUserId()));
 
         if (transactionReqDto.getFromAccount() == null || transactionReqDto.getToAccount() == null)
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Both from account and to account must be provided");
 
-        // Validate the IBANs of the accounts, before retrieving the actual Account objects
-        validateAccounts(accountOwner, transactionReqDto);
-        Account fromAccount = accountService.getAccountByIban(accountOwner, transactionReqDto.getFromAccount());
-        Account toAccount = accountService.getAccountByIban(accountOwner, transactionReqDto.getToAccount());
+        // Both rows stay locked until the transfer commits, taken in IBAN order so two transfers in opposite
+        // directions cannot deadlock on each other's account. Locked before validateAccounts loads the accounts of
+        // the owner, so those resolve to the locked rows instead of copies read before the lock was granted
+        boolean fromFirst = transactionReqDto.getFromAccount().compareTo(transactionReqDto.getToAccount()) <= 0;
+        Account firstAccount = TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.ACCOUNT_LOAD, iban, amount,
+                () -> accountService.getAccountByIbanForUpdate(accountOwner, fromFirst ? transactionReqDto.getFromAccount() : transactionReqDto.getToAccount()));
+        Account secondAccount = TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.ACCOUNT_LOAD, iban, amount,
+                () -> accountService.getAccountByIbanForUpdate(accountOwner, fromFirst ? transactionReqDto.getToAccount() : transactionReqDto.getFromAccount()));
+        Account fromAccount = fromFirst ? firstAccount : secondAccount;
+        Account toAccount = fromFirst ? secondAccount : firstAccount;
+
+        // Validate the IBANs of the accounts against the owner
+        TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.ACCOUNT_CHECK, iban, amount,
+                () -> validateAccounts(accountOwner, transactionReqDto));
+
+        // Determine the day once, so validation and the spend update agree even when the transfer straddles midnight
+        long today = LocalDate.now().toEpochDay();
 
         // Validate the transfer between accounts, before creating and saving the transaction
-        validateTransfer(fromAccount, toAccount, transactionReqDto.getTransferAmount());
-        Transaction transaction = createAndSaveTransaction(transactionReqDto);
+        TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.VALIDATION, iban, amount,
+                () -> validateTransfer(fromAccount, toAccount, amount, today));
+        Transaction transaction = TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.TRANSACTION_INSERT, iban, amount,
+                () -> createAndSaveTransaction(transactionReqDto));
 
         // Update account balances, assign the transaction to the accounts, and update the accounts in the database
-        updateToAndFromAccount(fromAccount, toAccount, transaction);
+        TransferPhaseEvent.record(TransferPhaseEvent.TRANSFER, TransferPhaseEvent.ACCOUNT_UPDATE, iban, amount,
+                () -> updateToAndFromAccount(fromAccount, toAccount, transaction, today));
 
+        // Delivered to transaction streams once the database transaction has committed
+        eventPublisher.publishEvent(new TransactionPostedEvent(this, TransactionRequestDto.wrap(transaction)));
         return transaction;
     }
 
@@ -204,9 +261,15 @@ public class TransactionServiceImpl implements TransactionService {
      * @return The created Transaction object.
      */
 
+    @Transactional
     public Transaction createAtmTransaction(User execUser, TransactionRequestDto transactionReqDTO) {
+        // Every phase is recorded as a JFR event (see TransferPhaseEvent), like for transfers
+        String iban = transactionReqDTO.getFromAccount();
+        BigDecimal amount = transactionReqDTO.getTransferAmount();
+
         // Retrieve the account by IBAN from the request
-        Account fromAccount = accountService.getAccountByIban(execUser, transactionReqDTO.getFromAccount());
+        Account fromAccount = TransferPhaseEvent.record(TransferPhaseEvent.ATM, TransferPhaseEvent.ACCOUNT_LOAD, iban, amount,
+                () -> accountService.getAccountByIbanForUpdate(execUser, transactionReqDTO.getFromAccount()));
 
         if (fromAccount == null)
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found with IBAN: " + transactionReqDTO.getFromAccount());
@@ -221,7 +284,8 @@ public class TransactionServiceImpl implements TransactionService {
         }
 
         // Retrieve the special ATM user by email
-        User atmUser = userService.findByEmail("atms@springyield.com");
+        User atmUser = TransferPhaseEvent.record(TransferPhaseEvent.ATM, TransferPhaseEvent.USER_LOOKUP, iban, amount,
+                () -> userService.findByEmail("atms@springyield.com"));
 
         if (atmUser == null)
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ATM user not found");
@@ -250,8 +314,13 @@ public class TransactionServiceImpl implements TransactionService {
         Transaction transaction = Transaction.fromDTO(transactionReqDTO);
         transaction.setTimestamp(LocalDateTime.now());
 
-        accountService.updateAccount(fromAccount);
-        return transactionRepository.save(transaction);
+        TransferPhaseEvent.record(TransferPhaseEvent.ATM, TransferPhaseEvent.ACCOUNT_UPDATE, iban, amount,
+                () -> accountService.updateAccount(fromAccount));
+        Transaction savedTransaction = TransferPhaseEvent.record(TransferPhaseEvent.ATM, TransferPhaseEvent.TRANSACTION_INSERT, iban, amount,
+                () -> transactionRepository.save(transaction));
+
+        eventPublisher.publishEvent(new TransactionPostedEvent(this, TransactionRequestDto.wrap(savedTransaction)));
+        return savedTransaction;
     }
 
     // -----------------------------------------------------------------------------------------------------------------
@@ -271,6 +340,25 @@ public class TransactionServiceImpl implements TransactionService {
     // Transfer Validation and Processing
     // -----------------------------------------------------------------------------------------------------------------
 
+    /**
+     * Checks that the IBAN exists and that the user is an employee or the owner of the account.
+     *
+     * @param execUser The user executing the request.
+     * @param iban     The IBAN of the account to check.
+     */
+    private void checkIbanAccess(User execUser, String iban) {
+        if (execUser == null)
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
+
+        Account account = accountService.getAccountByIban(execUser, iban);
+        if (account == null)
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Account with IBAN " + iban + " not found");
+
+        // Check if the user is an employee or the owner of the account
+        if (!execUser.isEmployee() && !account.getUser().getUserId().equals(execUser.getUserId()))
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "User does not have access to the specified account");
+    }
+
     /**
      * Validates the accounts involved in the transaction.
      *
@@ -290,66 +378,22 @@ public class TransactionServiceImpl implements TransactionService {
     }
 
     /**
-     * Validates the transfer between two accounts based on various criteria.
+     * Validates the transfer between two accounts against the transfer rules of the sending account type.
      *
      * @param fromAccount    The account from which the funds are transferred.
      * @param toAccount      The account to which the funds are transferred.
      * @param transferAmount The amount of money to be transferred.
+     * @param today          The current day as epoch day, spend counted on an earlier day does not count.
      */
-    private void validateTransfer(Account fromAccount, Account toAccount, BigDecimal transferAmount) {
-        BigDecimal balance = fromAccount.getBalance();
-        BigDecimal absoluteLimit = fromAccount.getAbsoluteLimit();
-        BigDecimal dailyLimit = fromAccount.getDailyLimit();
-
+    private void validateTransfer(Account fromAccount, Account toAccount, BigDecimal transferAmount, long today) {
         // Validate accounts existence
         if (fromAccount == null || toAccount == null)
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Accounts not found for the provided IBANs");
 
-        // Check if the accounts have different owners
-        if (fromAccount.getAccountType() == AccountType.SAVINGS || toAccount.getAccountType() == AccountType.SAVINGS) {
-            if (!fromAccount.getUser().equals(toAccount.getUser())) {
-                throw new ResponseStatusException(
-                        HttpStatus.FORBIDDEN,
-                        "Savings accounts can only be used for transfers between accounts of the same owner"
-                );
-            }
-        }
-
-        // Validate transfer amount
-        if (transferAmount.compareTo(BigDecimal.ZERO) <= 0)
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Transfer amount must be greater than zero");
-
-        // Validate against account limit
-        if (transferAmount.compareTo(absoluteLimit) > 0)
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Transfer amount exceeds account limit");
-
-        // Validate sufficient balance
-        if (balance.subtract(transferAmount).compareTo(fromAccount.getBalanceLimit()) < 0) // balanceLimit is negative so the result will be negative
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Insufficient balance for transfer, cannot go below balance limit: " + fromAccount.getBalanceLimit());
-
-        // Validate daily exchange limit for external transactions only
-        boolean isExternalTransfer = !fromAccount.getUser().equals(toAccount.getUser());
-        if (isExternalTransfer) {
-            // Check if a single external transfer exceeds the daily limit
-            if (transferAmount.compareTo(dailyLimit) > 0)
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Transfer amount exceeds daily limit for external transfers");
-
-            // Calculate the total amount spent today including the current transaction
-            BigDecimal totalSpendToday = (fromAccount.getSpendToday() != null ? fromAccount.getSpendToday() : BigDecimal.ZERO)
-                    .add(transferAmount);
-
-            // Check if the total spent today exceeds the daily limit
-            if (totalSpendToday.compareTo(dailyLimit) > 0)
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "Transaction exceeds daily exchange limit for external transfers. Current spend: "
-                        + fromAccount.getSpendToday() + ", Daily limit: " + dailyLimit
-                );
-        }
-
-        // Validate if the transfer amount exceeds the absolute limit
-        if (transferAmount.compareTo(fromAccount.getAbsoluteLimit()) > 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Transfer amount exceeds absolute limit");
-        }
+        TransferCheck transfer = TransferCheck.of(fromAccount, toAccount, transferAmount, today);
+        TransferRejectReason reason = transferRuleEngine.evaluate(transfer);
+        if (reason != null)
+            throw new TransferRejectedException(reason, transferRuleEngine.describe(reason, transfer));
     }
 
     /**
@@ -383,18 +427,18 @@ public class TransactionServiceImpl implements TransactionService {
      * @param fromAccount The account from which the funds are transferred.
      * @param toAccount   The account to which the funds are transferred.
      * @param transaction The transaction being processed.
+     * @param today       The current day as epoch day, the spend counter is rolled over if it is from an earlier day.
      */
-    private void updateToAndFromAccount(Account fromAccount, Account toAccount, Transaction transaction) {
+    private void updateToAndFromAccount(Account fromAccount, Account toAccount, Transaction transaction, long today) {
         // Update the balances of both accounts
         fromAccount.setBalance(fromAccount.getBalance().subtract(transaction.getTransferAmount()));
         toAccount.setBalance(toAccount.getBalance().add(transaction.getTransferAmount()));
 
-        // If external transfer, update the spendToday value for the fromAccount
+        // If external transfer, add to today's spend of the fromAccount
         boolean isExternalTransfer = !fromAccount.getUser().equals(toAccount.getUser());
         if (isExternalTransfer) {
-            BigDecimal currentSpendToday = (fromAccount.getSpendToday() != null) ?
-                    fromAccount.getSpendToday() : BigDecimal.ZERO;
-            fromAccount.setSpendToday(currentSpendToday.add(transaction.getTransferAmount()));
+            fromAccount.addSpend(today, transaction.getTransferAmount());
+            spendTrackingService.recordSpend(fromAccount.getIban(), transaction.getTransferAmount(), transaction.getTimestamp());
         }
 
         // Add the transaction to both accounts
@@ -0,0 +1,12 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.User;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface TransactionStreamService {
+    // Server-sent events stream of new transactions of an account, resumed after the given event ID if present
+    SseEmitter subscribe(User execUser, String iban, String lastEventId);
+
+    // Number of open streams over all accounts
+    int getSubscriberCount();
+}
@@ -0,0 +1,317 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.Transaction;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.utils.TransactionPostedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * In-process hub that pushes newly posted transactions to server-sent events streams, one stream per account.
+ * <p>
+ * Streams are async servlet requests, an open stream holds no request thread and no database connection. A posted
+ * transaction is handed to the stream of both its accounts after the posting has committed; every stream has its own
+ * queue, drained by a virtual thread only while there is something to send, so a slow client never delays the posting
+ * path or the other streams. A client that falls more than {@code transaction-stream.max-pending} events behind is
+ * disconnected, and like any client that reconnects it resumes with the {@code Last-Event-ID} of the last transaction
+ * it received, the missed transactions are read back from the database. When more than
+ * {@code transaction-stream.max-replay} transactions were missed the stream sends a {@code reset} event instead,
+ * which clears the event ID, and the client reloads the transactions of the account. Streams are local to this
+ * instance.
+ * </p>
+ */
+@Service
+public class TransactionStreamServiceImpl implements TransactionStreamService {
+    private static final String EVENT_NAME = "transaction";
+    private static final String RESET_EVENT_NAME = "reset";
+
+    /// Queue items that are not transactions
+    private static final Object HEARTBEAT = new Object();
+    private static final Object REPLAY = new Object();
+
+    private final AccountService accountService;
+    private final TransactionRepository transactionRepository;
+    private final Duration timeout;
+    private final int maxSubscribers;
+    private final int maxPending;
+    private final int maxReplay;
+    private final Counter disconnectedCounter;
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("transaction-stream-", 0).factory());
+
+    /// One open stream, its queue is drained by at most one thread at a time
+    private static final class Subscriber {
+        private final String iban;
+        private final SseEmitter emitter;
+        private final long resumeAfter;
+        private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /// IDs sent by the replay, live events for these are skipped; only touched by the draining thread
+        private final Set<Long> replayed = new HashSet<>();
+
+        private Subscriber(String iban, SseEmitter emitter, long resumeAfter) {
+            this.iban = iban;
+            this.emitter = emitter;
+            this.resumeAfter = resumeAfter;
+        }
+    }
+
+    public TransactionStreamServiceImpl(AccountService accountService,
+                                        TransactionRepository transactionRepository,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${transaction-stream.timeout:PT30M}") Duration timeout,
+                                        @Value("${transaction-stream.max-subscribers:10000}") int maxSubscribers,
+                                        @Value("${transaction-stream.max-pending:1000}") int maxPending,
+                                        @Value("${transaction-stream.max-replay:500}") int maxReplay) {
+        this.accountService = accountService;
+        this.transactionRepository = transactionRepository;
+        this.timeout = timeout;
+        this.maxSubscribers = maxSubscribers;
+        this.maxPending = maxPending;
+        this.maxReplay = maxReplay;
+        this.disconnectedCounter = Counter.builder("springyield.stream.disconnected")
+                .description("Streams closed because the client fell too far behind")
+                .register(meterRegistry);
+        Gauge.builder("springyield.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open transaction streams")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        subscribers.values().forEach(streams -> streams.forEach(subscriber -> subscriber.emitter.complete()));
+        executor.shutdownNow();
+    }
+
+    /**
+     * Opens a stream of the transactions posted to or from an account from now on.
+     * <p>
+     * When {@code lastEventId} is given, the transactions of the account after that ID are sent first. When there are
+     * more than {@code transaction-stream.max-replay} of them, a {@code reset} event is sent instead. The account is
+     * checked on another thread, so the open-in-view EntityManager of this long-lived request never takes a database
+     * connection.
+     * </p>
+     *
+     * @param execUser    The user executing the request (must own the account or be an employee).
+     * @param iban        The IBAN of the account.
+     * @param lastEventId The ID of the last transaction the client received, or null for a new stream.
+     * @return The emitter of the stream.
+     * @throws ResponseStatusException 400 for an invalid Last-Event-ID, 401/403/404 as for viewing the account,
+     *                                 503 when the maximum number of streams is open.
+     */
+    public SseEmitter subscribe(User execUser, String iban, String lastEventId) {
+        if (execUser == null)
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated");
+
+        long resumeAfter = parseLastEventId(lastEventId);
+        if (subscriberCount.get() >= maxSubscribers)
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many open transaction streams");
+
+        Account account = callOnExecutor(() -> accountService.getAccountByIban(execUser, iban));
+
+        SseEmitter emitter = createEmitter();
+        Subscriber subscriber = new Subscriber(account.getIban(), emitter, resumeAfter);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        // The first heartbeat flushes the response headers, so the client knows the stream is open. The replay is queued
+        // before the stream is registered, so no live event can be sent ahead of a replay that also contains it
+        subscriber.pending.add(HEARTBEAT);
+        if (resumeAfter > 0)
+            subscriber.pending.add(REPLAY);
+        subscriber.pendingCount.set(subscriber.pending.size());
+
+        // Added inside compute, so it cannot race with the removal of the last stream of the account
+        subscribers.compute(subscriber.iban, (key, streams) -> {
+            Set<Subscriber> result = streams == null ? ConcurrentHashMap.newKeySet() : streams;
+            result.add(subscriber);
+            return result;
+        });
+        subscriberCount.incrementAndGet();
+
+        // Draining starts after registration, a transaction missed by the replay query is published live
+        scheduleDrain(subscriber);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /// Runs after the posting committed, or right away when it was not part of a transaction
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionPosted(TransactionPostedEvent event) {
+        TransactionRequestDto transaction = event.getTransaction();
+        publish(transaction.getFromAccount(), transaction);
+        if (!transaction.getToAccount().equals(transaction.getFromAccount()))
+            publish(transaction.getToAccount(), transaction);
+    }
+
+    /// Keeps idle streams open through proxies and detects clients that went away
+    @Scheduled(fixedDelayString = "${transaction-stream.heartbeat-interval:PT30S}")
+    public void sendHeartbeats() {
+        subscribers.values().forEach(streams -> streams.forEach(subscriber -> enqueue(subscriber, HEARTBEAT)));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private void publish(String iban, TransactionRequestDto transaction) {
+        Set<Subscriber> streams = iban == null ? null : subscribers.get(iban);
+        if (streams != null)
+            streams.forEach(subscriber -> enqueue(subscriber, transaction));
+    }
+
+    /// Never blocks, a client that does not keep up is disconnected and resumes with its Last-Event-ID
+    private void enqueue(Subscriber subscriber, Object item) {
+        if (subscriber.closed.get())
+            return;
+        if (subscriber.pendingCount.incrementAndGet() > maxPending) {
+            disconnectedCounter.increment();
+            remove(subscriber);
+            subscriber.emitter.complete();
+            return;
+        }
+        subscriber.pending.add(item);
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true))
+            executor.execute(() -> drain(subscriber));
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Object item;
+            while ((item = subscriber.pending.poll()) != null) {
+                subscriber.pendingCount.decrementAndGet();
+                send(subscriber, item);
+            }
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // An item added after the last poll but before the flag was cleared would otherwise wait for the next one
+        if (!subscriber.pending.isEmpty())
+            scheduleDrain(subscriber);
+    }
+
+    private void send(Subscriber subscriber, Object item) {
+        if (subscriber.closed.get())
+            return;
+        try {
+            if (item == HEARTBEAT) {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            } else if (item == REPLAY) {
+                replay(subscriber);
+            } else if (item instanceof TransactionRequestDto transaction) {
+                Long id = transaction.getTransactionId();
+                if (id > subscriber.resumeAfter && !subscriber.replayed.contains(id))
+                    subscriber.emitter.send(toEvent(transaction));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client went away, the container reports it through onError as well
+            remove(subscriber);
+        } catch (RuntimeException e) {
+            remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    /// Sends the missed transactions, or a reset when there are too many to send
+    private void replay(Subscriber subscriber) throws IOException {
+        List<Transaction> missed = transactionRepository.findByIbanAfter(subscriber.iban, subscriber.resumeAfter, Limit.of(maxReplay + 1));
+        if (missed.size() > maxReplay) {
+            // An empty ID clears the Last-Event-ID of the client, it must not resume past the transactions it missed
+            subscriber.emitter.send(SseEmitter.event()
+                    .id("")
+                    .name(RESET_EVENT_NAME)
+                    .data("More than " + maxReplay + " transactions were missed, reload the transactions of the account"));
+            return;
+        }
+
+        for (Transaction transaction : missed) {
+            subscriber.emitter.send(toEvent(TransactionRequestDto.wrap(transaction)));
+            subscriber.replayed.add(transaction.getTransactionId());
+        }
+    }
+
+    /// Overridden in tests to capture the events
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeout.toMillis());
+    }
+
+    private static SseEmitter.SseEventBuilder toEvent(TransactionRequestDto transaction) {
+        return SseEmitter.event()
+                .id(String.valueOf(transaction.getTransactionId()))
+                .name(EVENT_NAME)
+                .data(transaction, MediaType.APPLICATION_JSON);
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true))
+            return;
+        subscriberCount.decrementAndGet();
+        subscribers.computeIfPresent(subscriber.iban, (iban, streams) -> {
+            streams.remove(subscriber);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+
+    private static long parseLastEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank())
+            return 0;
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Last-Event-ID: " + lastEventId);
+        }
+    }
+
+    /// Runs the call on a virtual thread and waits for it, rethrowing its exception as is
+    private <T> T callOnExecutor(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.User;
+
+import java.math.BigDecimal;
+
+/**
+ * The transfer being validated, with the values several rules need computed once up front.
+ *
+ * @param fromAccount    The account from which the funds are transferred.
+ * @param toAccount      The account to which the funds are transferred.
+ * @param amount         The amount of money to be transferred.
+ * @param external       Whether the accounts have different owners.
+ * @param balanceAfter   The balance of the from account after the transfer.
+ * @param spendToday     The external spend of the from account today, before this transfer.
+ * @param toIban         The IBAN of the to account, without spaces and in upper case.
+ */
+public record TransferCheck(
+        Account fromAccount,
+        Account toAccount,
+        BigDecimal amount,
+        boolean external,
+        BigDecimal balanceAfter,
+        BigDecimal spendToday,
+        String toIban
+) {
+    /**
+     * Prepares a transfer for validation.
+     *
+     * @param fromAccount The account from which the funds are transferred.
+     * @param toAccount   The account to which the funds are transferred.
+     * @param amount      The amount of money to be transferred.
+     * @param today       The current day as epoch day, spend counted on an earlier day does not count.
+     */
+    public static TransferCheck of(Account fromAccount, Account toAccount, BigDecimal amount, long today) {
+        return new TransferCheck(
+                fromAccount,
+                toAccount,
+                amount,
+                !sameOwner(fromAccount.getUser(), toAccount.getUser()),
+                fromAccount.getBalance().subtract(amount),
+                fromAccount.getSpendOn(today),
+                toAccount.getIban() == null ? "" : toAccount.getIban().replace(" ", "").toUpperCase()
+        );
+    }
+
+    /// Compares owners by id, an account without an owner never belongs to the same owner
+    private static boolean sameOwner(User from, User to) {
+        if (from == null || to == null)
+            return false;
+        if (from.getUserId() == null || to.getUserId() == null)
+            return from.equals(to);
+        return from.getUserId().equals(to.getUserId());
+    }
+}
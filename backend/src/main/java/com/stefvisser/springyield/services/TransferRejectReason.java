@@ -0,0 +1,29 @@
+package com.stefvisser.springyield.services;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Reason codes returned by the transfer rules, each mapped to the HTTP status the API responds with.
+ */
+public enum TransferRejectReason {
+    SAVINGS_OTHER_OWNER(HttpStatus.FORBIDDEN),
+    NON_POSITIVE_AMOUNT(HttpStatus.BAD_REQUEST),
+    ABSOLUTE_LIMIT(HttpStatus.BAD_REQUEST),
+    BALANCE_FLOOR(HttpStatus.BAD_REQUEST),
+    DAILY_LIMIT_SINGLE(HttpStatus.BAD_REQUEST),
+    DAILY_LIMIT(HttpStatus.BAD_REQUEST),
+    WEEKLY_LIMIT(HttpStatus.BAD_REQUEST),
+    MONTHLY_LIMIT(HttpStatus.BAD_REQUEST),
+    VELOCITY(HttpStatus.TOO_MANY_REQUESTS),
+    BLOCKED_COUNTERPARTY(HttpStatus.FORBIDDEN);
+
+    private final HttpStatus status;
+
+    TransferRejectReason(HttpStatus status) {
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
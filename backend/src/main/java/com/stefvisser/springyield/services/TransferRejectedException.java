@@ -0,0 +1,26 @@
+package com.stefvisser.springyield.services;
+
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Thrown when a transfer is rejected by one of the transfer rules.
+ * <p>
+ * Rejections are an expected outcome of user input rather than a fault, so no stack trace is captured.
+ * </p>
+ */
+public class TransferRejectedException extends ResponseStatusException {
+    private final TransferRejectReason reasonCode;
+
+    public TransferRejectedException(TransferRejectReason reasonCode, String message) {
+        super(reasonCode.getStatus(), message);
+        this.reasonCode = reasonCode;
+    }
+
+    public TransferRejectReason getReasonCode() {
+        return reasonCode;
+    }
+
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
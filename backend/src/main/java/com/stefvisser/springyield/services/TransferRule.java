@@ -0,0 +1,10 @@
+package com.stefvisser.springyield.services;
+
+/**
+ * A single transfer validation rule.
+ */
+@FunctionalInterface
+public interface TransferRule {
+    // Returns the reason the transfer is rejected, or null if this rule allows it
+    TransferRejectReason check(TransferCheck transfer);
+}
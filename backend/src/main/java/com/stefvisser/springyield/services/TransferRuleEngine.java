@@ -0,0 +1,203 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.config.TransferRuleProperties;
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.AccountType;
+import com.stefvisser.springyield.models.SpendWindow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validates transfers against the rules configured per account type.
+ * <p>
+ * The rule names from {@link TransferRuleProperties} are compiled once at startup into an array of rules per
+ * account type, together with their counters, so validating a transfer is a plain loop that stops at the first
+ * rejection. Rules return a {@link TransferRejectReason} instead of throwing; the error message is only built
+ * for the rejection that is actually reported. The values several rules share are computed once per transfer,
+ * in its {@link TransferCheck}.
+ * </p>
+ */
+@Component
+public class TransferRuleEngine {
+    private static final String EVALUATED_METRIC = "springyield.transfer.rules.evaluated";
+    private static final String REJECTED_METRIC = "springyield.transfer.rules.rejected";
+    private static final String REJECTIONS_METRIC = "springyield.transfer.rejections";
+
+    /// The rules of one account type in evaluation order, with a counter pair per rule at the same index
+    private record Pipeline(TransferRule[] rules, Counter[] evaluated, Counter[] rejected) {
+    }
+
+    private final SpendTrackingService spendTrackingService;
+    private final int maxTransfersPerDay;
+    private final Set<String> blockedIbans;
+    private final Map<AccountType, Pipeline> pipelines = new EnumMap<>(AccountType.class);
+    private final Map<TransferRejectReason, Counter> rejections = new EnumMap<>(TransferRejectReason.class);
+
+    public TransferRuleEngine(TransferRuleProperties properties, SpendTrackingService spendTrackingService, MeterRegistry meterRegistry) {
+        this.spendTrackingService = spendTrackingService;
+        this.maxTransfersPerDay = properties.getMaxTransfersPerDay();
+        this.blockedIbans = new HashSet<>();
+        for (String iban : properties.getBlockedIbans())
+            blockedIbans.add(iban.replace(" ", "").toUpperCase());
+
+        Map<String, TransferRule> available = availableRules();
+        for (AccountType accountType : AccountType.values())
+            pipelines.put(accountType, compile(accountType, properties.pipelineFor(accountType), available, meterRegistry));
+
+        // One rule can reject for several reasons (e.g. daily-limit), so rejections are also counted per reason
+        for (TransferRejectReason reason : TransferRejectReason.values())
+            rejections.put(reason, Counter.builder(REJECTIONS_METRIC)
+                    .description("Transfers rejected, by reason")
+                    .tag("reason", reason.name())
+                    .tag("status", String.valueOf(reason.getStatus().value()))
+                    .register(meterRegistry));
+    }
+
+    /**
+     * Runs the rules for the account type of the sending account, in order.
+     *
+     * @param transfer the transfer to validate
+     * @return the reason of the first rule that rejects the transfer, or null if all rules allow it
+     */
+    public TransferRejectReason evaluate(TransferCheck transfer) {
+        Pipeline pipeline = pipelines.get(transfer.fromAccount().getAccountType());
+        TransferRule[] rules = pipeline.rules();
+        for (int i = 0; i < rules.length; i++) {
+            pipeline.evaluated()[i].increment();
+            TransferRejectReason reason = rules[i].check(transfer);
+            if (reason != null) {
+                pipeline.rejected()[i].increment();
+                rejections.get(reason).increment();
+                return reason;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the error message reported to the user for a rejected transfer.
+     *
+     * @param reason   the reason returned by {@link #evaluate(TransferCheck)}
+     * @param transfer the rejected transfer
+     * @return a message describing why the transfer was rejected
+     */
+    public String describe(TransferRejectReason reason, TransferCheck transfer) {
+        Account fromAccount = transfer.fromAccount();
+        return switch (reason) {
+            case SAVINGS_OTHER_OWNER -> "Savings accounts can only be used for transfers between accounts of the same owner";
+            case NON_POSITIVE_AMOUNT -> "Transfer amount must be greater than zero";
+            case ABSOLUTE_LIMIT -> "Transfer amount exceeds account limit";
+            case BALANCE_FLOOR -> "Insufficient balance for transfer, cannot go below balance limit: " + fromAccount.getBalanceLimit();
+            case DAILY_LIMIT_SINGLE -> "Transfer amount exceeds daily limit for external transfers";
+            case DAILY_LIMIT -> "Transaction exceeds daily exchange limit for external transfers. Current spend: "
+                    + transfer.spendToday() + ", Daily limit: " + fromAccount.getDailyLimit();
+            case WEEKLY_LIMIT -> describeSpendLimit("weekly", fromAccount, SpendWindow.WEEK, fromAccount.getWeeklyLimit());
+            case MONTHLY_LIMIT -> describeSpendLimit("monthly", fromAccount, SpendWindow.MONTH, fromAccount.getMonthlyLimit());
+            case VELOCITY -> "Too many external transfers within a day, limit: " + maxTransfersPerDay;
+            case BLOCKED_COUNTERPARTY -> "Transfers to this account are not allowed";
+        };
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Rules
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// All rules that can be referenced by name from the pipelines configuration
+    private Map<String, TransferRule> availableRules() {
+        Map<String, TransferRule> rules = new HashMap<>();
+
+        // Savings accounts can only transfer to and from accounts of the same owner
+        rules.put("savings-owner", transfer -> transfer.external()
+                && (transfer.fromAccount().getAccountType() == AccountType.SAVINGS || transfer.toAccount().getAccountType() == AccountType.SAVINGS)
+                ? TransferRejectReason.SAVINGS_OTHER_OWNER : null);
+
+        rules.put("positive-amount", transfer -> transfer.amount().signum() <= 0
+                ? TransferRejectReason.NON_POSITIVE_AMOUNT : null);
+
+        rules.put("absolute-limit", transfer -> transfer.amount().compareTo(transfer.fromAccount().getAbsoluteLimit()) > 0
+                ? TransferRejectReason.ABSOLUTE_LIMIT : null);
+
+        // balanceLimit is negative, so the balance may go below zero down to the limit
+        rules.put("balance-floor", transfer -> transfer.balanceAfter().compareTo(transfer.fromAccount().getBalanceLimit()) < 0
+                ? TransferRejectReason.BALANCE_FLOOR : null);
+
+        // The daily limit only applies to external transfers, both per transfer and for the total spent today
+        rules.put("daily-limit", transfer -> {
+            if (!transfer.external())
+                return null;
+            BigDecimal dailyLimit = transfer.fromAccount().getDailyLimit();
+            if (transfer.amount().compareTo(dailyLimit) > 0)
+                return TransferRejectReason.DAILY_LIMIT_SINGLE;
+            if (transfer.spendToday().add(transfer.amount()).compareTo(dailyLimit) > 0)
+                return TransferRejectReason.DAILY_LIMIT;
+            return null;
+        });
+
+        rules.put("weekly-limit", transfer -> exceedsSpendLimit(transfer, SpendWindow.WEEK, transfer.fromAccount().getWeeklyLimit())
+                ? TransferRejectReason.WEEKLY_LIMIT : null);
+
+        rules.put("monthly-limit", transfer -> exceedsSpendLimit(transfer, SpendWindow.MONTH, transfer.fromAccount().getMonthlyLimit())
+                ? TransferRejectReason.MONTHLY_LIMIT : null);
+
+        rules.put("velocity", transfer -> transfer.external() && maxTransfersPerDay > 0
+                && spendTrackingService.getTransferCount(transfer.fromAccount().getIban(), SpendWindow.DAY) >= maxTransfersPerDay
+                ? TransferRejectReason.VELOCITY : null);
+
+        rules.put("blocklist", transfer -> !blockedIbans.isEmpty() && blockedIbans.contains(transfer.toIban())
+                ? TransferRejectReason.BLOCKED_COUNTERPARTY : null);
+
+        return rules;
+    }
+
+    /// Rolling limits use the in-memory spend counters instead of the transaction history, no limit when null
+    private boolean exceedsSpendLimit(TransferCheck transfer, SpendWindow window, BigDecimal limit) {
+        if (!transfer.external() || limit == null)
+            return false;
+        BigDecimal spend = spendTrackingService.getSpend(transfer.fromAccount().getIban(), window);
+        return spend.add(transfer.amount()).compareTo(limit) > 0;
+    }
+
+    private String describeSpendLimit(String label, Account fromAccount, SpendWindow window, BigDecimal limit) {
+        return "Transaction exceeds " + label + " limit for external transfers. Current spend: "
+                + spendTrackingService.getSpend(fromAccount.getIban(), window) + ", Limit: " + limit;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private Pipeline compile(AccountType accountType, List<String> names, Map<String, TransferRule> available, MeterRegistry meterRegistry) {
+        TransferRule[] rules = new TransferRule[names.size()];
+        Counter[] evaluated = new Counter[names.size()];
+        Counter[] rejected = new Counter[names.size()];
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            rules[i] = available.get(name);
+            if (rules[i] == null)
+                throw new IllegalStateException("Unknown transfer rule '" + name + "' configured for " + accountType
+                        + ", available rules: " + available.keySet());
+
+            evaluated[i] = Counter.builder(EVALUATED_METRIC)
+                    .description("Transfers checked against a transfer rule")
+                    .tag("rule", name)
+                    .tag("accountType", accountType.name())
+                    .register(meterRegistry);
+            rejected[i] = Counter.builder(REJECTED_METRIC)
+                    .description("Transfers rejected by a transfer rule")
+                    .tag("rule", name)
+                    .tag("accountType", accountType.name())
+                    .register(meterRegistry);
+        }
+        return new Pipeline(rules, evaluated, rejected);
+    }
+}
@@ -9,23 +9,35 @@ import com.stefvisser.springyield.dto.*;
 import com.stefvisser.springyield.models.*;
 import com.stefvisser.springyield.repositories.AccountRepository;
 import com.stefvisser.springyield.repositories.UserRepository;
+import com.stefvisser.springyield.utils.SearchCoalescer;
+import com.stefvisser.springyield.utils.SearchEvent;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 @Primary
 @Service
+@Timed(value = "springyield.service", extraTags = {"service", "user"})
 class UserServiceImpl implements UserService {
     private final AccountService accountService;
     private final UserRepository userRepository;
+    private final TokenRevocationService tokenRevocationService;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final SearchCoalescer searchCoalescer;
 
-    public UserServiceImpl(AccountService accountService, UserRepository userRepository, AccountRepository accountRepository) {
+    /// The normalized parameters of a user search, admins see other results than employees so that is part of the key
+    private record SearchKey(String query, UserRole role, int limit, int offset, boolean isAdmin) {
+    }
+
+    public UserServiceImpl(AccountService accountService, UserRepository userRepository, AccountRepository accountRepository, TokenRevocationService tokenRevocationService, SearchCoalescer searchCoalescer) {
         this.accountService = accountService;
         this.userRepository = userRepository;
+        this.tokenRevocationService = tokenRevocationService;
         this.passwordEncoder = new BCryptPasswordEncoder();
+        this.searchCoalescer = searchCoalescer;
     }
 
     // -----------------------------------------------------------------------------------------------------------------
@@ -90,7 +102,13 @@ class UserServiceImpl implements UserService {
         if (query == null) query = "";
         boolean isAdmin = execUser.getRole() == UserRole.ADMIN;
 
-        return userRepository.search(query, role, limit, offset, isAdmin);
+        String searchQuery = query;
+        int pageLimit = limit;
+        int pageOffset = offset;
+        // Results only differ between admins and employees, so identical searches running at the same time share one execution
+        SearchKey key = new SearchKey(SearchCoalescer.normalize(searchQuery), role, pageLimit, pageOffset, isAdmin);
+        return searchCoalescer.coalesce("user", key, () -> SearchEvent.record("user", searchQuery, pageLimit, pageOffset,
+                () -> userRepository.search(searchQuery, role, pageLimit, pageOffset, isAdmin)));
     }
 
     /**
@@ -184,7 +202,11 @@ class UserServiceImpl implements UserService {
         if (userUpdateDto.getEmail() != null) targetUser.setEmail(userUpdateDto.getEmail());
         if (userUpdateDto.getBsnNumber() != null) targetUser.setBsnNumber(userUpdateDto.getBsnNumber());
         if (userUpdateDto.getPhoneNumber() != null) targetUser.setPhoneNumber(userUpdateDto.getPhoneNumber());
-        if (userUpdateDto.getRole() != null) targetUser.setRole(userUpdateDto.getRole());
+        if (userUpdateDto.getRole() != null && userUpdateDto.getRole() != targetUser.getRole()) {
+            targetUser.setRole(userUpdateDto.getRole());
+            // Tokens carry the old role claim, so they must not outlive the role change
+            tokenRevocationService.revokeAllTokens(targetUserId);
+        }
         if (userUpdateDto.getPassword() != null)
             targetUser.setPassword(passwordEncoder.encode(userUpdateDto.getPassword().trim()));
 
@@ -236,8 +258,9 @@ class UserServiceImpl implements UserService {
             accountService.saveAll(accountsToUpdate);
         }
 
-        // Now delete the user
+        // Now delete the user, and make sure their existing tokens can no longer be used
         userRepository.delete(targetUser);
+        tokenRevocationService.revokeAllTokens(targetUserId);
     }
 
 
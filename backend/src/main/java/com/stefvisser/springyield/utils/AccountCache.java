@@ -0,0 +1,226 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of account state, keyed by the IBAN exactly as it is stored. Lookups match the IBAN
+ * exactly, like the database does, so another spelling of a cached IBAN is a miss and not found either way.
+ * <p>
+ * Entries are detached copies taken when the account was read, callers get a fresh copy on every hit with only the
+ * identity and role of the owner and without transactions, so a cached account can be shown and used for access
+ * checks but never written back. Code that changes an account must read it from the database and save it through
+ * {@code AccountService}, which evicts the entry again after the change has committed.
+ * </p>
+ * <p>
+ * Every entry carries the {@link Account#getVersion() version} it was read at. An eviction leaves a marker with the
+ * committed version, and an entry read at a lower version is never stored over it, so a read that raced with a write
+ * cannot put the old state back. Reads for an update compare the cached version with the database and count entries
+ * that were behind in {@code springyield.account-cache.stale}. Next to it the cache publishes hits and misses, the
+ * hit ratio and its size under {@code springyield.account-cache.*}.
+ * </p>
+ * <p>
+ * Evictions only reach the cache of this instance, entries expire after {@code account-cache.ttl} so a change made
+ * through another instance is seen within that time.
+ * </p>
+ */
+@Component
+public class AccountCache {
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter staleCounter;
+    private final DistributionSummary stalenessSummary;
+
+    /// An account, or null for an evicted account, with the version it was read at; guarded by this
+    private record Entry(Account account, long version, long loadedAt) {
+    }
+
+    /// Access-ordered, so the least recently used entry is dropped when the cache is full; guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    public AccountCache(MeterRegistry meterRegistry,
+                        @Value("${account-cache.enabled:true}") boolean enabled,
+                        @Value("${account-cache.max-size:10000}") int maxSize,
+                        @Value("${account-cache.ttl:PT30S}") Duration ttl) {
+        this.enabled = enabled;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = ttl.toNanos();
+        this.hitCounter = requestCounter(meterRegistry, "hit");
+        this.missCounter = requestCounter(meterRegistry, "miss");
+        this.staleCounter = Counter.builder("springyield.account-cache.stale")
+                .description("Cached accounts found behind the database when the account was read for an update")
+                .register(meterRegistry);
+        this.stalenessSummary = DistributionSummary.builder("springyield.account-cache.staleness")
+                .description("Versions a stale cached account was behind the database")
+                .register(meterRegistry);
+        Gauge.builder("springyield.account-cache.size", this, AccountCache::size)
+                .description("Accounts and eviction markers in the account cache")
+                .register(meterRegistry);
+        Gauge.builder("springyield.account-cache.hit-ratio", this, AccountCache::hitRatio)
+                .description("Fraction of account lookups served from the account cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a copy of the cached account, or loads it and caches it when it is not cached.
+     *
+     * @param iban   the IBAN as given by the caller
+     * @param loader reads the account from the database, returns null when there is no such account
+     * @return a detached copy on a hit, the loaded account on a miss, or null when the account does not exist
+     */
+    public Account getOrLoad(String iban, Function<String, Account> loader) {
+        if (!enabled || iban == null)
+            return loader.apply(iban);
+
+        synchronized (this) {
+            Entry entry = entries.get(iban);
+            if (entry != null && entry.account() != null && System.nanoTime() - entry.loadedAt() < ttlNanos) {
+                hitCounter.increment();
+                return copy(entry.account());
+            }
+        }
+
+        missCounter.increment();
+        Account account = loader.apply(iban);
+        if (account != null)
+            store(account);
+        return account;
+    }
+
+    /**
+     * Stores an account just read from the database for an update, and counts the cached entry as stale if it was
+     * behind.
+     *
+     * @param account the account as read from the database, before it is changed
+     */
+    public synchronized void refresh(Account account) {
+        if (!enabled || account == null || account.getIban() == null)
+            return;
+
+        Entry entry = entries.get(account.getIban());
+        if (entry != null && entry.account() != null && entry.version() < version(account)) {
+            staleCounter.increment();
+            stalenessSummary.record(version(account) - entry.version());
+        }
+        store(account);
+    }
+
+    /**
+     * Evicts a changed account. Within a transaction the account is evicted again after the commit, with the
+     * version the commit wrote, so a read between the change and the commit cannot keep the old state cached.
+     *
+     * @param account the account that was saved
+     */
+    public void evict(Account account) {
+        if (!enabled || account == null || account.getIban() == null)
+            return;
+
+        markEvicted(account);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                public void afterCommit() {
+                    markEvicted(account);
+                }
+            });
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Stores the account unless the cache already knows a newer version
+    private synchronized void store(Account account) {
+        if (account.getIban() == null)
+            return;
+
+        String key = account.getIban();
+        Entry entry = entries.get(key);
+        long version = version(account);
+        if (entry != null && entry.version() > version)
+            return;
+        entries.put(key, new Entry(copy(account), version, System.nanoTime()));
+    }
+
+    private synchronized void markEvicted(Account account) {
+        String key = account.getIban();
+        Entry entry = entries.get(key);
+        long version = Math.max(version(account), entry == null ? Long.MIN_VALUE : entry.version());
+        entries.put(key, new Entry(null, version, System.nanoTime()));
+    }
+
+    private static long version(Account account) {
+        return account.getVersion() == null ? -1 : account.getVersion();
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    /// The scalar state of the account, the owner reduced to identity and role, and no transactions
+    private static Account copy(Account account) {
+        Account copy = new Account();
+        copy.setAccountId(account.getAccountId());
+        copy.setIban(account.getIban());
+        copy.setRegistrationDate(account.getRegistrationDate());
+        copy.setAccountType(account.getAccountType());
+        copy.setDailyLimit(account.getDailyLimit());
+        copy.setAbsoluteLimit(account.getAbsoluteLimit());
+        copy.setBalance(account.getBalance());
+        copy.setBalanceLimit(account.getBalanceLimit());
+        copy.setStatus(account.getStatus());
+        copy.setSpendToday(account.getSpendOn(account.getSpendDay() == null ? 0 : account.getSpendDay()));
+        copy.setSpendDay(account.getSpendDay());
+        copy.setWeeklyLimit(account.getWeeklyLimit());
+        copy.setMonthlyLimit(account.getMonthlyLimit());
+        copy.setVersion(account.getVersion());
+        copy.setTransactions(List.of());
+
+        User user = account.getUser();
+        if (user != null) {
+            User owner = new User();
+            owner.setUserId(user.getUserId());
+            owner.setFirstName(user.getFirstName());
+            owner.setLastName(user.getLastName());
+            owner.setEmail(user.getEmail());
+            owner.setRole(user.getRole());
+            owner.setAccounts(List.of());
+            copy.setUser(owner);
+        }
+        return copy;
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("springyield.account-cache.requests")
+                .description("Account lookups by IBAN, served from the cache or loaded from the database")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
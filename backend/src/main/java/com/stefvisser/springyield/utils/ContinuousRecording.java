@@ -0,0 +1,91 @@
+package com.stefvisser.springyield.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Keeps a Java Flight Recorder recording running for the lifetime of the application, so an incident can be
+ * analyzed afterwards instead of having to be reproduced.
+ * <p>
+ * The recording uses the low overhead {@code default} settings and is bounded by {@code jfr.continuous.max-age} and
+ * {@code jfr.continuous.max-size}, older data is dropped like in a ring buffer. Our own events are only recorded
+ * when they take longer than {@code jfr.continuous.event-threshold}. Dump the recording while running with
+ * {@code jcmd <pid> JFR.dump name=springyield filename=incident.jfr}; on shutdown it is dumped to
+ * {@code jfr.continuous.directory}. Enabled by the {@code jfr} profile.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "jfr.continuous.enabled", havingValue = "true")
+public class ContinuousRecording {
+    private static final Logger log = LoggerFactory.getLogger(ContinuousRecording.class);
+    private static final String RECORDING_NAME = "springyield";
+
+    private final String settings;
+    private final Duration maxAge;
+    private final DataSize maxSize;
+    private final Duration eventThreshold;
+    private final Path directory;
+    private Recording recording;
+
+    public ContinuousRecording(@Value("${jfr.continuous.settings:default}") String settings,
+                               @Value("${jfr.continuous.max-age:PT1H}") Duration maxAge,
+                               @Value("${jfr.continuous.max-size:256MB}") DataSize maxSize,
+                               @Value("${jfr.continuous.event-threshold:10ms}") Duration eventThreshold,
+                               @Value("${jfr.continuous.directory:./data/jfr}") String directory) {
+        this.settings = settings;
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+        this.eventThreshold = eventThreshold;
+        this.directory = Path.of(directory);
+    }
+
+    @PostConstruct
+    public void start() throws IOException, ParseException {
+        recording = new Recording(Configuration.getConfiguration(settings));
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+
+        recording.enable(TransferPhaseEvent.class).withThreshold(eventThreshold);
+        recording.enable(SearchEvent.class).withThreshold(eventThreshold);
+        recording.enable(JwtVerificationEvent.class).withThreshold(eventThreshold);
+
+        recording.start();
+        log.info("Started continuous JFR recording '{}' ({} settings, max age {}, max size {})",
+                RECORDING_NAME, settings, maxAge, maxSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording == null)
+            return;
+        try {
+            Files.createDirectories(directory);
+            Path dump = directory.resolve(RECORDING_NAME + "-"
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+            recording.dump(dump);
+            log.info("Dumped continuous JFR recording to {}", dump);
+        } catch (IOException e) {
+            log.warn("Could not dump continuous JFR recording: {}", e.getMessage());
+        } finally {
+            recording.close();
+        }
+    }
+}
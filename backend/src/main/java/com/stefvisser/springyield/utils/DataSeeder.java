@@ -1,14 +1,25 @@
 package com.stefvisser.springyield.utils;
 
 import com.github.javafaker.Faker;
+import com.stefvisser.springyield.config.SyntheticDataProperties;
 import com.stefvisser.springyield.models.*;
+import com.stefvisser.springyield.repositories.AccountRepository;
 import com.stefvisser.springyield.services.AccountService;
+import com.stefvisser.springyield.services.IbanService;
 import com.stefvisser.springyield.services.TransactionService;
 import com.stefvisser.springyield.services.UserService;
-import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.iban4j.CountryCode;
 import org.iban4j.Iban;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -17,41 +28,141 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Primary
 public class DataSeeder {
+    private static final Logger log = LoggerFactory.getLogger(DataSeeder.class);
+    private static final int SAVE_BATCH_SIZE = 500;
+
     private final UserService userService;
     private final TransactionService transactionService;
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
     private final Faker faker;
     private final List<Transaction> generatedTransactions = new ArrayList<>();
     private final org.iban4j.Iban.Builder ibanBuilder;
-
-    public DataSeeder(UserService userService, TransactionService transactionService) {
+    private final int randomUsers;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectProvider<SyntheticDataGenerator> syntheticDataGenerator;
+    private final SyntheticDataProperties syntheticDataProperties;
+    private final DatasetSnapshot datasetSnapshot;
+    private final IbanService ibanService;
+    private final AccountRepository accountRepository;
+
+    /// progress in steps: batches of random users, their transactions, the ATM user, the default users and the
+    /// synthetic dataset (loadtest profile only)
+    private final AtomicInteger completedSteps = new AtomicInteger();
+    private final int totalSteps;
+    private volatile boolean seeded;
+    private volatile Throwable failure;
+
+    public DataSeeder(UserService userService, TransactionService transactionService,
+                      @Value("${seeder.random-users:5000}") int randomUsers,
+                      ApplicationEventPublisher eventPublisher,
+                      ObjectProvider<SyntheticDataGenerator> syntheticDataGenerator,
+                      SyntheticDataProperties syntheticDataProperties,
+                      DatasetSnapshot datasetSnapshot,
+                      IbanService ibanService,
+                      MeterRegistry meterRegistry,
+                      AccountRepository accountRepository) {
         this.userService = userService;
         this.transactionService = transactionService;
+        this.randomUsers = randomUsers;
+        this.eventPublisher = eventPublisher;
+        this.syntheticDataGenerator = syntheticDataGenerator;
+        this.syntheticDataProperties = syntheticDataProperties;
+        this.datasetSnapshot = datasetSnapshot;
+        this.ibanService = ibanService;
+        this.accountRepository = accountRepository;
+        this.totalSteps = (randomUsers + SAVE_BATCH_SIZE - 1) / SAVE_BATCH_SIZE + 3
+                + (syntheticDataGenerator.getIfAvailable() != null ? 1 : 0);
+
+        Gauge.builder("springyield.seeding.progress", this, DataSeeder::getProgress)
+                .description("Fraction of the seed data that has been saved, 1 when seeding is complete")
+                .register(meterRegistry);
 
         this.faker = new Faker(new Locale("nl", "NL"));
         this.bCryptPasswordEncoder = new BCryptPasswordEncoder();
         this.ibanBuilder = new Iban.Builder().countryCode(CountryCode.NL).bankCode("SPYD");
     }
 
-    @PostConstruct
+    /**
+     * Starts seeding on a background thread once the application is ready, so startup does not wait for thousands
+     * of users and transactions to be saved. Until seeding completes, {@link SeedingHealthIndicator} keeps the
+     * readiness probe OUT_OF_SERVICE.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSeeding() {
+        Thread.ofPlatform()
+                .name("data-seeder")
+                .daemon(true)
+                .start(this::initializeDefaultSeederData);
+    }
+
     /*
      * Initializes default seeder data.
-     * Called by the application startup process to populate the database
-     * With data such as default users, accounts, and transactions.
+     * Populates the database with data such as default users, accounts, and transactions,
+     * followed by the synthetic dataset when the loadtest profile is active.
      *
-     * The @PostConstruct annotation (Jakarta EE) specification
-     * is used to signal a method that should be called after dependency injection
-     * is complete but before the bean is put into service.
-     * So this method will be executed automatically
+     * A database that already holds data (file-backed mode) is left alone, and when a snapshot of the
+     * same seed data exists it is restored instead of generating everything again.
      */
     public void initializeDefaultSeederData() {
-        addRandomUsers(5000);
+        long start = System.currentTimeMillis();
+        try {
+            String seedConfiguration = seedConfiguration();
+            if (datasetSnapshot.hasExistingData()) {
+                log.info("Database already contains data, skipping seeding");
+                // Accounts stored before they were versioned have no version yet
+                int initialized = accountRepository.initializeMissingVersions();
+                if (initialized > 0)
+                    log.info("Initialized the version of {} accounts", initialized);
+            } else if (!datasetSnapshot.restore(seedConfiguration)) {
+                seed();
+                datasetSnapshot.export(seedConfiguration);
+            }
+
+            completedSteps.set(totalSteps);
+            seeded = true;
+            log.info("Seed data ready in {} ms", System.currentTimeMillis() - start);
+            eventPublisher.publishEvent(new SeedingCompletedEvent(this));
+        } catch (RuntimeException e) {
+            failure = e;
+            log.error("Seeding failed after {} of {} steps", completedSteps.get(), totalSteps, e);
+        }
+    }
+
+    private void seed() {
+        addRandomUsers(randomUsers);
         createAtmsUser();
+        completedSteps.incrementAndGet();
         addDefaultUsers();
+        completedSteps.incrementAndGet();
+
+        SyntheticDataGenerator generator = syntheticDataGenerator.getIfAvailable();
+        if (generator != null) {
+            generator.generate();
+            completedSteps.incrementAndGet();
+        }
+    }
+
+    /// The settings that determine the seed data, a snapshot is only restored when they are unchanged
+    private String seedConfiguration() {
+        return "random-users=" + randomUsers + ";synthetic="
+                + (syntheticDataGenerator.getIfAvailable() != null ? syntheticDataProperties : "none");
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public double getProgress() {
+        return seeded ? 1.0 : Math.min(1.0, (double) completedSteps.get() / totalSteps);
     }
 
     // -----------------------------------------------------------------------------------------------------------------
@@ -108,11 +219,16 @@ public class DataSeeder {
     // @Transactional // Consider if this method also needs to be transactional if it involves lazy loading or multiple DB operations
     private void addRandomUsers(int count) {
         List<User> fakeUsers = this.generateFakeUsers(count);
-        userService.saveAll(fakeUsers);
+        // Save in batches, so progress can be reported while seeding
+        for (int i = 0; i < fakeUsers.size(); i += SAVE_BATCH_SIZE) {
+            userService.saveAll(fakeUsers.subList(i, Math.min(i + SAVE_BATCH_SIZE, fakeUsers.size())));
+            completedSteps.incrementAndGet();
+        }
         List<Transaction> transactions = generatedTransactions;
         if (transactions != null && !transactions.isEmpty()) {
             transactionService.saveAll(transactions);
         }
+        completedSteps.incrementAndGet();
     }
 
     //------------------------------------------------------------------------------------------------------------------
@@ -225,13 +341,8 @@ public class DataSeeder {
     }
 
     public String getRandomIban() {
-        // Generate 4 random uppercase letters for the bank code
-        String randomBankCode = faker.regexify("[A-Z]{4}");
-        return new Iban.Builder()
-                .countryCode(CountryCode.NL)
-                .bankCode(randomBankCode)
-                .buildRandom()
-                .toFormattedString();
+        // Allocated instead of random, so seeded accounts never collide with each other or with new accounts
+        return ibanService.nextIban();
     }
 
     private void createAtmsUser() {
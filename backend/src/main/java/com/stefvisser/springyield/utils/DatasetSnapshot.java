@@ -0,0 +1,138 @@
+package com.stefvisser.springyield.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Saves the seeded H2 database to a compressed script and restores it on later boots, so the seed data does not
+ * have to be generated (and its passwords hashed) on every start.
+ * <p>
+ * Snapshots are stored in {@code seeder.snapshot.directory}, named after a fingerprint of the current schema and
+ * the seed configuration. A change to an entity or to the seed settings therefore never restores a stale snapshot,
+ * it simply seeds again and writes a new one. Leaving the directory blank disables snapshots.
+ * </p>
+ */
+@Component
+public class DatasetSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(DatasetSnapshot.class);
+    private static final String SNAPSHOT_PREFIX = "seed-";
+    private static final String SNAPSHOT_SUFFIX = ".sql.deflate";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path directory;
+
+    public DatasetSnapshot(JdbcTemplate jdbcTemplate, @Value("${seeder.snapshot.directory:}") String directory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directory = (directory == null || directory.isBlank()) ? null : Path.of(directory);
+    }
+
+    /**
+     * Checks whether the database already holds data, e.g. a file-backed database from an earlier run.
+     */
+    public boolean hasExistingData() {
+        Long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        return users != null && users > 0;
+    }
+
+    /**
+     * Restores the snapshot matching the current schema and seed configuration, if there is one.
+     *
+     * @param seedConfiguration the settings that determine the seed data, part of the snapshot fingerprint
+     * @return true if a snapshot was restored, false if the database still has to be seeded
+     */
+    public boolean restore(String seedConfiguration) {
+        if (directory == null)
+            return false;
+
+        Path snapshot = snapshotFile(seedConfiguration);
+        if (!Files.isRegularFile(snapshot))
+            return false;
+
+        long start = System.currentTimeMillis();
+        try {
+            // The script drops and recreates every table, so the restored schema is exactly the one exported
+            jdbcTemplate.execute("RUNSCRIPT FROM '" + sqlPath(snapshot) + "' COMPRESSION DEFLATE");
+        } catch (RuntimeException e) {
+            log.warn("Could not restore dataset snapshot {}, seeding instead: {}", snapshot, e.getMessage());
+            return false;
+        }
+        log.info("Restored dataset snapshot {} in {} ms", snapshot, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    /**
+     * Exports the database to a snapshot for the current schema and seed configuration. Failures are logged,
+     * without a snapshot the next boot simply seeds again.
+     *
+     * @param seedConfiguration the settings that determine the seed data, part of the snapshot fingerprint
+     */
+    public void export(String seedConfiguration) {
+        if (directory == null)
+            return;
+
+        long start = System.currentTimeMillis();
+        Path snapshot = snapshotFile(seedConfiguration);
+        try {
+            Files.createDirectories(directory);
+            // Export to a temp file first, so an interrupted export never leaves a truncated snapshot behind
+            Path temp = Files.createTempFile(directory, SNAPSHOT_PREFIX, ".tmp");
+            Files.delete(temp);
+            jdbcTemplate.execute("SCRIPT DROP TO '" + sqlPath(temp) + "' COMPRESSION DEFLATE");
+            try {
+                Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not export dataset snapshot to {}: {}", snapshot, e.getMessage());
+            return;
+        }
+        log.info("Exported dataset snapshot {} in {} ms", snapshot, System.currentTimeMillis() - start);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private Path snapshotFile(String seedConfiguration) {
+        return directory.resolve(SNAPSHOT_PREFIX + fingerprint(seedConfiguration) + SNAPSHOT_SUFFIX);
+    }
+
+    /// Hash of every column of the schema Hibernate created, together with the seed configuration
+    private String fingerprint(String seedConfiguration) {
+        List<String> columns = jdbcTemplate.queryForList("""
+                SELECT TABLE_NAME || '.' || COLUMN_NAME || ':' || DATA_TYPE || ':' || IS_NULLABLE
+                FROM INFORMATION_SCHEMA.COLUMNS
+                WHERE TABLE_SCHEMA = 'PUBLIC'
+                ORDER BY TABLE_NAME, ORDINAL_POSITION
+                """, String.class);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String column : columns)
+                digest.update((column + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(seedConfiguration.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String sqlPath(Path path) {
+        return path.toAbsolutePath().toString().replace("'", "''");
+    }
+}
@@ -0,0 +1,30 @@
+package com.stefvisser.springyield.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for the verification of a JWT: signature check, claims and revocation lookup.
+ */
+@Name("springyield.JwtVerification")
+@Label("JWT Verification")
+@Category({"SpringYield", "Security"})
+@Description("Verification of the signature, expiry and revocation of a JWT")
+@StackTrace(false)
+public class JwtVerificationEvent extends Event {
+    public static final String VALID = "VALID";
+    public static final String EXPIRED = "EXPIRED";
+    public static final String REVOKED = "REVOKED";
+    public static final String INVALID = "INVALID";
+
+    @Label("Key ID")
+    @Description("The kid header of the token, null when the token could not be parsed")
+    public String kid;
+
+    @Label("Outcome")
+    public String outcome;
+}
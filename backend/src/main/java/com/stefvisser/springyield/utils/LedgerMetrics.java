@@ -0,0 +1,65 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Gauges for the state of the ledger: number of accounts and transactions, and the sum of all balances.
+ * <p>
+ * The values are queried on an interval ({@code metrics.ledger.refresh-interval}) and cached, so a scrape never
+ * runs aggregate queries over the whole ledger. They stay at zero until the seed data is complete.
+ * </p>
+ */
+@Component
+public class LedgerMetrics implements MeterBinder {
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+
+    private volatile long accounts;
+    private volatile long transactions;
+    private volatile double totalBalance;
+    private volatile boolean seeded;
+
+    public LedgerMetrics(AccountRepository accountRepository, TransactionRepository transactionRepository) {
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("springyield.ledger.accounts", this, metrics -> metrics.accounts)
+                .description("Number of accounts in the ledger")
+                .register(registry);
+        Gauge.builder("springyield.ledger.transactions", this, metrics -> metrics.transactions)
+                .description("Number of transactions in the ledger")
+                .register(registry);
+        Gauge.builder("springyield.ledger.balance.total", this, metrics -> metrics.totalBalance)
+                .description("Sum of the balances of all accounts, including the bank account")
+                .baseUnit("euros")
+                .register(registry);
+    }
+
+    @EventListener(SeedingCompletedEvent.class)
+    public void onSeeded() {
+        seeded = true;
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${metrics.ledger.refresh-interval:PT1M}", initialDelayString = "${metrics.ledger.refresh-interval:PT1M}")
+    public void refresh() {
+        if (!seeded)
+            return;
+
+        accounts = accountRepository.count();
+        transactions = transactionRepository.count();
+        BigDecimal balance = accountRepository.sumBalances();
+        totalBalance = balance == null ? 0 : balance.doubleValue();
+    }
+}
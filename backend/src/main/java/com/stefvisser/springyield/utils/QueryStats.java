@@ -0,0 +1,112 @@
+package com.stefvisser.springyield.utils;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statements and JDBC time of the current HTTP request, collected from Hibernate.
+ * <p>
+ * {@link com.stefvisser.springyield.config.QueryCountFilter} opens the stats for the request thread;
+ * {@link Inspector} counts every SQL statement Hibernate prepares and {@link TimingListener} adds up the time spent
+ * executing them. Statements are grouped by shape (the SQL with its bind parameters, which Hibernate already leaves
+ * as placeholders), so an N+1 shows up as one shape repeated N times. Work outside a request is not counted.
+ * </p>
+ */
+public class QueryStats {
+    /// Distinct shapes kept per request, further shapes are still counted but not listed
+    private static final int MAX_SHAPES = 50;
+    private static final int MAX_SHAPE_LENGTH = 300;
+
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Integer> shapes = new LinkedHashMap<>();
+    private int statements;
+    private long jdbcNanos;
+
+    /// Starts collecting for the current thread, replacing stats left behind by an earlier request
+    public static QueryStats start() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /// Stats of the request on the current thread, null outside a request
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    /// Stops collecting for the current thread
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getJdbcNanos() {
+        return jdbcNanos;
+    }
+
+    /// Statement shapes with the number of times each was prepared, in order of first use
+    public Map<String, Integer> getShapes() {
+        return shapes;
+    }
+
+    private void record(String sql) {
+        statements++;
+        String shape = sql.length() > MAX_SHAPE_LENGTH ? sql.substring(0, MAX_SHAPE_LENGTH) + "..." : sql;
+        if (shapes.size() < MAX_SHAPES || shapes.containsKey(shape))
+            shapes.merge(shape, 1, Integer::sum);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Hibernate hooks
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Counts every statement Hibernate prepares, registered as {@code hibernate.session_factory.statement_inspector}.
+     */
+    public static class Inspector implements StatementInspector {
+        public String inspect(String sql) {
+            QueryStats stats = CURRENT.get();
+            if (stats != null)
+                stats.record(sql);
+            return sql;
+        }
+    }
+
+    /**
+     * Measures JDBC execution time, registered as {@code hibernate.session.events.auto}. Hibernate creates one
+     * listener per session, and a session is only used by one thread at a time.
+     */
+    public static class TimingListener implements SessionEventListener {
+        private long executeStart;
+        private long batchStart;
+
+        public void jdbcExecuteStatementStart() {
+            executeStart = System.nanoTime();
+        }
+
+        public void jdbcExecuteStatementEnd() {
+            addJdbcTime(executeStart);
+        }
+
+        public void jdbcExecuteBatchStart() {
+            batchStart = System.nanoTime();
+        }
+
+        public void jdbcExecuteBatchEnd() {
+            addJdbcTime(batchStart);
+        }
+
+        private static void addJdbcTime(long start) {
+            QueryStats stats = CURRENT.get();
+            if (stats != null && start != 0)
+                stats.jdbcNanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.stefvisser.springyield.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for searches: concurrent calls with an equal key share one execution and its result.
+ * <p>
+ * The first caller for a key runs the search, callers arriving while it runs wait for it and get the same result
+ * (or exception) instead of running the same search again. Nothing is cached, the key is forgotten as soon as the
+ * search completes, so a result is at most one search execution old. Callers must only coalesce searches whose
+ * result does not depend on who asks, or include that in the key.
+ * </p>
+ */
+@Component
+public class SearchCoalescer {
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public SearchCoalescer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("springyield.search.inflight", inFlight, Map::size)
+                .description("Distinct searches currently executing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the search, or joins an identical search that is already running.
+     *
+     * @param entity the searched entity, used as metric tag and part of the key
+     * @param key    the normalized search parameters, equal keys must produce equal results
+     * @param search the search to run when no identical search is in flight
+     * @return the result of the search, shared with every caller that joined it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(String entity, Object key, Supplier<T> search) {
+        Object flightKey = Map.entry(entity, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            counter(entity, "shared").increment();
+            return (T) join(running);
+        }
+
+        counter(entity, "executed").increment();
+        try {
+            T result = search.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Normalizes a search query for the key: case-insensitive, and every blank query is the same as no query
+    public static String normalize(String query) {
+        return query == null || query.isBlank() ? "" : query.toLowerCase(Locale.ROOT);
+    }
+
+    /// The exception of the shared search is rethrown as is, so callers see the same error as the first caller
+    private static Object join(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw e;
+        }
+    }
+
+    private Counter counter(String entity, String result) {
+        return Counter.builder("springyield.search.coalescing")
+                .description("Searches executed, and searches that shared the result of an identical running search")
+                .tag("entity", entity)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,79 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.dto.PaginatedDataDto;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Supplier;
+
+/**
+ * Java Flight Recorder event for an employee search over users, accounts or transactions. The query itself is not
+ * recorded, only its length and the paging, so recordings contain no customer data.
+ */
+@Name("springyield.Search")
+@Label("Search")
+@Category({"SpringYield", "Search"})
+@Description("Execution of a user, account or transaction search")
+@StackTrace(false)
+public class SearchEvent extends Event {
+    @Label("Entity")
+    String entity;
+
+    @Label("Query Length")
+    int queryLength;
+
+    @Label("Limit")
+    int limit;
+
+    @Label("Offset")
+    int offset;
+
+    @Label("Total Count")
+    @Description("Number of matches before paging, -1 when the search failed")
+    int totalCount;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Runs a search and records it as an event.
+     *
+     * @param entity the searched entity, e.g. "transaction"
+     * @param query  the search query, only its length is recorded
+     * @param limit  the page size
+     * @param offset the page offset
+     * @param search the search itself
+     * @return the result of the search
+     */
+    public static <T> PaginatedDataDto<T> record(String entity, String query, int limit, int offset, Supplier<PaginatedDataDto<T>> search) {
+        SearchEvent event = new SearchEvent();
+        if (!event.isEnabled())
+            return search.get();
+
+        event.begin();
+        PaginatedDataDto<T> result = null;
+        String outcome = "OK";
+        try {
+            result = search.get();
+            return result;
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.entity = entity;
+                event.queryLength = query == null ? 0 : query.length();
+                event.limit = limit;
+                event.offset = offset;
+                event.totalCount = result == null ? -1 : result.getTotalCount();
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.stefvisser.springyield.utils;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link DataSeeder} once all seed data has been saved, for components that build in-memory state
+ * from the database.
+ */
+public class SeedingCompletedEvent extends ApplicationEvent {
+    public SeedingCompletedEvent(DataSeeder source) {
+        super(source);
+    }
+}
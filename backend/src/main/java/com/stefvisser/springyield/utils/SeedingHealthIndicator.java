@@ -0,0 +1,34 @@
+package com.stefvisser.springyield.utils;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports OUT_OF_SERVICE while {@link DataSeeder} is still running, so the readiness probe keeps traffic away
+ * until the seed data is complete. Included in the readiness group by
+ * {@code management.endpoint.health.group.readiness.include}.
+ */
+@Component
+public class SeedingHealthIndicator implements HealthIndicator {
+    private final DataSeeder dataSeeder;
+
+    public SeedingHealthIndicator(DataSeeder dataSeeder) {
+        this.dataSeeder = dataSeeder;
+    }
+
+    public Health health() {
+        String progress = String.format("%.0f%%", dataSeeder.getProgress() * 100);
+
+        if (dataSeeder.getFailure() != null)
+            return Health.down()
+                    .withDetail("progress", progress)
+                    .withDetail("error", dataSeeder.getFailure().getMessage())
+                    .build();
+
+        if (!dataSeeder.isSeeded())
+            return Health.outOfService().withDetail("progress", progress).build();
+
+        return Health.up().build();
+    }
+}
@@ -0,0 +1,145 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.dto.PaginatedDataDto;
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.models.User;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times the repository searches and the transfer entry points, and records the ones slower than
+ * {@code slow-operations.threshold} in the {@link SlowOperationLog}.
+ * <p>
+ * Fast operations only cost two {@link System#nanoTime()} calls; parameters are sanitized and row counts are taken
+ * only for operations that turned out to be slow. IBANs are replaced by the keyed hash of
+ * {@link TransferPhaseEvent#hashIban(String)}, which only pseudonymizes them for readers without the key.
+ * </p>
+ */
+@Aspect
+@Component
+public class SlowOperationAspect {
+    private static final int MAX_PARAMETER_LENGTH = 64;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final SlowOperationLog slowOperationLog;
+    private final boolean enabled;
+    private final long thresholdNanos;
+
+    public SlowOperationAspect(SlowOperationLog slowOperationLog,
+                               @Value("${slow-operations.enabled:true}") boolean enabled,
+                               @Value("${slow-operations.threshold:200ms}") Duration threshold,
+                               @Value("${slow-operations.iban-hash-key:}") String ibanHashKey) {
+        TransferPhaseEvent.useIbanHashKey(ibanHashKey);
+        this.slowOperationLog = slowOperationLog;
+        this.enabled = enabled;
+        this.thresholdNanos = threshold.toNanos();
+    }
+
+    @Around("execution(* com.stefvisser.springyield.repositories.TransactionRepository.searchTransactions(..))"
+            + " || execution(* com.stefvisser.springyield.repositories.AccountRepository.search(..))"
+            + " || execution(* com.stefvisser.springyield.repositories.UserRepository.search(..))")
+    public Object traceSearch(ProceedingJoinPoint joinPoint) throws Throwable {
+        String entity = joinPoint.getSignature().getDeclaringType().getSimpleName().replace("Repository", "").toLowerCase();
+        return trace(joinPoint, "search:" + entity, false);
+    }
+
+    @Around("execution(* com.stefvisser.springyield.services.TransactionService+.createTransaction(..))"
+            + " || execution(* com.stefvisser.springyield.services.TransactionService+.createAtmTransaction(..))")
+    public Object traceTransfer(ProceedingJoinPoint joinPoint) throws Throwable {
+        String operation = joinPoint.getSignature().getName().equals("createAtmTransaction") ? "atm" : "transfer";
+        return trace(joinPoint, operation, true);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private Object trace(ProceedingJoinPoint joinPoint, String operation, boolean tracePhases) throws Throwable {
+        if (!enabled)
+            return joinPoint.proceed();
+
+        QueryStats stats = QueryStats.current();
+        int statementsBefore = stats == null ? 0 : stats.getStatements();
+        long jdbcBefore = stats == null ? 0 : stats.getJdbcNanos();
+        Map<String, Long> enclosing = tracePhases ? SlowOperationLog.startPhases() : null;
+        long start = System.nanoTime();
+
+        Object result = null;
+        String outcome = "OK";
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } catch (RuntimeException e) {
+            outcome = TransferPhaseEvent.outcome(e);
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            Map<String, Long> phases = tracePhases ? SlowOperationLog.stopPhases(enclosing) : null;
+
+            if (elapsed >= thresholdNanos) {
+                Map<String, Double> breakdown = new LinkedHashMap<>();
+                if (phases != null)
+                    phases.forEach((phase, nanos) -> breakdown.put(phase, nanos / NANOS_PER_MILLI));
+                if (stats != null)
+                    breakdown.put("jdbc", (stats.getJdbcNanos() - jdbcBefore) / NANOS_PER_MILLI);
+
+                PaginatedDataDto<?> page = result instanceof PaginatedDataDto<?> paginated ? paginated : null;
+                slowOperationLog.record(Instant.now(), operation, currentUserId(), outcome, elapsed / NANOS_PER_MILLI,
+                        breakdown, stats == null ? -1 : stats.getStatements() - statementsBefore,
+                        page == null ? null : page.getTotalCount(),
+                        page == null ? null : page.getData().size(),
+                        parameters(joinPoint));
+            }
+        }
+    }
+
+    /// Search arguments by name, except users; transfer requests reduced to hashed IBANs and an amount bucket
+    private static Map<String, String> parameters(ProceedingJoinPoint joinPoint) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String[] names = ((MethodSignature) joinPoint.getSignature()).getParameterNames();
+        Object[] args = joinPoint.getArgs();
+
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null || arg instanceof User)
+                continue;
+
+            if (arg instanceof TransactionRequestDto request) {
+                parameters.put("fromIban", TransferPhaseEvent.hashIban(request.getFromAccount()));
+                parameters.put("toIban", TransferPhaseEvent.hashIban(request.getToAccount()));
+                parameters.put("amount", TransferPhaseEvent.amountBucket(request.getTransferAmount()));
+                if (request.getTransactionType() != null)
+                    parameters.put("type", request.getTransactionType().name());
+                continue;
+            }
+
+            String name = names != null && i < names.length ? names[i] : "arg" + i;
+            parameters.put(name, sanitize(arg.toString()));
+        }
+        return parameters;
+    }
+
+    /// Strips control characters (log injection) and truncates long values
+    private static String sanitize(String value) {
+        String cleaned = value.replaceAll("\\p{Cntrl}", " ").strip();
+        return cleaned.length() > MAX_PARAMETER_LENGTH ? cleaned.substring(0, MAX_PARAMETER_LENGTH) + "..." : cleaned;
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user)
+            return user.getUserId();
+        return null;
+    }
+}
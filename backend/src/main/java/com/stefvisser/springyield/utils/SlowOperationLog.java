@@ -0,0 +1,124 @@
+package com.stefvisser.springyield.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last slow searches and transfers, kept in a fixed size ring buffer for {@link SlowOperationsEndpoint}.
+ * <p>
+ * Writers claim a slot with a single {@code getAndIncrement} and overwrite whatever was there, so recording never
+ * blocks a request and memory stays bounded by {@code slow-operations.capacity}. Readers take a snapshot of the slots,
+ * an entry that is being overwritten at that moment is either the old or the new one.
+ * </p>
+ * <p>
+ * While an operation is traced by {@link SlowOperationAspect}, the phases recorded through
+ * {@link TransferPhaseEvent} are added up per thread, so an entry for a transfer also shows where its time went.
+ * </p>
+ */
+@Component
+public class SlowOperationLog {
+    private static final ThreadLocal<Map<String, Long>> PHASES = new ThreadLocal<>();
+
+    /**
+     * One slow operation.
+     *
+     * @param sequence     position in the log, higher is more recent
+     * @param timestamp    the moment the operation finished
+     * @param operation    e.g. "search:transaction" or "transfer"
+     * @param userId       the user that executed it, null for internal calls
+     * @param outcome      OK, the reject reason, the HTTP status or the exception
+     * @param totalMs      wall clock duration
+     * @param breakdownMs  time per phase and for JDBC, in milliseconds
+     * @param statements   SQL statements executed, -1 outside an HTTP request
+     * @param rowsMatched  rows matching the search before paging, null for transfers
+     * @param rowsReturned rows on the returned page, null for transfers
+     * @param parameters   sanitized parameters: queries truncated, IBANs hashed and amounts bucketed
+     */
+    public record Entry(long sequence, Instant timestamp, String operation, Long userId, String outcome,
+                        double totalMs, Map<String, Double> breakdownMs, int statements,
+                        Integer rowsMatched, Integer rowsReturned, Map<String, String> parameters) {
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    public SlowOperationLog(@Value("${slow-operations.capacity:256}") int capacity) {
+        // Round up to a power of two, so a slot index is a mask instead of a modulo
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an entry, overwriting the oldest one when the log is full.
+     */
+    public void record(Instant timestamp, String operation, Long userId, String outcome, double totalMs,
+                       Map<String, Double> breakdownMs, int statements, Integer rowsMatched, Integer rowsReturned,
+                       Map<String, String> parameters) {
+        long sequence = next.getAndIncrement();
+        slots.set((int) (sequence & mask), new Entry(sequence, timestamp, operation, userId, outcome, totalMs,
+                breakdownMs, statements, rowsMatched, rowsReturned, parameters));
+    }
+
+    /**
+     * Returns the entries currently in the log, most recent first.
+     */
+    public List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<>(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            Entry entry = slots.get(i);
+            if (entry != null)
+                entries.add(entry);
+        }
+        entries.sort(Comparator.comparingLong(Entry::sequence).reversed());
+        return entries;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++)
+            slots.set(i, null);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Phase tracing
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// True while an operation on the current thread is traced
+    public static boolean isTracing() {
+        return PHASES.get() != null;
+    }
+
+    /// Adds time to a phase of the operation traced on the current thread
+    public static void addPhase(String phase, long nanos) {
+        Map<String, Long> phases = PHASES.get();
+        if (phases != null)
+            phases.merge(phase, nanos, Long::sum);
+    }
+
+    /// Starts collecting phases on the current thread, returns the phases of an enclosing trace to restore later
+    static Map<String, Long> startPhases() {
+        Map<String, Long> enclosing = PHASES.get();
+        PHASES.set(new LinkedHashMap<>());
+        return enclosing;
+    }
+
+    /// Stops collecting phases, restoring the enclosing trace, and returns the phases collected since the start
+    static Map<String, Long> stopPhases(Map<String, Long> enclosing) {
+        Map<String, Long> phases = PHASES.get();
+        if (enclosing == null)
+            PHASES.remove();
+        else
+            PHASES.set(enclosing);
+        return phases;
+    }
+}
@@ -0,0 +1,33 @@
+package com.stefvisser.springyield.utils;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/slowoperations}: the last searches and transfers that exceeded {@code slow-operations.threshold},
+ * most recent first. A DELETE clears the log, e.g. after a fix has been deployed. Restricted to admins in
+ * {@link com.stefvisser.springyield.config.WebSecurityConfig}, since it shows who searched for what.
+ */
+@Component
+@Endpoint(id = "slowoperations")
+public class SlowOperationsEndpoint {
+    private final SlowOperationLog slowOperationLog;
+
+    public SlowOperationsEndpoint(SlowOperationLog slowOperationLog) {
+        this.slowOperationLog = slowOperationLog;
+    }
+
+    @ReadOperation
+    public List<SlowOperationLog.Entry> slowOperations() {
+        return slowOperationLog.snapshot();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        slowOperationLog.clear();
+    }
+}
@@ -0,0 +1,368 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.config.SyntheticDataProperties;
+import com.stefvisser.springyield.models.AccountStatus;
+import com.stefvisser.springyield.models.AccountType;
+import com.stefvisser.springyield.models.TransactionType;
+import com.stefvisser.springyield.models.UserRole;
+import com.stefvisser.springyield.services.IbanService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a large, deterministic dataset for load tests, enabled with the {@code loadtest} profile.
+ * <p>
+ * Rows are generated in chunks on all cores and bulk-loaded with batched JDBC inserts or H2's {@code CSVREAD},
+ * bypassing JPA entirely. Every chunk draws from its own random stream derived from the seed and the chunk number,
+ * so the data does not depend on the number of threads or the order in which chunks finish. Only the timestamps
+ * move along, they are relative to the moment of generation so the rolling spend windows see recent traffic.
+ * </p>
+ * <p>
+ * Transactions follow a daily rhythm (quiet nights, peaks around lunch and early evening), are lighter in the
+ * weekend and a configurable share of the traffic goes to a small set of hot accounts, like merchants in
+ * production. Generated rows are appended after the regular seed data, so the default users keep working.
+ * </p>
+ */
+@Component
+@Profile("loadtest")
+public class SyntheticDataGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+    private static final int JDBC_BATCH_SIZE = 1000;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final String[] FIRST_NAMES = {
+            "Daan", "Sem", "Lucas", "Levi", "Finn", "Milan", "Noah", "Luuk", "Bram", "Jesse",
+            "Emma", "Julia", "Mila", "Tess", "Sophie", "Zoë", "Sara", "Nora", "Eva", "Anna"
+    };
+    private static final String[] LAST_NAMES = {
+            "de Jong", "Jansen", "de Vries", "van den Berg", "van Dijk", "Bakker", "Janssen", "Visser", "Smit", "Meijer",
+            "de Boer", "Mulder", "de Groot", "Bos", "Vos", "Peters", "Hendriks", "van Leeuwen", "Dekker", "Brouwer"
+    };
+
+    /// relative number of transactions per hour of the day
+    private static final double[] HOUR_WEIGHTS = {
+            0.2, 0.1, 0.1, 0.1, 0.1, 0.2, 0.5, 1.2, 2.0, 2.5, 2.8, 3.2,
+            4.0, 3.5, 2.8, 2.6, 2.9, 3.6, 4.2, 3.4, 2.5, 1.6, 0.9, 0.4
+    };
+    private static final double[] HOUR_CUMULATIVE = cumulative(HOUR_WEIGHTS);
+
+    private static final String[] USER_COLUMNS = {
+            "user_id", "first_name", "last_name", "password", "email", "bsn_number", "phone_number", "role"
+    };
+    private static final String[] ACCOUNT_COLUMNS = {
+            "account_id", "user_id", "iban", "registration_date", "account_type", "daily_limit", "absolute_limit",
+            "balance", "balance_limit", "status", "spend_today", "spend_day", "version"
+    };
+    private static final String[] TRANSACTION_COLUMNS = {
+            "transaction_id", "description", "reference", "timestamp", "to_account", "from_account",
+            "transfer_amount", "transaction_type"
+    };
+
+    /// generates the rows numbered from (exclusive) to to (inclusive) of a single chunk
+    @FunctionalInterface
+    private interface ChunkGenerator {
+        List<Object[]> generate(long from, long to, SplittableRandom random);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SyntheticDataProperties properties;
+    private final IbanService ibanService;
+
+    public SyntheticDataGenerator(JdbcTemplate jdbcTemplate, SyntheticDataProperties properties, IbanService ibanService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.ibanService = ibanService;
+    }
+
+    /**
+     * Generates and loads the dataset. Called by {@link DataSeeder} after the regular seed data, on its background
+     * thread, so readiness is only reported once the dataset is complete.
+     */
+    public void generate() {
+        long started = System.nanoTime();
+        int threads = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        int users = properties.getUsers();
+        int accounts = properties.getAccounts();
+        long transactions = properties.getTransactions();
+        if (users <= 0 || accounts <= 0) {
+            log.warn("Synthetic data generation skipped, it needs at least one user and one account");
+            return;
+        }
+
+        // Reserve the ID ranges first, so rows created through the API while loading never collide with ours
+        long userOffset = reserveIds("users", "user_id", users);
+        long accountOffset = reserveIds("accounts", "account_id", accounts);
+        long transactionOffset = reserveIds("transactions", "transaction_id", transactions);
+
+        String password = new BCryptPasswordEncoder().encode("pass");
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        // One block from the allocator, so the IBANs never collide with accounts created through the API
+        String[] ibans = ibanService.nextIbans(accounts).toArray(String[]::new);
+        int hotAccounts = Math.max(1, (int) (accounts * properties.getHotAccountShare()));
+
+        log.info("Generating {} users, {} accounts and {} transactions on {} threads, seed {}",
+                users, accounts, transactions, threads, properties.getSeed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            load(executor, 1, "users", USER_COLUMNS, users,
+                    (from, to, random) -> generateUsers(from, to, random, userOffset, password));
+            load(executor, 2, "accounts", ACCOUNT_COLUMNS, accounts,
+                    (from, to, random) -> generateAccounts(from, to, random, accountOffset, userOffset, users, ibans, hotAccounts, today));
+            load(executor, 3, "transactions", TRANSACTION_COLUMNS, transactions,
+                    (from, to, random) -> generateTransactions(from, to, random, transactionOffset, ibans, hotAccounts, now));
+        } finally {
+            executor.shutdown();
+        }
+
+        log.info("Synthetic dataset loaded in {} s", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Row Generation
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private List<Object[]> generateUsers(long from, long to, SplittableRandom random, long userOffset, String password) {
+        List<Object[]> rows = new ArrayList<>((int) (to - from));
+        for (long n = from + 1; n <= to; n++) {
+            rows.add(new Object[]{
+                    userOffset + n,
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                    password,
+                    "loadtest.user" + n + "@springyield.com",
+                    100_000_000 + random.nextInt(900_000_000),
+                    "06" + (10_000_000 + random.nextInt(90_000_000)),
+                    (random.nextInt(100) < 80 ? UserRole.APPROVED : UserRole.UNAPPROVED).name()
+            });
+        }
+        return rows;
+    }
+
+    private List<Object[]> generateAccounts(long from, long to, SplittableRandom random, long accountOffset,
+                                            long userOffset, int users, String[] ibans, int hotAccounts, LocalDate today) {
+        List<Object[]> rows = new ArrayList<>((int) (to - from));
+        for (long n = from + 1; n <= to; n++) {
+            // Every user gets a payment account first, further accounts are mostly savings
+            AccountType accountType = n <= users || random.nextInt(100) < 40 ? AccountType.PAYMENT : AccountType.SAVINGS;
+            // Hot accounts are businesses with a large balance
+            double balance = n <= hotAccounts
+                    ? 50_000 + random.nextDouble() * 1_000_000
+                    : Math.exp(Math.log(2_500) + random.nextGaussian()) - 300;
+
+            rows.add(new Object[]{
+                    accountOffset + n,
+                    userOffset + 1 + (n - 1) % users,
+                    ibans[(int) (n - 1)],
+                    today.minusDays(random.nextInt(properties.getHistoryDays() * 2 + 1)),
+                    accountType.name(),
+                    BigDecimal.valueOf(2000),
+                    BigDecimal.valueOf(1000),
+                    cents(Math.max(-500, balance)),
+                    BigDecimal.valueOf(-500),
+                    AccountStatus.ACTIVE.ordinal(),
+                    BigDecimal.ZERO,
+                    today.toEpochDay(),
+                    0L
+            });
+        }
+        return rows;
+    }
+
+    private List<Object[]> generateTransactions(long from, long to, SplittableRandom random, long transactionOffset,
+                                                String[] ibans, int hotAccounts, LocalDateTime now) {
+        List<Object[]> rows = new ArrayList<>((int) (to - from));
+        for (long n = from + 1; n <= to; n++) {
+            int kind = random.nextInt(100);
+            TransactionType type = kind < 8 ? TransactionType.DEPOSIT : kind < 12 ? TransactionType.WITHDRAW : TransactionType.TRANSFER;
+
+            String fromIban = ibans[random.nextInt(ibans.length)];
+            String toIban;
+            String description;
+            if (type != TransactionType.TRANSFER) {
+                // ATM transactions book on a single account, like the regular seed data
+                toIban = fromIban;
+                description = type == TransactionType.DEPOSIT ? "ATM deposit" : "ATM withdrawal";
+            } else if (random.nextDouble() < properties.getHotTrafficShare()) {
+                toIban = ibans[random.nextInt(hotAccounts)];
+                description = "Payment";
+            } else {
+                toIban = ibans[random.nextInt(ibans.length)];
+                description = "Transfer";
+            }
+
+            // Most payments are small, a few are large
+            double amount = Math.exp(Math.log(35) + 1.1 * random.nextGaussian());
+
+            rows.add(new Object[]{
+                    transactionOffset + n,
+                    description,
+                    "TR" + (transactionOffset + n),
+                    timestamp(random, now),
+                    toIban,
+                    fromIban,
+                    cents(Math.min(5_000, Math.max(0.5, amount))),
+                    type.name()
+            });
+        }
+        return rows;
+    }
+
+    /// A moment within the history, following the daily rhythm and with less traffic in the weekend
+    private LocalDateTime timestamp(SplittableRandom random, LocalDateTime now) {
+        while (true) {
+            LocalDate day = now.toLocalDate().minusDays(random.nextInt(properties.getHistoryDays()));
+            boolean weekend = day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY;
+            if (weekend && random.nextInt(100) >= 60)
+                continue;
+
+            double pick = random.nextDouble() * HOUR_CUMULATIVE[HOUR_CUMULATIVE.length - 1];
+            int hour = 0;
+            while (HOUR_CUMULATIVE[hour] < pick)
+                hour++;
+
+            LocalDateTime timestamp = day.atTime(hour, random.nextInt(60), random.nextInt(60));
+            if (!timestamp.isAfter(now))
+                return timestamp;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Loading
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Generates and loads all rows of a table, one task per chunk
+    private void load(ExecutorService executor, int table, String tableName, String[] columns, long total, ChunkGenerator generator) {
+        long started = System.nanoTime();
+        int chunkSize = Math.max(1, properties.getChunkSize());
+        List<Future<?>> chunks = new ArrayList<>();
+
+        for (long from = 0, chunk = 0; from < total; from += chunkSize, chunk++) {
+            long chunkFrom = from;
+            long chunkTo = Math.min(from + chunkSize, total);
+            SplittableRandom random = new SplittableRandom(properties.getSeed() + (table * 1_000_003L + chunk) * GOLDEN_GAMMA);
+            chunks.add(executor.submit(() -> insert(tableName, columns, generator.generate(chunkFrom, chunkTo, random))));
+        }
+
+        for (Future<?> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Synthetic data generation was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not load synthetic " + tableName, e.getCause());
+            }
+        }
+
+        log.info("Loaded {} {} in {} ms", total, tableName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private void insert(String table, String[] columns, List<Object[]> rows) {
+        if (properties.getLoader() == SyntheticDataProperties.Loader.CSV) {
+            insertCsv(table, columns, rows);
+            return;
+        }
+
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + "?, ".repeat(columns.length - 1) + "?)";
+        jdbcTemplate.batchUpdate(sql, rows, JDBC_BATCH_SIZE, (statement, row) -> {
+            for (int i = 0; i < row.length; i++)
+                statement.setObject(i + 1, row[i]);
+        });
+    }
+
+    /// Writes the chunk to a temporary CSV file and lets H2 read it in a single statement
+    private void insertCsv(String table, String[] columns, List<Object[]> rows) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("springyield-" + table + "-", ".csv");
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(String.join(",", columns));
+                writer.newLine();
+                for (Object[] row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        if (i > 0)
+                            writer.write(',');
+                        writer.write(csvValue(row[i]));
+                    }
+                    writer.newLine();
+                }
+            }
+
+            String path = file.toAbsolutePath().toString().replace("'", "''");
+            jdbcTemplate.update("INSERT INTO " + table + " (" + String.join(", ", columns) + ") "
+                    + "SELECT * FROM CSVREAD('" + path + "', NULL, 'charset=UTF-8')");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write synthetic " + table + " to " + file, e);
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete temporary file {}: {}", file, e.getMessage());
+                }
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Returns the highest ID in use and moves the identity column past the rows about to be inserted
+    private long reserveIds(String table, String idColumn, long count) {
+        Long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(" + idColumn + "), 0) FROM " + table, Long.class);
+        long offset = max == null ? 0 : max;
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN " + idColumn + " RESTART WITH " + (offset + count + 1));
+        return offset;
+    }
+
+    private static BigDecimal cents(double amount) {
+        return BigDecimal.valueOf(Math.round(amount * 100), 2);
+    }
+
+    private static String csvValue(Object value) {
+        if (value instanceof LocalDateTime timestamp)
+            return Timestamp.valueOf(timestamp).toString();
+        if (value instanceof BigDecimal decimal)
+            return decimal.toPlainString();
+        // Names and descriptions never contain a separator or quote, so no escaping is needed
+        return String.valueOf(value);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cumulative = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+}
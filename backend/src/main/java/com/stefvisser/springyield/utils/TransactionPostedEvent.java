@@ -0,0 +1,22 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by the posting path for every transfer and ATM transaction that was saved, for components that push
+ * new transactions to clients. Listeners that must only see committed transactions use a
+ * {@code @TransactionalEventListener}.
+ */
+public class TransactionPostedEvent extends ApplicationEvent {
+    private final TransactionRequestDto transaction;
+
+    public TransactionPostedEvent(Object source, TransactionRequestDto transaction) {
+        super(source);
+        this.transaction = transaction;
+    }
+
+    public TransactionRequestDto getTransaction() {
+        return transaction;
+    }
+}
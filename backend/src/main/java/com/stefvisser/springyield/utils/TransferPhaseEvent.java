@@ -0,0 +1,176 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.services.TransferRejectedException;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Java Flight Recorder event for one phase of a transfer or ATM transaction, e.g. loading the accounts or the
+ * transaction insert. Together the events of one thread show where the time of a slow transfer went.
+ * <p>
+ * The IBAN is recorded as an HMAC and the amount as an order of magnitude, so recordings can be shared without
+ * exposing customer data. A plain hash would not do: with a fixed bank code there are only 10^10 account numbers,
+ * so every hash could be looked up. The HMAC key is random per process, or {@code slow-operations.iban-hash-key}
+ * when hashes have to match across nodes and restarts; whoever holds that key can reverse the hashes. When the event is not enabled in a running recording and no slow operation is being traced
+ * (see {@link SlowOperationLog}), {@link #record} only adds two cheap checks.
+ * </p>
+ */
+@Name("springyield.TransferPhase")
+@Label("Transfer Phase")
+@Category({"SpringYield", "Transfers"})
+@Description("One phase of a transfer or ATM transaction")
+@StackTrace(false)
+public class TransferPhaseEvent extends Event {
+    private static final String IBAN_HASH_ALGORITHM = "HmacSHA256";
+    public static final String TRANSFER = "transfer";
+    public static final String ATM = "atm";
+
+    public static final String USER_LOOKUP = "user-lookup";
+    public static final String ACCOUNT_CHECK = "account-check";
+    public static final String ACCOUNT_LOAD = "account-load";
+    public static final String VALIDATION = "validation";
+    public static final String TRANSACTION_INSERT = "transaction-insert";
+    public static final String ACCOUNT_UPDATE = "account-update";
+
+    private static volatile SecretKeySpec ibanHashKey = randomIbanHashKey();
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("IBAN Hash")
+    @Description("Keyed hash of the sending IBAN, the same account gets the same hash while the key is the same")
+    String ibanHash;
+
+    @Label("Amount Bucket")
+    String amountBucket;
+
+    @Label("Outcome")
+    @Description("OK, the reject reason, the HTTP status or the exception that ended the phase")
+    String outcome;
+
+    /**
+     * Runs one phase of a transaction and records it as an event.
+     *
+     * @param operation {@link #TRANSFER} or {@link #ATM}
+     * @param phase     the phase, e.g. {@link #ACCOUNT_LOAD}
+     * @param iban      the sending IBAN, hashed before it is recorded
+     * @param amount    the transferred amount, recorded as an order of magnitude
+     * @param action    the work of the phase
+     * @return the result of the action
+     */
+    public static <T> T record(String operation, String phase, String iban, BigDecimal amount, Supplier<T> action) {
+        TransferPhaseEvent event = new TransferPhaseEvent();
+        boolean tracing = SlowOperationLog.isTracing();
+        if (!event.isEnabled() && !tracing)
+            return action.get();
+
+        event.begin();
+        long start = tracing ? System.nanoTime() : 0;
+        String outcome = "OK";
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            outcome = outcome(e);
+            throw e;
+        } finally {
+            if (tracing)
+                SlowOperationLog.addPhase(phase, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.phase = phase;
+                event.ibanHash = hashIban(iban);
+                event.amountBucket = amountBucket(amount);
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    /// Same as {@link #record(String, String, String, BigDecimal, Supplier)}, for phases without a result
+    public static void record(String operation, String phase, String iban, BigDecimal amount, Runnable action) {
+        record(operation, phase, iban, amount, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    public static String outcome(RuntimeException e) {
+        if (e instanceof TransferRejectedException rejected)
+            return rejected.getReasonCode().name();
+        if (e instanceof ResponseStatusException status)
+            return String.valueOf(status.getStatusCode().value());
+        return e.getClass().getSimpleName();
+    }
+
+    /**
+     * Sets the key of the IBAN hash, so the hashes of all nodes sharing the key match.
+     *
+     * @param base64Key the key as base64, at least 32 bytes; blank keeps the random key of this process
+     */
+    public static void useIbanHashKey(String base64Key) {
+        if (base64Key == null || base64Key.isBlank())
+            return;
+        byte[] key = Base64.getDecoder().decode(base64Key.trim());
+        if (key.length < 32)
+            throw new IllegalArgumentException("The IBAN hash key must be at least 32 bytes, got " + key.length);
+        ibanHashKey = new SecretKeySpec(key, IBAN_HASH_ALGORITHM);
+    }
+
+    /// Truncated HMAC-SHA256 of the IBAN without spaces, enough to tell accounts apart within a recording
+    public static String hashIban(String iban) {
+        if (iban == null)
+            return null;
+        try {
+            Mac mac = Mac.getInstance(IBAN_HASH_ALGORITHM);
+            mac.init(ibanHashKey);
+            byte[] hash = mac.doFinal(iban.replace(" ", "").toUpperCase().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(IBAN_HASH_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static SecretKeySpec randomIbanHashKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new SecretKeySpec(key, IBAN_HASH_ALGORITHM);
+    }
+
+    /// Order of magnitude of an amount: "<1", "1-10", "10-100", ..., ">=100000"
+    public static String amountBucket(BigDecimal amount) {
+        if (amount == null)
+            return null;
+        if (amount.signum() <= 0)
+            return "<=0";
+
+        long lower = 1;
+        if (amount.compareTo(BigDecimal.ONE) < 0)
+            return "<1";
+        while (lower < 100_000 && amount.compareTo(BigDecimal.valueOf(lower * 10)) >= 0)
+            lower *= 10;
+        return lower == 100_000 ? ">=100000" : lower + "-" + lower * 10;
+    }
+}
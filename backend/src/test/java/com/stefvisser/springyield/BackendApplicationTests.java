@@ -1,13 +1,36 @@
 package com.stefvisser.springyield;
 
+import com.stefvisser.springyield.config.AdaptiveLimitFilter;
+import com.stefvisser.springyield.config.BulkheadFilter;
+import jakarta.servlet.Filter;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.FilterChainProxy;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 class BackendApplicationTests {
 
+    @Autowired
+    private FilterChainProxy filterChainProxy;
+
     @Test
     void contextLoads() {
     }
 
+    @Test
+    void securityFilterChain_AdaptiveLimitBehindBulkhead() {
+        // Requests waiting in a bulkhead queue must not hold a slot of the adaptive limit
+        List<Object> filters = filterChainProxy.getFilters("/api/transactions/create").stream()
+                .<Object>map(Filter::getClass)
+                .toList();
+        assertTrue(filters.indexOf(BulkheadFilter.class) >= 0);
+        assertTrue(filters.indexOf(AdaptiveLimitFilter.class) > filters.indexOf(BulkheadFilter.class));
+    }
+
 }
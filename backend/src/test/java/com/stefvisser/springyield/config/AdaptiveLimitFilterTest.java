@@ -0,0 +1,189 @@
+package com.stefvisser.springyield.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimitFilterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private AdaptiveLimitProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AdaptiveLimitProperties();
+        properties.setInitialLimit(20);
+        properties.setMinLimit(4);
+        properties.setMaxLimit(200);
+        properties.setRttTolerance(1.5);
+        properties.setSmoothing(0.2);
+        properties.setLongWindow(600);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void onSample_SteadyLatencyAtLimit_GrowsLimit() {
+        // Arrange
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+
+        // Act
+        for (int i = 0; i < 20; i++)
+            filter.onSample(FAST, filter.getLimit());
+
+        // Assert
+        assertTrue(filter.getLimit() > 20, "Limit did not grow: " + filter.getLimit());
+    }
+
+    @Test
+    void onSample_SteadyLatency_GrowsBySquareRootOfLimit() {
+        // Arrange - without smoothing every sample takes the new estimate over completely
+        properties.setSmoothing(1.0);
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+        filter.onSample(FAST, 20);
+
+        // Act - same latency, the gradient is capped at 1 so only the queue allowance of sqrt(20) is added
+        filter.onSample(FAST, 20);
+
+        // Assert
+        assertEquals((int) (20 + Math.sqrt(20)), filter.getLimit());
+    }
+
+    @Test
+    void onSample_RisingLatency_ShrinksLimit() {
+        // Arrange
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+        for (int i = 0; i < 100; i++)
+            filter.onSample(FAST, filter.getLimit());
+        int limitBefore = filter.getLimit();
+
+        // Act
+        for (int i = 0; i < 20; i++)
+            filter.onSample(SLOW, filter.getLimit());
+
+        // Assert
+        assertTrue(filter.getLimit() < limitBefore, "Limit did not shrink: " + limitBefore + " -> " + filter.getLimit());
+    }
+
+    @Test
+    void onSample_SingleVerySlowSample_AtMostHalvesLimit() {
+        // Arrange
+        properties.setSmoothing(1.0);
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+        warmUp(filter);
+
+        // Act
+        filter.onSample(FAST * 1000, 20);
+
+        // Assert - the gradient is floored at 0.5, plus the queue allowance
+        assertEquals((int) (20 * 0.5 + Math.sqrt(20)), filter.getLimit());
+    }
+
+    @Test
+    void onSample_AppLimited_DoesNotChangeLimit() {
+        // Arrange
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+
+        // Act - fewer than half the limit in flight says nothing about capacity
+        for (int i = 0; i < 50; i++)
+            filter.onSample(i % 2 == 0 ? FAST : SLOW, 1);
+
+        // Assert
+        assertEquals(20, filter.getLimit());
+    }
+
+    @Test
+    void onSample_KeepsLimitWithinBounds() {
+        // Arrange
+        properties.setMinLimit(6);
+        properties.setMaxLimit(30);
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+        warmUp(filter);
+
+        // Act & Assert
+        for (int i = 0; i < 200; i++)
+            filter.onSample(FAST, filter.getLimit());
+        assertEquals(30, filter.getLimit());
+
+        // Without the lower bound the limit would settle at 4 under a sustained tenfold slowdown
+        for (int i = 0; i < 200; i++)
+            filter.onSample(SLOW, filter.getLimit());
+        assertEquals(6, filter.getLimit());
+    }
+
+    @Test
+    void doFilter_OverLimit_RejectsWith503AndRetryAfter() throws ServletException, IOException {
+        // Arrange - a limit of one, the nested request arrives while the outer one is in flight
+        properties.setInitialLimit(1);
+        properties.setMinLimit(1);
+        properties.setMaxLimit(1);
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request(), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(request(), rejected, new MockFilterChain()));
+
+        // Assert
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1, meterRegistry.get("springyield.adaptive-limit.dropped").counter().count());
+    }
+
+    @Test
+    void doFilter_ExceptionInChain_ReleasesSlot() {
+        // Arrange
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> filter.doFilter(request(), new MockHttpServletResponse(),
+                (req, res) -> {
+                    throw new IllegalStateException("handler failed");
+                }));
+
+        // Assert
+        assertEquals(0, meterRegistry.get("springyield.adaptive-limit.inflight").gauge().value());
+    }
+
+    @Test
+    void doFilter_ExcludedPath_NotCounted() throws ServletException, IOException {
+        // Arrange
+        properties.setInitialLimit(1);
+        properties.setMinLimit(1);
+        AdaptiveLimitFilter filter = new AdaptiveLimitFilter(properties, meterRegistry);
+        MockHttpServletRequest probe = new MockHttpServletRequest("GET", "/actuator/health");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request(), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(probe, response, new MockFilterChain()));
+
+        // Assert
+        assertEquals(200, response.getStatus());
+        assertEquals(0, meterRegistry.get("springyield.adaptive-limit.dropped").counter().count());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Fills the long-term average with fast requests, app-limited so the limit itself stays where it is
+    private void warmUp(AdaptiveLimitFilter filter) {
+        for (int i = 0; i < properties.getLongWindow(); i++)
+            filter.onSample(FAST, 1);
+    }
+
+    private static MockHttpServletRequest request() {
+        return new MockHttpServletRequest("POST", "/api/transactions/create");
+    }
+}
@@ -0,0 +1,219 @@
+package com.stefvisser.springyield.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadFilterTest {
+    private static final String SEARCH_PATH = "/api/user/search";
+
+    private BulkheadProperties properties;
+    private BulkheadProperties.Compartment search;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        search = new BulkheadProperties.Compartment();
+        search.setPaths(List.of("/api/*/search"));
+        search.setMethod("GET");
+        search.setMaxConcurrent(1);
+        search.setMaxQueue(1);
+        search.setMaxWait(Duration.ofSeconds(2));
+
+        properties = new BulkheadProperties();
+        properties.getCompartments().put("search", search);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void doFilter_FreeSlot_Admits() throws ServletException, IOException {
+        // Arrange
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request("GET", SEARCH_PATH), response, chain);
+
+        // Assert
+        assertNotNull(chain.getRequest());
+        assertEquals(200, response.getStatus());
+        assertEquals(0, gauge("springyield.bulkhead.active"));
+    }
+
+    @Test
+    void doFilter_OutsideEveryCompartment_PassesThrough() throws ServletException, IOException {
+        // Arrange - the only slot is taken, but neither request belongs to the compartment
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+        MockHttpServletResponse transfer = new MockHttpServletResponse();
+        MockHttpServletResponse post = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request("GET", SEARCH_PATH), new MockHttpServletResponse(), (req, res) -> {
+            filter.doFilter(request("POST", "/api/transactions/create"), transfer, new MockFilterChain());
+            filter.doFilter(request("POST", SEARCH_PATH), post, new MockFilterChain());
+        });
+
+        // Assert
+        assertEquals(200, transfer.getStatus());
+        assertEquals(200, post.getStatus());
+    }
+
+    @Test
+    void doFilter_SlotBusy_QueuesUntilReleased() throws Exception {
+        // Arrange
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> filter(filter, new MockHttpServletResponse(), () -> {
+            running.countDown();
+            await(release);
+        }));
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+
+        // Act
+        MockHttpServletResponse queuedResponse = new MockHttpServletResponse();
+        AtomicBoolean handled = new AtomicBoolean();
+        CompletableFuture<Void> queued = CompletableFuture.runAsync(() -> filter(filter, queuedResponse, () -> handled.set(true)));
+        waitFor(() -> gauge("springyield.bulkhead.queued") == 1);
+        assertFalse(handled.get());
+        release.countDown();
+
+        // Assert
+        queued.get(2, TimeUnit.SECONDS);
+        first.get(2, TimeUnit.SECONDS);
+        assertTrue(handled.get());
+        assertEquals(200, queuedResponse.getStatus());
+        assertEquals(0, gauge("springyield.bulkhead.queued"));
+        assertEquals(1, meterRegistry.get("springyield.bulkhead.wait").timer().count());
+    }
+
+    @Test
+    void doFilter_QueueFull_RejectsWith503() throws ServletException, IOException {
+        // Arrange
+        search.setMaxQueue(0);
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        MockFilterChain rejectedChain = new MockFilterChain();
+
+        // Act - the nested request arrives while the outer one holds the only slot
+        filter.doFilter(request("GET", SEARCH_PATH), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(request("GET", SEARCH_PATH), rejected, rejectedChain));
+
+        // Assert
+        assertNull(rejectedChain.getRequest());
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1, rejections("queue-full"));
+    }
+
+    @Test
+    void doFilter_WaitTimeout_RejectsWith503() throws ServletException, IOException {
+        // Arrange
+        search.setMaxWait(Duration.ofMillis(50));
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+
+        // Act - the slot is never released while the nested request waits
+        long start = System.nanoTime();
+        filter.doFilter(request("GET", SEARCH_PATH), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(request("GET", SEARCH_PATH), rejected, new MockFilterChain()));
+
+        // Assert
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertEquals(503, rejected.getStatus());
+        assertEquals(1, rejections("timeout"));
+        assertEquals(0, gauge("springyield.bulkhead.queued"));
+    }
+
+    @Test
+    void doFilter_ExceptionInChain_ReleasesSlot() throws ServletException, IOException {
+        // Arrange
+        search.setMaxQueue(0);
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> filter.doFilter(request("GET", SEARCH_PATH), new MockHttpServletResponse(),
+                (req, res) -> {
+                    throw new IllegalStateException("handler failed");
+                }));
+
+        // Assert - with no queue, the next request is only admitted if the slot was given back
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(request("GET", SEARCH_PATH), next, new MockFilterChain());
+        assertEquals(200, next.getStatus());
+        assertEquals(0, gauge("springyield.bulkhead.active"));
+    }
+
+    @Test
+    void doFilter_Disabled_PassesThrough() throws ServletException, IOException {
+        // Arrange
+        properties.setEnabled(false);
+        search.setMaxQueue(0);
+        BulkheadFilter filter = new BulkheadFilter(properties, meterRegistry, 20);
+        MockHttpServletResponse nested = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request("GET", SEARCH_PATH), new MockHttpServletResponse(),
+                (req, res) -> filter.doFilter(request("GET", SEARCH_PATH), nested, new MockFilterChain()));
+
+        // Assert
+        assertEquals(200, nested.getStatus());
+        assertEquals(0, rejections("queue-full"));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static MockHttpServletRequest request(String method, String path) {
+        return new MockHttpServletRequest(method, path);
+    }
+
+    /// Runs a search request through the filter on the calling thread, with the handler as the rest of the chain
+    private static void filter(BulkheadFilter filter, MockHttpServletResponse response, Runnable handler) {
+        try {
+            filter.doFilter(request("GET", SEARCH_PATH), response, (req, res) -> handler.run());
+        } catch (ServletException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline)
+            Thread.sleep(5);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("compartment", "search").gauge().value();
+    }
+
+    private double rejections(String reason) {
+        return meterRegistry.get("springyield.bulkhead.rejected").tag("compartment", "search").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,200 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.utils.QueryStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCountFilterTest {
+    private static final String USER_QUERY = "select u1_0.user_id from users u1_0 where u1_0.user_id=?";
+    private static final String ACCOUNT_QUERY = "select a1_0.account_id from accounts a1_0 where a1_0.user_id=?";
+
+    private final QueryStats.Inspector inspector = new QueryStats.Inspector();
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryStats.stop();
+    }
+
+    @Test
+    void doFilter_CountsStatementsOfRequest() throws ServletException, IOException {
+        // Arrange
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, true, false, 20);
+        AtomicReference<QueryStats> seen = new AtomicReference<>();
+
+        // Act - one user and its accounts loaded one by one, the N+1 shape
+        filter.doFilter(request("/api/user/{userId}"), new MockHttpServletResponse(), (req, res) -> {
+            inspector.inspect(USER_QUERY);
+            inspector.inspect(ACCOUNT_QUERY);
+            inspector.inspect(ACCOUNT_QUERY);
+            seen.set(QueryStats.current());
+        });
+
+        // Assert
+        assertEquals(3, seen.get().getStatements());
+        assertEquals(1, seen.get().getShapes().get(USER_QUERY));
+        assertEquals(2, seen.get().getShapes().get(ACCOUNT_QUERY));
+        DistributionSummary statements = statements("/api/user/{userId}");
+        assertEquals(1, statements.count());
+        assertEquals(3, statements.totalAmount());
+    }
+
+    @Test
+    void doFilter_StatementsOutsideRequest_NotCounted() throws ServletException, IOException {
+        // Arrange
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, true, false, 20);
+        AtomicReference<QueryStats> first = new AtomicReference<>();
+        filter.doFilter(request("/api/user/{userId}"), new MockHttpServletResponse(), (req, res) -> {
+            inspector.inspect(USER_QUERY);
+            first.set(QueryStats.current());
+        });
+
+        // Act - a scheduled job on the same thread after the request, then the next request
+        inspector.inspect(USER_QUERY);
+        filter.doFilter(request("/api/user/{userId}"), new MockHttpServletResponse(), (req, res) -> inspector.inspect(ACCOUNT_QUERY));
+
+        // Assert - each request counts only its own statement
+        assertNull(QueryStats.current());
+        assertEquals(1, first.get().getStatements());
+        assertEquals(2, statements("/api/user/{userId}").count());
+        assertEquals(2, statements("/api/user/{userId}").totalAmount());
+    }
+
+    @Test
+    void doFilter_ConcurrentRequests_CountedApart() throws Exception {
+        // Arrange - both requests are in flight at the same time, on their own threads
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, true, false, 20);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        // Act
+        CompletableFuture<Integer> users = CompletableFuture.supplyAsync(() -> run(filter, "/api/user/search", 5, bothStarted));
+        CompletableFuture<Integer> accounts = CompletableFuture.supplyAsync(() -> run(filter, "/api/account/search", 2, bothStarted));
+
+        // Assert
+        assertEquals(5, users.get(2, TimeUnit.SECONDS));
+        assertEquals(2, accounts.get(2, TimeUnit.SECONDS));
+        assertEquals(5, statements("/api/user/search").totalAmount());
+        assertEquals(2, statements("/api/account/search").totalAmount());
+    }
+
+    @Test
+    void doFilter_ExposeHeaders_AddsCountToResponse() throws ServletException, IOException {
+        // Arrange
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, true, true, 20);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request("/api/user/{userId}"), response, (req, res) -> {
+            inspector.inspect(USER_QUERY);
+            inspector.inspect(ACCOUNT_QUERY);
+            res.getWriter().write("{}");
+        });
+
+        // Assert - the body held back for the headers still reaches the client
+        assertEquals("2", response.getHeader("X-Query-Count"));
+        assertNotNull(response.getHeader("X-Query-Time"));
+        assertEquals("{}", response.getContentAsString());
+    }
+
+    @Test
+    void doFilter_EventStream_NotBuffered() throws ServletException, IOException {
+        // Arrange
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, true, true, 20);
+        MockHttpServletRequest request = request("/api/transactions/stream");
+        request.addHeader("Accept", "text/event-stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request, response, (req, res) -> inspector.inspect(ACCOUNT_QUERY));
+
+        // Assert - counted, but no headers, which would need the stream to be held back
+        assertNull(response.getHeader("X-Query-Count"));
+        assertEquals(1, statements("/api/transactions/stream").totalAmount());
+    }
+
+    @Test
+    void doFilter_Disabled_CollectsNothing() throws ServletException, IOException {
+        // Arrange
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, false, true, 20);
+        AtomicReference<QueryStats> seen = new AtomicReference<>();
+
+        // Act
+        filter.doFilter(request("/api/user/{userId}"), new MockHttpServletResponse(), (req, res) -> {
+            inspector.inspect(USER_QUERY);
+            seen.set(QueryStats.current());
+        });
+
+        // Assert
+        assertNull(seen.get());
+        assertNull(meterRegistry.find("springyield.http.statements").summary());
+    }
+
+    @Test
+    void doFilter_UnmatchedRequest_TaggedUnknown() throws ServletException, IOException {
+        // Arrange - no handler matched, so there is no pattern and the raw URI must not become a tag
+        QueryCountFilter filter = new QueryCountFilter(meterRegistry, true, false, 20);
+
+        // Act
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/transactions/iban/NL91SPYD0000000001"),
+                new MockHttpServletResponse(), (req, res) -> inspector.inspect(USER_QUERY));
+
+        // Assert
+        assertEquals(1, statements("UNKNOWN").count());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// A GET request as Spring MVC leaves it after matching a handler
+    private static MockHttpServletRequest request(String pattern) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", pattern);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+        return request;
+    }
+
+    /// Runs a request with the given number of statements, waiting inside it until the other request is in flight
+    private int run(QueryCountFilter filter, String pattern, int statements, CountDownLatch bothStarted) {
+        AtomicReference<QueryStats> seen = new AtomicReference<>();
+        try {
+            filter.doFilter(request(pattern), new MockHttpServletResponse(), (req, res) -> {
+                bothStarted.countDown();
+                try {
+                    assertTrue(bothStarted.await(1, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < statements; i++)
+                    inspector.inspect(ACCOUNT_QUERY);
+                seen.set(QueryStats.current());
+            });
+        } catch (ServletException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return seen.get().getStatements();
+    }
+
+    private DistributionSummary statements(String uri) {
+        return meterRegistry.get("springyield.http.statements").tag("uri", uri).summary();
+    }
+}
@@ -0,0 +1,237 @@
+package com.stefvisser.springyield.config;
+
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+    private static final String LOGIN_PATH = "/api/auth/login";
+    private static final String TRANSFER_PATH = "/api/transactions/create";
+
+    private RateLimitProperties properties;
+    private RateLimitProperties.Rule login;
+    private RateLimitProperties.Rule transfer;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        // Two requests per 10 seconds: a burst of two, then one every 5 seconds
+        login = new RateLimitProperties.Rule();
+        login.setPath(LOGIN_PATH);
+        login.setCapacity(2);
+        login.setPeriod(Duration.ofSeconds(10));
+
+        transfer = new RateLimitProperties.Rule();
+        transfer.setPath(TRANSFER_PATH);
+        transfer.setKey(RateLimitProperties.KeyType.USER);
+        transfer.setCapacity(1);
+        transfer.setPeriod(Duration.ofSeconds(10));
+
+        properties = new RateLimitProperties();
+        properties.getRules().put("login", login);
+        properties.getRules().put("transfer", transfer);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_WithinCapacity_Admits() throws ServletException, IOException {
+        // Arrange
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+
+        // Act & Assert - the whole burst is admitted
+        assertEquals(200, send(filter, login("10.0.0.1")).getStatus());
+        assertEquals(200, send(filter, login("10.0.0.1")).getStatus());
+    }
+
+    @Test
+    void doFilter_OverCapacity_RejectsWith429AndRetryAfter() throws ServletException, IOException {
+        // Arrange
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        send(filter, login("10.0.0.1"));
+        send(filter, login("10.0.0.1"));
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(login("10.0.0.1"), response, chain);
+
+        // Assert - the next token is one emission interval of 5 seconds away
+        assertNull(chain.getRequest());
+        assertEquals(429, response.getStatus());
+        assertEquals("5", response.getHeader("Retry-After"));
+        assertTrue(response.getContentAsString().contains("\"status\":429"));
+        assertEquals(1, meterRegistry.get("springyield.ratelimit.rejected").tag("rule", "login").counter().count());
+    }
+
+    @Test
+    void doFilter_AfterInterval_RefillsToken() throws Exception {
+        // Arrange - one token per 300 ms, no burst
+        login.setCapacity(1);
+        login.setPeriod(Duration.ofMillis(300));
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        assertEquals(200, send(filter, login("10.0.0.1")).getStatus());
+        assertEquals(429, send(filter, login("10.0.0.1")).getStatus());
+
+        // Act
+        Thread.sleep(400);
+
+        // Assert - one token came back, not more
+        assertEquals(200, send(filter, login("10.0.0.1")).getStatus());
+        assertEquals(429, send(filter, login("10.0.0.1")).getStatus());
+    }
+
+    @Test
+    void doFilter_DifferentIps_HaveSeparateBuckets() throws ServletException, IOException {
+        // Arrange
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        send(filter, login("10.0.0.1"));
+        send(filter, login("10.0.0.1"));
+
+        // Act & Assert
+        assertEquals(429, send(filter, login("10.0.0.1")).getStatus());
+        assertEquals(200, send(filter, login("10.0.0.2")).getStatus());
+    }
+
+    @Test
+    void doFilter_UserKey_SeparatesUsersBehindOneIp() throws ServletException, IOException {
+        // Arrange
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        authenticate(1L, UserRole.APPROVED);
+        assertEquals(200, send(filter, transfer()).getStatus());
+
+        // Act & Assert - same address, the first user is out of tokens, the second is not
+        assertEquals(429, send(filter, transfer()).getStatus());
+        authenticate(2L, UserRole.APPROVED);
+        assertEquals(200, send(filter, transfer()).getStatus());
+    }
+
+    @Test
+    void doFilter_RuleOfOtherEndpoint_TakesNoToken() throws ServletException, IOException {
+        // Arrange
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        authenticate(1L, UserRole.APPROVED);
+        send(filter, login("10.0.0.1"));
+        send(filter, login("10.0.0.1"));
+
+        // Act & Assert - transfers and logins are counted apart, and GET requests match no rule
+        assertEquals(200, send(filter, transfer()).getStatus());
+        assertEquals(200, send(filter, new MockHttpServletRequest("GET", LOGIN_PATH)).getStatus());
+    }
+
+    @Test
+    void doFilter_RoleCapacity_RaisesLimitForRole() throws ServletException, IOException {
+        // Arrange
+        transfer.getRoleCapacity().put(UserRole.EMPLOYEE, 3);
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        authenticate(1L, UserRole.EMPLOYEE);
+
+        // Act & Assert
+        for (int i = 0; i < 3; i++)
+            assertEquals(200, send(filter, transfer()).getStatus());
+        assertEquals(429, send(filter, transfer()).getStatus());
+    }
+
+    @Test
+    void evictIdleBuckets_RemovesOnlyRefilledBuckets() throws Exception {
+        // Arrange - the bucket of the first address refills after 200 ms, the second stays busy for 10 seconds
+        RateLimitProperties.Rule quick = new RateLimitProperties.Rule();
+        quick.setPath("/api/auth/signup");
+        quick.setCapacity(1);
+        quick.setPeriod(Duration.ofMillis(200));
+        properties.getRules().put("signup", quick);
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        send(filter, request("POST", "/api/auth/signup", "10.0.0.1"));
+        send(filter, login("10.0.0.2"));
+
+        // Act & Assert
+        filter.evictIdleBuckets();
+        assertEquals(2, buckets());
+        Thread.sleep(300);
+        filter.evictIdleBuckets();
+        assertEquals(1, buckets());
+    }
+
+    @Test
+    void doFilter_BucketTableFull_EvictsThenFailsOpen() throws Exception {
+        // Arrange - room for one client
+        properties.setMaxBuckets(1);
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+        send(filter, login("10.0.0.1"));
+
+        // Act - the only bucket is still in use, so the new client cannot be tracked
+        MockHttpServletResponse untracked = send(filter, login("10.0.0.2"));
+
+        // Assert - admitted rather than locked out, and counted
+        assertEquals(200, untracked.getStatus());
+        assertEquals(1, buckets());
+        assertEquals(1, meterRegistry.get("springyield.ratelimit.overflow").counter().count());
+    }
+
+    @Test
+    void doFilter_Disabled_PassesThrough() throws ServletException, IOException {
+        // Arrange
+        properties.setEnabled(false);
+        login.setCapacity(1);
+        RateLimitFilter filter = new RateLimitFilter(properties, meterRegistry);
+
+        // Act & Assert
+        for (int i = 0; i < 5; i++)
+            assertEquals(200, send(filter, login("10.0.0.1")).getStatus());
+        assertEquals(0, buckets());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static MockHttpServletRequest request(String method, String path, String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+
+    private static MockHttpServletRequest login(String remoteAddress) {
+        return request("POST", LOGIN_PATH, remoteAddress);
+    }
+
+    private static MockHttpServletRequest transfer() {
+        return request("POST", TRANSFER_PATH, "10.0.0.1");
+    }
+
+    private static MockHttpServletResponse send(RateLimitFilter filter, MockHttpServletRequest request) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static void authenticate(long userId, UserRole role) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setRole(role);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+
+    private double buckets() {
+        return meterRegistry.get("springyield.ratelimit.buckets").gauge().value();
+    }
+}
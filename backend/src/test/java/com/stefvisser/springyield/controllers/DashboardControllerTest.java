@@ -0,0 +1,68 @@
+package com.stefvisser.springyield.controllers;
+
+import com.stefvisser.springyield.dto.DashboardDto;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+import com.stefvisser.springyield.services.DashboardService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DashboardControllerTest {
+
+    @Mock
+    private DashboardService dashboardService;
+
+    @InjectMocks
+    private DashboardController dashboardController;
+
+    private User testCustomer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        testCustomer = new User("Customer", "Test", "password", "customer@example.com", 987654321, "987-654-3210",
+                UserRole.APPROVED, new ArrayList<>());
+        testCustomer.setUserId(2L);
+    }
+
+    @Test
+    void getDashboard_Success() {
+        // Arrange
+        DashboardDto dashboard = new DashboardDto(null, List.of(), List.of("profile"));
+        when(dashboardService.getDashboard(testCustomer, 5)).thenReturn(dashboard);
+
+        // Act
+        ResponseEntity<?> response = dashboardController.getDashboard(testCustomer, 5);
+
+        // Assert - a partial dashboard is still a successful response
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(dashboard, response.getBody());
+    }
+
+    @Test
+    void getDashboard_Unauthenticated() {
+        // Arrange
+        when(dashboardService.getDashboard(null, 5))
+                .thenThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not authenticated"));
+
+        // Act
+        ResponseEntity<?> response = dashboardController.getDashboard(null, 5);
+
+        // Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        assertEquals("User not authenticated", response.getBody());
+    }
+}
@@ -7,6 +7,7 @@ import com.stefvisser.springyield.models.TransactionType;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.models.UserRole;
 import com.stefvisser.springyield.services.TransactionService;
+import com.stefvisser.springyield.services.TransactionStreamService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -15,6 +16,7 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -31,6 +33,9 @@ class TransactionControllerTest {
     @Mock
     private TransactionService transactionService;
 
+    @Mock
+    private TransactionStreamService transactionStreamService;
+
     @InjectMocks
     private TransactionController transactionController;
 
@@ -174,6 +179,36 @@ class TransactionControllerTest {
         assertEquals(testTransaction.getTransactionId(), returnedList.get(0).getTransactionId());
     }
 
+    @Test
+    void streamTransactionsByIban_Success() {
+        // Arrange
+        String iban = "NL91SPYD0000000001";
+        SseEmitter emitter = new SseEmitter();
+        when(transactionStreamService.subscribe(testCustomer, iban, "41")).thenReturn(emitter);
+
+        // Act
+        ResponseEntity<?> response = transactionController.streamTransactionsByIban(testCustomer, iban, "41");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(emitter, response.getBody());
+    }
+
+    @Test
+    void streamTransactionsByIban_Forbidden() {
+        // Arrange
+        String iban = "NL91SPYD0000000001";
+        when(transactionStreamService.subscribe(testCustomer, iban, null))
+                .thenThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permission to view this account"));
+
+        // Act
+        ResponseEntity<?> response = transactionController.streamTransactionsByIban(testCustomer, iban, null);
+
+        // Assert
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+        assertEquals("You do not have permission to view this account", response.getBody());
+    }
+
     @Test
     void getTransactionsByReference_Success() {
         // Arrange
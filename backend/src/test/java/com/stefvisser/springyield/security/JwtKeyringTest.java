@@ -0,0 +1,79 @@
+package com.stefvisser.springyield.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyringTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void verificationKey_KeyRotatedByOtherNode_ReloadsAndAccepts() {
+        // Arrange - two nodes sharing the key directory
+        JwtKeyring node = keyring(Duration.ofHours(1));
+        JwtKeyring otherNode = keyring(Duration.ofHours(1));
+
+        // Act - the other node rotates and signs with a key this node has not read yet
+        JwtKeyring.SigningKey rotated = otherNode.rotate();
+
+        // Assert
+        assertEquals(rotated.key(), node.verificationKey(rotated.kid()));
+        assertEquals(rotated.kid(), node.activeKey().kid());
+    }
+
+    @Test
+    void verificationKey_UnknownKidsWithinInterval_ReloadOnce() {
+        // Arrange
+        JwtKeyring node = keyring(Duration.ofHours(1));
+        JwtKeyring otherNode = keyring(Duration.ofHours(1));
+        assertNull(node.verificationKey("made-up"));
+
+        // Act - the first unknown key ID used up the reload of this interval
+        JwtKeyring.SigningKey rotated = otherNode.rotate();
+
+        // Assert - picked up by the scheduled reload instead
+        assertNull(node.verificationKey(rotated.kid()));
+        node.reload();
+        assertEquals(rotated.key(), node.verificationKey(rotated.kid()));
+    }
+
+    @Test
+    void verificationKey_InMemory_UnknownKidRejected() {
+        // Arrange
+        JwtKeyring keyring = new JwtKeyring("", Duration.ofHours(1), Duration.ofDays(7), Duration.ZERO);
+
+        // Act & Assert
+        assertNull(keyring.verificationKey("made-up"));
+        assertEquals(keyring.activeKey().key(), keyring.verificationKey(null));
+    }
+
+    @Test
+    void verificationKey_Retired_Rejected() throws InterruptedException {
+        // Arrange - no verification window, so a key retires as soon as its successor exists
+        JwtKeyring keyring = new JwtKeyring(directory.toString(), Duration.ZERO, Duration.ofDays(7), Duration.ZERO);
+        JwtKeyring.SigningKey previous = keyring.activeKey();
+        Thread.sleep(5);
+
+        // Act
+        JwtKeyring.SigningKey current = keyring.rotate();
+        Thread.sleep(5);
+
+        // Assert
+        assertNull(keyring.verificationKey(previous.kid()));
+        assertEquals(current.key(), keyring.verificationKey(current.kid()));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private JwtKeyring keyring(Duration unknownKidReloadInterval) {
+        return new JwtKeyring(directory.toString(), Duration.ofHours(1), Duration.ofDays(7), unknownKidReloadInterval);
+    }
+}
@@ -8,15 +8,21 @@ import com.stefvisser.springyield.models.AccountType;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.models.UserRole;
 import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.utils.AccountCache;
+import com.stefvisser.springyield.utils.SearchCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +38,17 @@ class AccountServiceImplTest {
     @Mock
     private AccountRepository accountRepository;
 
+    @Mock
+    private IbanService ibanService;
+
+    @Spy
+    private SearchCoalescer searchCoalescer = new SearchCoalescer(new SimpleMeterRegistry());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private AccountCache accountCache = new AccountCache(meterRegistry, true, 100, Duration.ofMinutes(1));
+
     @InjectMocks
     private AccountServiceImpl accountService;
 
@@ -251,6 +268,79 @@ class AccountServiceImplTest {
         assertEquals("You do not have permission to view this account", exception.getReason());
     }
 
+    @Test
+    void getAccountByIban_SecondLookupServedFromCache() {
+        // Arrange
+        when(accountRepository.findByIban(testAccount.getIban())).thenReturn(testAccount);
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Act
+        Account result = accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Assert
+        assertNotSame(testAccount, result);
+        assertEquals(testAccount.getIban(), result.getIban());
+        assertEquals(testAccount.getBalance(), result.getBalance());
+        assertEquals(testCustomer.getUserId(), result.getUser().getUserId());
+        verify(accountRepository, times(1)).findByIban(anyString());
+        assertEquals(1.0, meterRegistry.get("springyield.account-cache.requests").tag("result", "hit").counter().count());
+        assertEquals(0.5, meterRegistry.get("springyield.account-cache.hit-ratio").gauge().value());
+    }
+
+    @Test
+    void getAccountByIban_OtherSpelling_NotFoundWithWarmCache() {
+        // Arrange - the database only matches the IBAN as stored, so a cold cache does not find this spelling
+        String otherSpelling = "nl91 spyd 0000 0000 01";
+        when(accountRepository.findByIban(testAccount.getIban())).thenReturn(testAccount);
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Act & Assert - nor does a warm one
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> accountService.getAccountByIban(testCustomer, otherSpelling));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
+        verify(accountRepository, times(1)).findByIban(otherSpelling);
+    }
+
+    @Test
+    void getAccountByIban_CacheHitStillChecksAccess() {
+        // Arrange
+        User otherCustomer = new User("Other", "Customer", "password", "other@example.com", 111222333, "111-222-3333",
+                UserRole.APPROVED, new ArrayList<>());
+        otherCustomer.setUserId(3L);
+        when(accountRepository.findByIban(testAccount.getIban())).thenReturn(testAccount);
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> accountService.getAccountByIban(otherCustomer, testAccount.getIban()));
+
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
+        verify(accountRepository, times(1)).findByIban(testAccount.getIban());
+    }
+
+    @Test
+    void getAccountByIbanForUpdate_AlwaysReadsDatabaseAndCountsStaleEntry() {
+        // Arrange
+        testAccount.setVersion(1L);
+        Account current = new Account(1L, testCustomer, testAccount.getIban(), LocalDate.now(), AccountType.PAYMENT,
+                new BigDecimal("1000.00"), new BigDecimal("5000.00"), new BigDecimal("2000.00"),
+                new BigDecimal("10000.00"), AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>());
+        current.setVersion(3L);
+        when(accountRepository.findByIban(testAccount.getIban())).thenReturn(testAccount, current);
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Act
+        Account result = accountService.getAccountByIbanForUpdate(testCustomer, testAccount.getIban());
+
+        // Assert
+        assertSame(current, result);
+        verify(accountRepository, times(2)).findByIban(testAccount.getIban());
+        assertEquals(1.0, meterRegistry.get("springyield.account-cache.stale").counter().count());
+        assertEquals(2.0, meterRegistry.get("springyield.account-cache.staleness").summary().totalAmount());
+        assertEquals(new BigDecimal("2000.00"), accountService.getAccountByIban(testCustomer, testAccount.getIban()).getBalance());
+    }
+
     @Test
     void updateBalanceLimits_Success() {
         // Arrange
@@ -273,6 +363,35 @@ class AccountServiceImplTest {
         verify(accountRepository, times(1)).save(testAccount);
     }
 
+    @Test
+    void updateSpendLimits_Success() {
+        // Arrange
+        Long accountId = testAccount.getAccountId();
+        BigDecimal newWeeklyLimit = BigDecimal.valueOf(5000.00);
+
+        when(accountRepository.findByAccountId(accountId)).thenReturn(Optional.of(testAccount));
+        when(accountRepository.save(any(Account.class))).thenReturn(testAccount);
+
+        // Act
+        Account result = accountService.updateSpendLimits(testEmployee, accountId, newWeeklyLimit, null);
+
+        // Assert
+        assertNotNull(result);
+        assertEquals(newWeeklyLimit, result.getWeeklyLimit());
+        assertNull(result.getMonthlyLimit());
+        verify(accountRepository, times(1)).save(testAccount);
+    }
+
+    @Test
+    void updateSpendLimits_NegativeLimit() {
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> accountService.updateSpendLimits(testEmployee, 1L, BigDecimal.valueOf(-1), null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verify(accountRepository, never()).save(any(Account.class));
+    }
+
     @Test
     void updateBalanceLimits_Unauthorized() {
         // Act & Assert
@@ -296,6 +415,7 @@ class AccountServiceImplTest {
     @Test
     void createAccount_Success() {
         // Arrange
+        when(ibanService.nextIban()).thenReturn("NL91 SPYD 0417 1643 00");
         when(accountRepository.save(any(Account.class))).thenAnswer(invocation -> {
             Account account = invocation.getArgument(0);
             account.setAccountId(3L);
@@ -316,11 +436,34 @@ class AccountServiceImplTest {
         assertNotNull(result);
         assertNotNull(result.getAccountId());
         assertEquals(testCustomer, result.getUser());
+        assertEquals("NL91 SPYD 0417 1643 00", result.getIban());
         assertEquals(AccountType.PAYMENT, result.getAccountType());
         assertEquals(AccountStatus.ACTIVE, result.getStatus());
         verify(accountRepository, times(1)).save(any(Account.class));
     }
 
+    @Test
+    void createAccount_SkipsIbanThatIsAlreadyTaken() {
+        // Arrange
+        when(ibanService.nextIban()).thenReturn("NL91 SPYD 0417 1643 00", "NL38 SPYD 1234 5678 90");
+        when(accountRepository.existsByIban("NL91 SPYD 0417 1643 00")).thenReturn(true);
+        when(accountRepository.save(any(Account.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        Account result = accountService.createAccount(
+                testCustomer,
+                AccountType.SAVINGS,
+                new BigDecimal("1000.00"),
+                new BigDecimal("5000.00"),
+                BigDecimal.ZERO,
+                new BigDecimal("10000.00")
+        );
+
+        // Assert
+        assertEquals("NL38 SPYD 1234 5678 90", result.getIban());
+        verify(ibanService, times(2)).nextIban();
+    }
+
     @Test
     void updateAccount_Success() {
         // Arrange
@@ -333,6 +476,57 @@ class AccountServiceImplTest {
         verify(accountRepository, times(1)).save(testAccount);
     }
 
+    @Test
+    void updateAccount_EvictsCachedAccount() {
+        // Arrange
+        testAccount.setVersion(4L);
+        when(accountRepository.findByIban(testAccount.getIban())).thenReturn(testAccount);
+        when(accountRepository.save(any(Account.class))).thenReturn(testAccount);
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Act
+        testAccount.setVersion(5L);
+        accountService.updateAccount(testAccount);
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Assert
+        verify(accountRepository, times(1)).flush();
+        verify(accountRepository, times(2)).findByIban(testAccount.getIban());
+    }
+
+    @Test
+    void updateAccount_OlderReadIsNotCachedAfterUpdate() {
+        // Arrange - a read that started before the update returns the old version after it
+        Account outdated = new Account(1L, testCustomer, testAccount.getIban(), LocalDate.now(), AccountType.PAYMENT,
+                new BigDecimal("1000.00"), new BigDecimal("5000.00"), new BigDecimal("2500.00"),
+                new BigDecimal("10000.00"), AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>());
+        outdated.setVersion(4L);
+        testAccount.setVersion(5L);
+        when(accountRepository.save(any(Account.class))).thenReturn(testAccount);
+        when(accountRepository.findByIban(testAccount.getIban())).thenReturn(outdated);
+        accountService.updateAccount(testAccount);
+
+        // Act
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+        accountService.getAccountByIban(testCustomer, testAccount.getIban());
+
+        // Assert
+        verify(accountRepository, times(2)).findByIban(testAccount.getIban());
+    }
+
+    @Test
+    void updateAccount_ConcurrentChange() {
+        // Arrange
+        when(accountRepository.save(any(Account.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Account.class, testAccount.getAccountId()));
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> accountService.updateAccount(testAccount));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+    }
+
     @Test
     void saveAll_Success() {
         // Arrange
@@ -7,6 +7,7 @@ import com.stefvisser.springyield.dto.UserSignupDto;
 import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.models.UserRole;
 import com.stefvisser.springyield.repositories.AuthRepository;
+import com.stefvisser.springyield.security.JwtKeyring;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
@@ -16,14 +17,15 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.lang.reflect.Field;
 import java.security.Key;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -36,6 +38,13 @@ class AuthServiceImplTest {
     @Mock
     private AuthRepository authRepository;
 
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    // In-memory keyring, no key directory is configured
+    @Spy
+    private JwtKeyring keyring = new JwtKeyring("", Duration.ofHours(1), Duration.ofDays(7), Duration.ofSeconds(10));
+
     @InjectMocks
     private AuthServiceImpl authService;
 
@@ -246,6 +255,7 @@ class AuthServiceImplTest {
                 .claim("role", testUser.getRole())
                 .setIssuedAt(new Date(System.currentTimeMillis() - 1000 * 60 * 30)) // 30 minutes ago
                 .setExpiration(new Date(System.currentTimeMillis() - 1000 * 60 * 15)) // 15 minutes ago (expired)
+                .setHeaderParam("kid", keyring.activeKey().kid())
                 .signWith(getKeyFromAuthService())
                 .compact();
 
@@ -256,11 +266,59 @@ class AuthServiceImplTest {
         assertFalse(result);
     }
 
-    // Helper method to get the key from AuthService using reflection
-    private Key getKeyFromAuthService() throws Exception {
-        Field keyField = AuthServiceImpl.class.getDeclaredField("key");
-        keyField.setAccessible(true);
-        return (Key) keyField.get(authService);
+    @Test
+    void isTokenValid_AfterKeyRotation() {
+        // Arrange
+        UserProfileDto userProfileDto = new UserProfileDto(testUser);
+        String token = authService.generateJwtToken(userProfileDto);
+        UserDetails userDetails = mock(UserDetails.class);
+        when(userDetails.getUsername()).thenReturn(testUser.getEmail());
+
+        // Act
+        keyring.rotate();
+
+        // Assert - tokens signed with the previous key stay valid during the verification window
+        assertTrue(authService.isTokenValid(token, userDetails));
+        assertNotEquals(token.split("\\.")[0], authService.generateJwtToken(userProfileDto).split("\\.")[0]);
+    }
+
+    @Test
+    void isTokenValid_UnknownKeyId() {
+        // Arrange
+        UserDetails userDetails = mock(UserDetails.class);
+        when(userDetails.getUsername()).thenReturn(testUser.getEmail());
+
+        String foreignToken = Jwts.builder()
+                .setHeaderParam("kid", "unknown")
+                .setSubject(testUser.getEmail())
+                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60))
+                .signWith(Keys.secretKeyFor(SignatureAlgorithm.HS256))
+                .compact();
+
+        // Act & Assert
+        assertFalse(authService.isTokenValid(foreignToken, userDetails));
+    }
+
+    @Test
+    void isTokenValid_RevokedToken() {
+        // Arrange
+        UserProfileDto userProfileDto = new UserProfileDto(testUser);
+        String token = authService.generateJwtToken(userProfileDto);
+        UserDetails userDetails = mock(UserDetails.class);
+        when(userDetails.getUsername()).thenReturn(testUser.getEmail());
+        when(tokenRevocationService.isRevoked(eq(testUser.getUserId()), any(Date.class))).thenReturn(true);
+
+        // Act
+        boolean result = authService.isTokenValid(token, userDetails);
+
+        // Assert
+        assertFalse(result);
+        verify(tokenRevocationService, times(1)).isRevoked(eq(testUser.getUserId()), any(Date.class));
+    }
+
+    // Helper method to get the active signing key from the keyring used by AuthService
+    private Key getKeyFromAuthService() {
+        return keyring.activeKey().key();
     }
 
     @Test
@@ -0,0 +1,247 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.DashboardDto;
+import com.stefvisser.springyield.models.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DashboardServiceImplTest {
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private AccountService accountService;
+
+    @Mock
+    private TransactionService transactionService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DashboardServiceImpl dashboardService;
+    private User customer;
+    private Account payment;
+    private Account savings;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        dashboardService = new DashboardServiceImpl(userService, accountService, transactionService, transactionManager,
+                meterRegistry, Duration.ofMillis(500), 50, 4);
+
+        customer = new User("Customer", "Test", "password", "customer@example.com", 987654321, "987-654-3210",
+                UserRole.APPROVED, new ArrayList<>());
+        customer.setUserId(2L);
+        payment = account(customer, "NL91SPYD0000000001", AccountType.PAYMENT, "1000.00");
+        savings = account(customer, "NL91SPYD0000000002", AccountType.SAVINGS, "5000.00");
+        customer.getAccounts().addAll(List.of(payment, savings));
+
+        when(userService.getUserById(customer, 2L)).thenReturn(customer);
+        when(accountService.getAccountByIban(customer, payment.getIban())).thenReturn(payment);
+        when(accountService.getAccountByIban(customer, savings.getIban())).thenReturn(savings);
+        when(transactionService.getRecentTransactionsByIban(eq(customer), anyString(), anyInt())).thenReturn(List.of(transaction()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dashboardService.shutdown();
+    }
+
+    @Test
+    void getDashboard_CombinesAllParts() {
+        // Act
+        DashboardDto dashboard = dashboardService.getDashboard(customer, 5);
+
+        // Assert
+        assertTrue(dashboard.isComplete());
+        assertEquals("customer@example.com", dashboard.getProfile().getEmail());
+        assertEquals(2, dashboard.getAccounts().size());
+        assertEquals(0, new BigDecimal("1000.00").compareTo(dashboard.getAccounts().get(0).getBalance()));
+        assertEquals(AccountType.SAVINGS, dashboard.getAccounts().get(1).getAccountType());
+        assertEquals(1, dashboard.getAccounts().get(1).getRecentTransactions().size());
+        verify(transactionService).getRecentTransactionsByIban(customer, payment.getIban(), 5);
+    }
+
+    @Test
+    void getDashboard_ReturnsPartialDashboardOnTimeout() {
+        // Arrange
+        when(transactionService.getRecentTransactionsByIban(customer, savings.getIban(), 5)).thenAnswer(invocation -> {
+            Thread.sleep(10_000);
+            return List.of();
+        });
+
+        // Act
+        long start = System.nanoTime();
+        DashboardDto dashboard = dashboardService.getDashboard(customer, 5);
+
+        // Assert - returned at the deadline with the balance, but without the slow transactions
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertFalse(dashboard.isComplete());
+        assertEquals(List.of("transactions:" + savings.getIban()), dashboard.getMissing());
+        assertNull(dashboard.getAccounts().get(1).getRecentTransactions());
+        assertEquals(0, new BigDecimal("5000.00").compareTo(dashboard.getAccounts().get(1).getBalance()));
+        assertEquals(1.0, meterRegistry.get("springyield.dashboard.partial").counter().count());
+    }
+
+    @Test
+    void getDashboard_LimitsPartsRunningAtOnce() {
+        // Arrange - two slots for five parts, every part takes a while
+        dashboardService.shutdown();
+        dashboardService = new DashboardServiceImpl(userService, accountService, transactionService, transactionManager,
+                meterRegistry, Duration.ofSeconds(2), 50, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(transactionService.getRecentTransactionsByIban(eq(customer), anyString(), anyInt())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return List.of(transaction());
+        });
+        when(accountService.getAccountByIban(eq(customer), anyString())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return invocation.getArgument(1).equals(payment.getIban()) ? payment : savings;
+        });
+
+        // Act
+        DashboardDto dashboard = dashboardService.getDashboard(customer, 5);
+
+        // Assert
+        assertTrue(dashboard.isComplete());
+        assertTrue(maxRunning.get() <= 2, "Parts running at once: " + maxRunning.get());
+    }
+
+    @Test
+    void getDashboard_ConcurrentDashboards_TakeAsLongAsSlowestPart() throws Exception {
+        // Arrange - every part takes 200 ms, and four customers open their dashboard at the same moment
+        when(userService.getUserById(eq(customer), anyLong())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return customer;
+        });
+        when(accountService.getAccountByIban(eq(customer), anyString())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return invocation.getArgument(1).equals(payment.getIban()) ? payment : savings;
+        });
+        when(transactionService.getRecentTransactionsByIban(eq(customer), anyString(), anyInt())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return List.of(transaction());
+        });
+        dashboardService.shutdown();
+        dashboardService = new DashboardServiceImpl(userService, accountService, transactionService, transactionManager,
+                meterRegistry, Duration.ofSeconds(2), 50, 6);
+        CountDownLatch startGate = new CountDownLatch(1);
+
+        // Act
+        List<CompletableFuture<Long>> dashboards = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            dashboards.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    startGate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                long start = System.nanoTime();
+                assertTrue(dashboardService.getDashboard(customer, 5).isComplete());
+                return System.nanoTime() - start;
+            }));
+        }
+        startGate.countDown();
+
+        // Assert - near one part, not the five parts of a dashboard or the twenty of all of them one after another
+        for (CompletableFuture<Long> dashboard : dashboards) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(dashboard.get(5, TimeUnit.SECONDS));
+            assertTrue(millis < 600, "Dashboard took " + millis + " ms");
+        }
+    }
+
+    @Test
+    void getDashboard_FailedPartIsMissing() {
+        // Arrange
+        when(accountService.getAccountByIban(customer, payment.getIban()))
+                .thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Account not found"));
+
+        // Act
+        DashboardDto dashboard = dashboardService.getDashboard(customer, 5);
+
+        // Assert - the IBAN and type are still known from the user's account list
+        assertEquals(List.of("account:" + payment.getIban()), dashboard.getMissing());
+        assertEquals(payment.getIban(), dashboard.getAccounts().get(0).getIban());
+        assertEquals(AccountType.PAYMENT, dashboard.getAccounts().get(0).getAccountType());
+        assertNull(dashboard.getAccounts().get(0).getBalance());
+    }
+
+    @Test
+    void getDashboard_WithoutTransactions() {
+        // Act
+        DashboardDto dashboard = dashboardService.getDashboard(customer, 0);
+
+        // Assert
+        assertTrue(dashboard.isComplete());
+        assertTrue(dashboard.getAccounts().get(0).getRecentTransactions().isEmpty());
+        verify(transactionService, never()).getRecentTransactionsByIban(any(), anyString(), anyInt());
+    }
+
+    @Test
+    void getDashboard_CapsTransactionLimit() {
+        // Act
+        dashboardService.getDashboard(customer, 1000);
+
+        // Assert
+        verify(transactionService).getRecentTransactionsByIban(customer, payment.getIban(), 50);
+    }
+
+    @Test
+    void getDashboard_Unauthenticated() {
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> dashboardService.getDashboard(null, 5));
+        assertEquals(HttpStatus.UNAUTHORIZED, exception.getStatusCode());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static Account account(User owner, String iban, AccountType accountType, String balance) {
+        return new Account(null, owner, iban, LocalDate.now(), accountType, new BigDecimal("2000"),
+                new BigDecimal("1000"), new BigDecimal(balance), new BigDecimal("-500"), AccountStatus.ACTIVE,
+                BigDecimal.ZERO, new ArrayList<>());
+    }
+
+    private static Transaction transaction() {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(1L);
+        transaction.setTransactionType(TransactionType.TRANSFER);
+        transaction.setFromAccount("NL91SPYD0000000001");
+        transaction.setToAccount("NL91SPYD0000000003");
+        transaction.setTransferAmount(new BigDecimal("25.00"));
+        transaction.setTimestamp(LocalDateTime.now());
+        return transaction;
+    }
+}
@@ -0,0 +1,138 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.*;
+import com.stefvisser.springyield.repositories.BalanceCheckpointRepository;
+import com.stefvisser.springyield.repositories.EndOfDayRunRepository;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.repositories.UserRepository;
+import com.stefvisser.springyield.utils.DataSeeder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the end-of-day checkpoint statement against the database, for a business day that is long over, so every
+ * posting made since its midnight has to be taken back out of the current balance.
+ */
+@SpringBootTest(properties = {
+        "logging.level.org.hibernate.SQL=warn",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=warn"
+})
+class EndOfDayIntegrationTest {
+
+    @Autowired
+    private EndOfDayService endOfDayService;
+
+    @Autowired
+    private IbanService ibanService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private BalanceCheckpointRepository balanceCheckpointRepository;
+
+    @Autowired
+    private EndOfDayRunRepository endOfDayRunRepository;
+
+    @Autowired
+    private DataSeeder dataSeeder;
+
+    private Account sender;
+    private Account receiver;
+    private LocalDate businessDay;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (!dataSeeder.isSeeded() && System.nanoTime() < deadline)
+            Thread.sleep(50);
+        assertTrue(dataSeeder.isSeeded(), "Seeding did not complete");
+
+        // A day no other run has closed yet
+        businessDay = LocalDate.of(2000, 1, 1).plusDays(System.nanoTime() % 3000);
+
+        String email = "eod." + Long.toString(System.nanoTime(), 36) + "@springyield.com";
+        User owner = new User("Eod", "Owner", "-", email, 100000000, "0600000000", UserRole.APPROVED, new ArrayList<>());
+        owner.getAccounts().add(account(owner, "850.00"));
+        owner.getAccounts().add(account(owner, "650.00"));
+        owner = userRepository.save(owner);
+        sender = owner.getAccounts().get(0);
+        receiver = owner.getAccounts().get(1);
+    }
+
+    @Test
+    void run_PostingsAfterMidnight_NotInClosingBalance() {
+        // Arrange - both postings are in the current balances, only the first one belongs to the business day
+        transactionRepository.save(transaction(businessDay.atTime(23, 59), "100.00"));
+        transactionRepository.save(transaction(businessDay.plusDays(1).atStartOfDay(), "150.00"));
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert
+        assertEquals(EndOfDayStatus.COMPLETED, run.getStatus());
+        assertEquals(0, new BigDecimal("1000.00").compareTo(closingBalance(sender)));
+        assertEquals(0, new BigDecimal("500.00").compareTo(closingBalance(receiver)));
+    }
+
+    @Test
+    void run_LeasedByAnotherInstance_LeftToItUntilLeaseExpires() {
+        // Arrange - another instance is halfway through the day
+        EndOfDayRun running = new EndOfDayRun(businessDay);
+        running.setOwner("42@other-node");
+        running.setLeaseUntil(LocalDateTime.now().plusMinutes(4));
+        running = endOfDayRunRepository.save(running);
+
+        // Act & Assert - skipped while the lease is held, taken over once it has expired
+        assertEquals(EndOfDayStatus.RUNNING, endOfDayService.run(businessDay).getStatus());
+        assertEquals(0, endOfDayRunRepository.findById(running.getRunId()).orElseThrow().getLastAccountId());
+
+        running.setLeaseUntil(LocalDateTime.now().minusSeconds(1));
+        endOfDayRunRepository.save(running);
+        EndOfDayRun run = endOfDayService.run(businessDay);
+        assertEquals(EndOfDayStatus.COMPLETED, run.getStatus());
+        assertNotEquals("42@other-node", run.getOwner());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private Account account(User owner, String balance) {
+        return new Account(null, owner, ibanService.nextIban(), LocalDate.now(), AccountType.PAYMENT,
+                new BigDecimal("1000.00"), new BigDecimal("10000.00"), new BigDecimal(balance),
+                BigDecimal.ZERO, AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>());
+    }
+
+    private Transaction transaction(LocalDateTime timestamp, String amount) {
+        Transaction transaction = new Transaction();
+        transaction.setFromAccount(sender.getIban());
+        transaction.setToAccount(receiver.getIban());
+        transaction.setTransferAmount(new BigDecimal(amount));
+        transaction.setTransactionType(TransactionType.TRANSFER);
+        transaction.setDescription("End of day");
+        transaction.setTimestamp(timestamp);
+        return transaction;
+    }
+
+    private BigDecimal closingBalance(Account account) {
+        return balanceCheckpointRepository.findByAccountIdOrderByBusinessDayDesc(account.getAccountId()).stream()
+                .filter(checkpoint -> checkpoint.getBusinessDay().equals(businessDay))
+                .findFirst()
+                .orElseThrow()
+                .getBalance();
+    }
+}
@@ -0,0 +1,255 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.EndOfDayRun;
+import com.stefvisser.springyield.models.EndOfDayStatus;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.BalanceCheckpointRepository;
+import com.stefvisser.springyield.repositories.EndOfDayRunRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EndOfDayServiceImplTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private BalanceCheckpointRepository balanceCheckpointRepository;
+
+    @Mock
+    private EndOfDayRunRepository endOfDayRunRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EndOfDayServiceImpl endOfDayService;
+
+    private LocalDate businessDay;
+    private LocalDateTime dayEnd;
+    private long rolloverDay;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        endOfDayService = new EndOfDayServiceImpl(accountRepository, balanceCheckpointRepository, endOfDayRunRepository,
+                transactionManager, new SimpleMeterRegistry(), 5000, Duration.ofMinutes(5), 7);
+
+        businessDay = LocalDate.of(2025, 6, 1);
+        dayEnd = LocalDateTime.of(2025, 6, 2, 0, 0);
+        rolloverDay = businessDay.plusDays(1).toEpochDay();
+        when(endOfDayRunRepository.save(any(EndOfDayRun.class))).thenAnswer(invocation -> {
+            EndOfDayRun run = invocation.getArgument(0);
+            if (run.getRunId() == null)
+                run.setRunId(1L);
+            return run;
+        });
+        when(endOfDayRunRepository.claim(anyLong(), anyString(), any(), any())).thenReturn(1);
+        when(endOfDayRunRepository.renewLease(anyLong(), anyString(), any())).thenReturn(1);
+    }
+
+    @Test
+    void run_ProcessesAccountsInChunks() {
+        // Arrange
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.empty());
+        when(accountRepository.findMaxAccountId()).thenReturn(12000L);
+        when(balanceCheckpointRepository.insertCheckpoints(eq(businessDay), eq(dayEnd), anyLong(), anyLong())).thenReturn(5000, 5000, 2000);
+        when(accountRepository.resetSpendCounters(eq(rolloverDay), anyLong(), anyLong())).thenReturn(10, 20, 5);
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert
+        assertEquals(EndOfDayStatus.COMPLETED, run.getStatus());
+        assertEquals(12000L, run.getLastAccountId());
+        assertEquals(12000L, run.getCheckpointsWritten());
+        assertEquals(35L, run.getCountersReset());
+        assertNotNull(run.getFinishedAt());
+        verify(balanceCheckpointRepository).insertCheckpoints(businessDay, dayEnd, 0L, 5000L);
+        verify(balanceCheckpointRepository).insertCheckpoints(businessDay, dayEnd, 5000L, 10000L);
+        verify(balanceCheckpointRepository).insertCheckpoints(businessDay, dayEnd, 10000L, 12000L);
+    }
+
+    @Test
+    void run_ResumesAfterLastCommittedChunk() {
+        // Arrange
+        EndOfDayRun interrupted = new EndOfDayRun(businessDay);
+        interrupted.setRunId(1L);
+        interrupted.setLastAccountId(5000L);
+        interrupted.setCheckpointsWritten(5000L);
+
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.of(interrupted));
+        when(accountRepository.findMaxAccountId()).thenReturn(8000L);
+        when(balanceCheckpointRepository.insertCheckpoints(eq(businessDay), eq(dayEnd), anyLong(), anyLong())).thenReturn(3000);
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert
+        assertEquals(EndOfDayStatus.COMPLETED, run.getStatus());
+        assertEquals(8000L, run.getCheckpointsWritten());
+        verify(balanceCheckpointRepository, times(1)).insertCheckpoints(eq(businessDay), eq(dayEnd), anyLong(), anyLong());
+        verify(balanceCheckpointRepository).insertCheckpoints(businessDay, dayEnd, 5000L, 8000L);
+        verify(accountRepository).resetSpendCounters(rolloverDay, 5000L, 8000L);
+    }
+
+    @Test
+    void run_CompletedDayIsSkipped() {
+        // Arrange
+        EndOfDayRun completed = new EndOfDayRun(businessDay);
+        completed.setStatus(EndOfDayStatus.COMPLETED);
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.of(completed));
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert
+        assertSame(completed, run);
+        verify(accountRepository, never()).findMaxAccountId();
+        verify(balanceCheckpointRepository, never()).insertCheckpoints(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void run_FailedChunkMarksRunFailed() {
+        // Arrange
+        EndOfDayRun stored = new EndOfDayRun(businessDay);
+        stored.setRunId(1L);
+
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.of(stored));
+        when(endOfDayRunRepository.findById(1L)).thenReturn(Optional.of(stored));
+        when(accountRepository.findMaxAccountId()).thenReturn(10000L);
+        when(balanceCheckpointRepository.insertCheckpoints(eq(businessDay), eq(dayEnd), anyLong(), anyLong()))
+                .thenReturn(5000)
+                .thenThrow(new IllegalStateException("Connection lost"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> endOfDayService.run(businessDay));
+        assertEquals(EndOfDayStatus.FAILED, stored.getStatus());
+        assertEquals(5000L, stored.getLastAccountId());
+    }
+
+    @Test
+    void run_RunCreatedByAnotherInstance_IsLeftToIt() {
+        // Arrange - another instance inserts the run between the lookup and the insert of this one
+        EndOfDayRun other = new EndOfDayRun(businessDay);
+        other.setRunId(2L);
+        other.setStatus(EndOfDayStatus.RUNNING);
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.empty(), Optional.of(other));
+        when(endOfDayRunRepository.save(any(EndOfDayRun.class)))
+                .thenThrow(new DataIntegrityViolationException("Unique index or primary key violation"));
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert
+        assertSame(other, run);
+        verify(accountRepository, never()).findMaxAccountId();
+        verify(balanceCheckpointRepository, never()).insertCheckpoints(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void run_ResumedNextDay_ClosesAtSameMoment() {
+        // Arrange - a run for an older day, resumed long after its own midnight
+        EndOfDayRun interrupted = new EndOfDayRun(businessDay.minusDays(3));
+        interrupted.setRunId(1L);
+        interrupted.setLastAccountId(5000L);
+
+        when(endOfDayRunRepository.findByBusinessDay(businessDay.minusDays(3))).thenReturn(Optional.of(interrupted));
+        when(accountRepository.findMaxAccountId()).thenReturn(8000L);
+
+        // Act
+        endOfDayService.run(businessDay.minusDays(3));
+
+        // Assert - the balance at the midnight after that day, not the balance now
+        verify(balanceCheckpointRepository).insertCheckpoints(businessDay.minusDays(3), dayEnd.minusDays(3), 5000L, 8000L);
+    }
+
+    @Test
+    void run_LeasedByAnotherInstance_IsSkipped() {
+        // Arrange - another instance is processing the run and keeps renewing its lease
+        EndOfDayRun running = new EndOfDayRun(businessDay);
+        running.setRunId(1L);
+        running.setOwner("42@other-node");
+        running.setLeaseUntil(LocalDateTime.now().plusMinutes(4));
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.of(running));
+        when(endOfDayRunRepository.claim(eq(1L), anyString(), any(), any())).thenReturn(0);
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert
+        assertSame(running, run);
+        assertEquals("42@other-node", run.getOwner());
+        verify(accountRepository, never()).findMaxAccountId();
+        verify(balanceCheckpointRepository, never()).insertCheckpoints(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void run_LeaseTakenOver_StopsWithoutFailing() {
+        // Arrange - the lease expired after the first chunk and another instance took the run over
+        EndOfDayRun stored = new EndOfDayRun(businessDay);
+        stored.setRunId(1L);
+        when(endOfDayRunRepository.findByBusinessDay(businessDay)).thenReturn(Optional.of(stored));
+        when(endOfDayRunRepository.findById(1L)).thenReturn(Optional.of(stored));
+        when(accountRepository.findMaxAccountId()).thenReturn(12000L);
+        when(endOfDayRunRepository.renewLease(eq(1L), anyString(), any())).thenReturn(1, 0);
+
+        // Act
+        EndOfDayRun run = endOfDayService.run(businessDay);
+
+        // Assert - the second chunk is left to the new owner, and the run is not marked failed
+        assertEquals(EndOfDayStatus.RUNNING, run.getStatus());
+        assertEquals(5000L, run.getLastAccountId());
+        verify(balanceCheckpointRepository, times(1)).insertCheckpoints(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void runScheduled_MissedDays_AreCaughtUp() {
+        // Arrange - no instance was running at midnight for the last three days
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        EndOfDayRun lastCompleted = new EndOfDayRun(yesterday.minusDays(3));
+        lastCompleted.setStatus(EndOfDayStatus.COMPLETED);
+        when(endOfDayRunRepository.findFirstByStatusOrderByBusinessDayDesc(EndOfDayStatus.COMPLETED)).thenReturn(Optional.of(lastCompleted));
+        when(endOfDayRunRepository.findByBusinessDay(any())).thenReturn(Optional.empty());
+
+        // Act
+        endOfDayService.runScheduled();
+
+        // Assert
+        verify(endOfDayRunRepository, never()).findByBusinessDay(yesterday.minusDays(3));
+        verify(endOfDayRunRepository).findByBusinessDay(yesterday.minusDays(2));
+        verify(endOfDayRunRepository).findByBusinessDay(yesterday.minusDays(1));
+        verify(endOfDayRunRepository).findByBusinessDay(yesterday);
+    }
+
+    @Test
+    void runScheduled_LongOutage_CatchesUpOnlyWithinWindow() {
+        // Arrange
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        EndOfDayRun lastCompleted = new EndOfDayRun(yesterday.minusDays(30));
+        lastCompleted.setStatus(EndOfDayStatus.COMPLETED);
+        when(endOfDayRunRepository.findFirstByStatusOrderByBusinessDayDesc(EndOfDayStatus.COMPLETED)).thenReturn(Optional.of(lastCompleted));
+        when(endOfDayRunRepository.findByBusinessDay(any())).thenReturn(Optional.empty());
+
+        // Act
+        endOfDayService.runScheduled();
+
+        // Assert - the seven days up to yesterday
+        verify(endOfDayRunRepository, times(7)).findByBusinessDay(any());
+        verify(endOfDayRunRepository).findByBusinessDay(yesterday.minusDays(6));
+        verify(endOfDayRunRepository, never()).findByBusinessDay(yesterday.minusDays(7));
+    }
+}
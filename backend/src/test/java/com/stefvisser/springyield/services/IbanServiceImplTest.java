@@ -0,0 +1,110 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.IbanSequence;
+import com.stefvisser.springyield.repositories.IbanSequenceRepository;
+import org.iban4j.Iban;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IbanServiceImplTest {
+
+    @Mock
+    private IbanSequenceRepository ibanSequenceRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IbanServiceImpl ibanService;
+
+    private IbanSequence sequence;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ibanService = new IbanServiceImpl(ibanSequenceRepository, transactionManager, "SPYD", 2);
+
+        sequence = new IbanSequence("SPYD", 0L);
+        when(ibanSequenceRepository.findForUpdate("SPYD")).thenReturn(Optional.of(sequence));
+        when(ibanSequenceRepository.save(any(IbanSequence.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void format_KnownIban() {
+        // Act & Assert
+        assertEquals("NL91 ABNA 0417 1643 00",
+                IbanServiceImpl.format("ABNA", IbanServiceImpl.remainder("ABNA"), 417164300L));
+    }
+
+    @Test
+    void nextIban_ProducesValidIbans() {
+        for (int i = 0; i < 50; i++) {
+            // Act
+            String iban = ibanService.nextIban();
+
+            // Assert - iban4j validates the format and the check digits
+            assertDoesNotThrow(() -> Iban.valueOf(iban.replace(" ", "")));
+            assertTrue(iban.startsWith("NL"));
+            assertEquals("SPYD", iban.substring(5, 9));
+        }
+    }
+
+    @Test
+    void nextIban_ReservesNewBlockWhenExhausted() {
+        // Act
+        Set<String> ibans = new HashSet<>();
+        for (int i = 0; i < 5; i++)
+            ibans.add(ibanService.nextIban());
+
+        // Assert - block size 2, so five IBANs need three blocks
+        assertEquals(5, ibans.size());
+        assertEquals(6L, sequence.getNextValue());
+        verify(ibanSequenceRepository, times(3)).save(sequence);
+    }
+
+    @Test
+    void nextIbans_ReservesOneBlockForAllIbans() {
+        // Act
+        List<String> ibans = ibanService.nextIbans(1000);
+
+        // Assert
+        assertEquals(1000, new HashSet<>(ibans).size());
+        assertEquals(1000L, sequence.getNextValue());
+        verify(ibanSequenceRepository, times(1)).save(sequence);
+    }
+
+    @Test
+    void nextIban_CreatesSequenceForNewBankCode() {
+        // Arrange
+        when(ibanSequenceRepository.findForUpdate("SPYD")).thenReturn(Optional.empty());
+
+        // Act
+        ibanService.nextIban();
+
+        // Assert
+        verify(ibanSequenceRepository).save(argThat(created -> created.getBankCode().equals("SPYD") && created.getNextValue() == 2L));
+    }
+
+    @Test
+    void accountNumber_IsUniqueWithinTenDigits() {
+        // Act
+        Set<Long> accountNumbers = new HashSet<>();
+        for (long position = 0; position < 100_000; position++)
+            accountNumbers.add(IbanServiceImpl.accountNumber(position));
+
+        // Assert
+        assertEquals(100_000, accountNumbers.size());
+        assertTrue(accountNumbers.stream().allMatch(number -> number >= 0 && number < IbanServiceImpl.ACCOUNT_NUMBERS));
+    }
+}
@@ -0,0 +1,266 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.models.*;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.repositories.UserRepository;
+import com.stefvisser.springyield.utils.DataSeeder;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Posts transfers and ATM transactions from many threads onto a handful of hot accounts, then checks the ledger
+ * invariants every change to the posting path (locking, batching) has to keep.
+ * <p>
+ * Slow, so excluded from the normal build: run with {@code mvn test -Pstress}. The load can be changed with
+ * {@code -Dstress.threads}, {@code -Dstress.operations} and {@code -Dstress.accounts}.
+ * </p>
+ */
+@Tag("stress")
+@SpringBootTest(properties = {
+        // Only the posting path is under test, not the velocity rule or the slow operation log
+        "transfer-rules.max-transfers-per-day=0",
+        "slow-operations.enabled=false",
+        "logging.level.org.hibernate.SQL=warn",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=warn"
+})
+class LedgerInvariantStressTest {
+    private static final int THREADS = Integer.getInteger("stress.threads", 16);
+    private static final int OPERATIONS = Integer.getInteger("stress.operations", 4000);
+    private static final int HOT_ACCOUNTS = Integer.getInteger("stress.accounts", 6);
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000.00");
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private IbanService ibanService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSeeder dataSeeder;
+
+    private final List<User> owners = new ArrayList<>();
+    private final List<String> hotIbans = new ArrayList<>();
+    private User atmUser;
+
+    /// One operation that was posted, with the amount it moved from one hot account to another, or in or out of the bank
+    private record Posted(long transactionId, String fromIban, String toIban, BigDecimal amount, boolean external) {
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        // The ATM user is created by the background seeder
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (!dataSeeder.isSeeded() && System.nanoTime() < deadline)
+            Thread.sleep(50);
+        assertTrue(dataSeeder.isSeeded(), "Seeding did not complete");
+        atmUser = userService.findByEmail("atms@springyield.com");
+
+        // Two accounts per owner, so both internal and external transfers hit the same hot rows
+        String run = Long.toString(System.nanoTime(), 36);
+        for (int i = 0; i < (HOT_ACCOUNTS + 1) / 2; i++) {
+            User owner = new User("Stress", "Owner " + i, "-", "stress." + run + "." + i + "@springyield.com",
+                    100000000 + i, "0600000000", UserRole.APPROVED, new ArrayList<>());
+            for (int j = 0; j < 2 && hotIbans.size() < HOT_ACCOUNTS; j++) {
+                Account account = new Account(null, owner, ibanService.nextIban(), LocalDate.now(), AccountType.PAYMENT,
+                        new BigDecimal("1000000.00"), new BigDecimal("1000.00"), OPENING_BALANCE,
+                        new BigDecimal("-500.00"), AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>());
+                owner.getAccounts().add(account);
+                hotIbans.add(account.getIban());
+            }
+            owners.add(userRepository.save(owner));
+        }
+    }
+
+    @Test
+    void concurrentPostings_KeepLedgerInvariants() throws Exception {
+        // Arrange
+        long today = LocalDate.now().toEpochDay();
+        BigDecimal openingTotal = totalBalance();
+        Queue<Posted> posted = new ConcurrentLinkedQueue<>();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // Act
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(42 + t);
+            int operations = OPERATIONS / THREADS;
+            workers.add(executor.submit(() -> {
+                startGate.await();
+                for (int i = 0; i < operations; i++) {
+                    try {
+                        Posted result = random.nextInt(10) < 8 ? transfer(random) : atm(random);
+                        if (result != null)
+                            posted.add(result);
+                    } catch (ResponseStatusException e) {
+                        // Rejected by validation (including TransferRejectedException), nothing may have been posted
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                    }
+                }
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        startGate.countDown();
+        for (Future<?> worker : workers)
+            worker.get(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        System.out.printf("Posted %d of %d operations on %d accounts with %d threads in %.2f s: %.0f postings/s, %d failures%n",
+                posted.size(), OPERATIONS, hotIbans.size(), THREADS, seconds, posted.size() / seconds, failures.size());
+
+        // Assert - the accounts as stored, not as any thread last saw them
+        Map<String, Account> accounts = new HashMap<>();
+        for (String iban : hotIbans)
+            accounts.put(iban, accountRepository.findByIban(iban));
+
+        // Money is conserved: transfers between hot accounts net out, only ATM deposits and withdrawals change the total
+        BigDecimal cashFlow = BigDecimal.ZERO;
+        for (Posted posting : posted) {
+            if (!hotIbans.contains(posting.fromIban()))
+                cashFlow = cashFlow.add(posting.amount());
+            if (!hotIbans.contains(posting.toIban()))
+                cashFlow = cashFlow.subtract(posting.amount());
+        }
+        assertEquals(0, openingTotal.add(cashFlow).compareTo(totalBalance()),
+                "Total balance " + totalBalance() + " differs from opening " + openingTotal + " plus ATM cash flow " + cashFlow);
+
+        for (String iban : hotIbans) {
+            Account account = accounts.get(iban);
+
+            // Every account balance is its opening balance plus the postings on it, so no update was lost
+            BigDecimal expected = OPENING_BALANCE;
+            BigDecimal externalSpend = BigDecimal.ZERO;
+            for (Posted posting : posted) {
+                if (posting.fromIban().equals(iban)) {
+                    expected = expected.subtract(posting.amount());
+                    if (posting.external())
+                        externalSpend = externalSpend.add(posting.amount());
+                }
+                if (posting.toIban().equals(iban))
+                    expected = expected.add(posting.amount());
+            }
+            assertEquals(0, expected.compareTo(account.getBalance()), "Balance of " + iban);
+
+            // No balance went below its limit
+            assertTrue(account.getBalance().compareTo(account.getBalanceLimit()) >= 0,
+                    "Balance of " + iban + " is " + account.getBalance() + ", below the limit " + account.getBalanceLimit());
+
+            // The spend counter matches the external transfers that were posted today
+            assertEquals(0, externalSpend.compareTo(account.getSpendOn(today)), "Spend today of " + iban);
+        }
+
+        // Every posting is stored exactly once, and nothing was stored for a rejected or failed operation
+        List<Long> returnedIds = posted.stream().map(Posted::transactionId).toList();
+        assertEquals(returnedIds.size(), new HashSet<>(returnedIds).size(), "Transaction IDs were returned twice");
+        List<Long> storedIds = transactionRepository.findAll().stream()
+                .filter(transaction -> hotIbans.contains(transaction.getFromAccount()) || hotIbans.contains(transaction.getToAccount()))
+                .map(Transaction::getTransactionId)
+                .toList();
+        assertEquals(new HashSet<>(returnedIds), new HashSet<>(storedIds));
+        assertEquals(returnedIds.size(), storedIds.size());
+
+        assertTrue(failures.isEmpty(), "Unexpected failures, first: " + failures.peek());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private Posted transfer(SplittableRandom random) {
+        String fromIban = hotIbans.get(random.nextInt(hotIbans.size()));
+        String toIban = fromIban;
+        while (toIban.equals(fromIban))
+            toIban = hotIbans.get(random.nextInt(hotIbans.size()));
+        User owner = ownerOf(fromIban);
+        boolean external = ownerOf(toIban) != owner;
+
+        TransactionRequestDto request = new TransactionRequestDto();
+        request.setFromAccount(fromIban);
+        request.setToAccount(toIban);
+        request.setTransferAmount(amount(random));
+        request.setTransactionType(TransactionType.TRANSFER);
+        request.setDescription("Stress transfer");
+
+        Transaction transaction = inRequestScope(() -> transactionService.createTransaction(owner, request));
+        return new Posted(transaction.getTransactionId(), fromIban, toIban, request.getTransferAmount(), external);
+    }
+
+    private Posted atm(SplittableRandom random) {
+        String iban = hotIbans.get(random.nextInt(hotIbans.size()));
+        boolean deposit = random.nextBoolean();
+
+        TransactionRequestDto request = new TransactionRequestDto();
+        request.setFromAccount(iban);
+        request.setTransferAmount(amount(random));
+        request.setTransactionType(deposit ? TransactionType.DEPOSIT : TransactionType.WITHDRAW);
+
+        // The service rewrites the request, the ATM account takes the other side
+        Transaction transaction = inRequestScope(() -> transactionService.createAtmTransaction(atmUser, request));
+        return new Posted(transaction.getTransactionId(), transaction.getFromAccount(), transaction.getToAccount(),
+                transaction.getTransferAmount(), false);
+    }
+
+    /// Keeps an EntityManager open for the duration of one call, like open-in-view does for every HTTP request
+    private <T> T inRequestScope(Supplier<T> call) {
+        EntityManagerHolder holder = new EntityManagerHolder(entityManagerFactory.createEntityManager());
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, holder);
+        try {
+            return call.get();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            holder.getEntityManager().close();
+        }
+    }
+
+    private User ownerOf(String iban) {
+        return owners.get(hotIbans.indexOf(iban) / 2);
+    }
+
+    /// Between 1.00 and 400.00, large enough that the balance floor and insufficient balance rejections happen
+    private static BigDecimal amount(SplittableRandom random) {
+        return BigDecimal.valueOf(random.nextLong(100, 40_001), 2);
+    }
+
+    private BigDecimal totalBalance() {
+        return hotIbans.stream()
+                .map(iban -> accountRepository.findByIban(iban).getBalance())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+}
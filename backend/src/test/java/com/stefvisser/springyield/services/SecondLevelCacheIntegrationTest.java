@@ -0,0 +1,194 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.UserUpdateDto;
+import com.stefvisser.springyield.models.*;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.UserRepository;
+import com.stefvisser.springyield.utils.DataSeeder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that every write path through the services is visible on the next read once users and accounts are served
+ * from the second-level cache. Each repository call outside a transaction runs in its own session, so a second read
+ * can only come from the cache or the database, never from the first-level cache of the session that wrote.
+ */
+@SpringBootTest(properties = {
+        "logging.level.org.hibernate.SQL=warn",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=warn"
+})
+class SecondLevelCacheIntegrationTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSeeder dataSeeder;
+
+    private Statistics statistics;
+    private User employee;
+    private User customer;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        // The employee is created by the background seeder, which clears the cache when it completes
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (!dataSeeder.isSeeded() && System.nanoTime() < deadline)
+            Thread.sleep(50);
+        assertTrue(dataSeeder.isSeeded(), "Seeding did not complete");
+        employee = userService.findByEmail("employee@springyield.com");
+
+        String email = "cache." + Long.toString(System.nanoTime(), 36) + "@springyield.com";
+        customer = userRepository.save(new User("Cache", "Customer", "-", email, 100000000, "0600000000",
+                UserRole.UNAPPROVED, new ArrayList<>()));
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void findByEmail_SecondRead_ServedFromCache() {
+        // Arrange
+        userRepository.findByEmail(customer.getEmail());
+
+        // Act
+        User user = userRepository.findByEmail(customer.getEmail());
+
+        // Assert
+        assertEquals(customer.getUserId(), user.getUserId());
+        assertTrue(statistics.getQueryCacheHitCount() > 0, "findByEmail was not served from the query cache");
+        assertTrue(statistics.getDomainDataRegionStatistics("users").getHitCount() > 0, "User was not served from the users region");
+    }
+
+    @Test
+    void findById_SecondRead_ServedFromAccountsRegion() {
+        // Arrange - lookups by IBAN go through AccountCache, lookups by ID hit the accounts region directly
+        Long accountId = approve(customer).get(0).getAccountId();
+        accountRepository.findById(accountId);
+        statistics.clear();
+
+        // Act
+        Account account = accountRepository.findById(accountId).orElseThrow();
+
+        // Assert
+        assertEquals(accountId, account.getAccountId());
+        assertTrue(statistics.getDomainDataRegionStatistics("accounts").getHitCount() > 0, "Account was not served from the accounts region");
+        assertEquals(0, statistics.getQueryCacheHitCount());
+    }
+
+    @Test
+    void updateUser_VisibleOnNextRead() {
+        // Arrange
+        String oldEmail = customer.getEmail();
+        String newEmail = "renamed." + oldEmail;
+        userRepository.findByEmail(oldEmail);
+        userRepository.findByUserId(customer.getUserId());
+
+        UserUpdateDto update = new UserUpdateDto();
+        update.setFirstName("Renamed");
+        update.setEmail(newEmail);
+
+        // Act
+        userService.updateUser(employee, customer.getUserId(), update);
+
+        // Assert - neither the cached entity nor the cached query results may survive the update
+        assertEquals("Renamed", userRepository.findByUserId(customer.getUserId()).getFirstName());
+        assertNull(userRepository.findByEmail(oldEmail));
+        assertEquals(customer.getUserId(), userRepository.findByEmail(newEmail).getUserId());
+    }
+
+    @Test
+    void approveUser_AccountsOfUserVisibleOnNextRead() {
+        // Arrange - caches the user and its empty accounts collection
+        assertEquals(0, accountsOf(customer).size());
+
+        // Act
+        approve(customer);
+
+        // Assert - the accounts are added on the owning side, Account.user, which must evict User.accounts
+        assertEquals(UserRole.APPROVED, userRepository.findByUserId(customer.getUserId()).getRole());
+        assertEquals(2, accountsOf(customer).size());
+    }
+
+    @Test
+    void updateBalanceLimits_VisibleOnNextRead() {
+        // Arrange
+        Account account = approve(customer).get(0);
+        accountService.getAccountByIban(employee, account.getIban());
+
+        // Act
+        accountService.updateBalanceLimits(employee, account.getAccountId(),
+                new BigDecimal("250.00"), new BigDecimal("5000.00"), new BigDecimal("-100.00"));
+
+        // Assert
+        Account read = accountService.getAccountByIban(employee, account.getIban());
+        assertEquals(0, new BigDecimal("250.00").compareTo(read.getDailyLimit()));
+        assertEquals(0, new BigDecimal("5000.00").compareTo(read.getAbsoluteLimit()));
+        assertEquals(0, new BigDecimal("-100.00").compareTo(read.getBalanceLimit()));
+    }
+
+    @Test
+    void updateAccount_VisibleOnNextRead() {
+        // Arrange
+        String iban = approve(customer).get(0).getIban();
+        Account before = accountService.getAccountByIban(employee, iban);
+        Account account = accountService.getAccountByIbanForUpdate(employee, iban);
+        account.setBalance(new BigDecimal("123.45"));
+
+        // Act
+        accountService.updateAccount(account);
+
+        // Assert - both the balance and the version, so a later update is not rejected as a conflict
+        Account read = accountService.getAccountByIban(employee, iban);
+        assertEquals(0, new BigDecimal("123.45").compareTo(read.getBalance()));
+        assertEquals(before.getVersion() + 1, read.getVersion());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Approves the user and returns its new accounts
+    private List<Account> approve(User user) {
+        userService.approveUser(employee, user.getUserId(),
+                new BigDecimal("1000.00"), new BigDecimal("10000.00"), BigDecimal.ZERO);
+        List<Account> accounts = accountsOf(user);
+        assertFalse(accounts.isEmpty(), "Approved user has no accounts");
+        return accounts;
+    }
+
+    /// The accounts collection of the user, read in a session of its own
+    private List<Account> accountsOf(User user) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                List.copyOf(userRepository.findByUserId(user.getUserId()).getAccounts()));
+    }
+}
@@ -0,0 +1,170 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.models.*;
+import com.stefvisser.springyield.repositories.UserRepository;
+import com.stefvisser.springyield.utils.DataSeeder;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends external transfers from one account on many threads at once, so the rolling limits are checked by transfers
+ * that are validated while an earlier transfer from the same account is still being committed. Each transfer ends
+ * with a slow after-commit step, like a listener of the posted event, so the moment between releasing the account
+ * lock and finishing the transaction is long enough to be hit.
+ */
+@SpringBootTest(properties = {
+        // Only the weekly limit may reject, not the velocity rule
+        "transfer-rules.max-transfers-per-day=0",
+        "slow-operations.enabled=false",
+        "logging.level.org.hibernate.SQL=warn",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=warn"
+})
+class SpendLimitIntegrationTest {
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 10;
+    private static final BigDecimal AMOUNT = new BigDecimal("100.00");
+    private static final BigDecimal WEEKLY_LIMIT = new BigDecimal("1000.00");
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private SpendTrackingService spendTrackingService;
+
+    @Autowired
+    private IbanService ibanService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSeeder dataSeeder;
+
+    private User employee;
+    private String fromIban;
+    private String toIban;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        // Wait for the seeder, whose rebuild of the spend counters would otherwise wipe the counters of this test
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (!dataSeeder.isSeeded() && System.nanoTime() < deadline)
+            Thread.sleep(50);
+        assertTrue(dataSeeder.isSeeded(), "Seeding did not complete");
+
+        String run = Long.toString(System.nanoTime(), 36);
+        // Only employees may transfer to an account of another customer
+        employee = userRepository.save(new User("Spend", "Employee", "-", "spend." + run + ".employee@springyield.com",
+                100000000, "0600000000", UserRole.EMPLOYEE, new ArrayList<>()));
+        User sender = owner("spend." + run + ".sender@springyield.com", WEEKLY_LIMIT);
+        User receiver = owner("spend." + run + ".receiver@springyield.com", null);
+        fromIban = sender.getAccounts().getFirst().getIban();
+        toIban = receiver.getAccounts().getFirst().getIban();
+    }
+
+    @Test
+    void concurrentExternalTransfers_StayWithinWeeklyLimit() throws Exception {
+        // Arrange - eight times as many transfers as the weekly limit allows
+        Queue<BigDecimal> posted = new ConcurrentLinkedQueue<>();
+        Queue<TransferRejectReason> rejected = new ConcurrentLinkedQueue<>();
+        CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // Act
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(executor.submit(() -> {
+                startGate.await();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    try {
+                        posted.add(transfer().getTransferAmount());
+                    } catch (TransferRejectedException e) {
+                        rejected.add(e.getReasonCode());
+                    }
+                }
+                return null;
+            }));
+        }
+        startGate.countDown();
+        for (Future<?> worker : workers)
+            worker.get(2, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        // Assert - exactly the limit was spent, every other transfer was rejected by the weekly limit
+        BigDecimal spent = posted.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, WEEKLY_LIMIT.compareTo(spent), "Spent " + spent + " with a weekly limit of " + WEEKLY_LIMIT);
+        assertEquals(THREADS * TRANSFERS_PER_THREAD - posted.size(), rejected.size());
+        assertTrue(rejected.stream().allMatch(reason -> reason == TransferRejectReason.WEEKLY_LIMIT), "Rejected for " + rejected);
+        assertEquals(0, WEEKLY_LIMIT.compareTo(spendTrackingService.getSpend(fromIban, SpendWindow.WEEK)));
+        assertEquals(posted.size(), spendTrackingService.getTransferCount(fromIban, SpendWindow.WEEK));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private User owner(String email, BigDecimal weeklyLimit) {
+        User owner = new User("Spend", "Owner", "-", email, 100000000, "0600000000", UserRole.APPROVED, new ArrayList<>());
+        Account account = new Account(null, owner, ibanService.nextIban(), LocalDate.now(), AccountType.PAYMENT,
+                new BigDecimal("1000000.00"), new BigDecimal("1000000.00"), new BigDecimal("100000.00"),
+                BigDecimal.ZERO, AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>());
+        account.setWeeklyLimit(weeklyLimit);
+        owner.getAccounts().add(account);
+        return userRepository.save(owner);
+    }
+
+    private Transaction transfer() {
+        TransactionRequestDto request = new TransactionRequestDto();
+        request.setFromAccount(fromIban);
+        request.setToAccount(toIban);
+        request.setTransferAmount(AMOUNT);
+        request.setTransactionType(TransactionType.TRANSFER);
+        request.setDescription("Weekly limit");
+
+        // Keep an EntityManager open for the call, like open-in-view does for every HTTP request
+        EntityManagerHolder holder = new EntityManagerHolder(entityManagerFactory.createEntityManager());
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, holder);
+        try {
+            return new TransactionTemplate(transactionManager).execute(status -> {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    public void afterCommit() {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+                return transactionService.createTransaction(employee, request);
+            });
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            holder.getEntityManager().close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.*;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SpendTrackingServiceImplTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @InjectMocks
+    private SpendTrackingServiceImpl spendTrackingService;
+
+    private User testCustomer;
+    private User testOtherCustomer;
+    private Account testFromAccount;
+    private Account testSavingsAccount;
+    private Account testOtherAccount;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        testCustomer = new User("Customer", "Test", "password", "customer@example.com",
+                987654321, "987-654-3210", UserRole.APPROVED, new ArrayList<>());
+        testCustomer.setUserId(1L);
+
+        testOtherCustomer = new User("Other", "Customer", "password", "other@example.com",
+                123456789, "123-456-7890", UserRole.APPROVED, new ArrayList<>());
+        testOtherCustomer.setUserId(2L);
+
+        testFromAccount = createAccount(1L, testCustomer, "NL91 SPYD 0000 0000 01");
+        testSavingsAccount = createAccount(2L, testCustomer, "NL91 SPYD 0000 0000 02");
+        testOtherAccount = createAccount(3L, testOtherCustomer, "NL91 SPYD 0000 0000 03");
+    }
+
+    @Test
+    void getSpend_NoSpend() {
+        // Act & Assert
+        assertEquals(0, BigDecimal.ZERO.compareTo(spendTrackingService.getSpend("NL91SPYD0000000001", SpendWindow.DAY)));
+    }
+
+    @Test
+    void recordSpend_CountsInEveryWindowUntilItExpires() {
+        // Act
+        spendTrackingService.recordSpend("NL91SPYD0000000001", new BigDecimal("25.00"), LocalDateTime.now().minusDays(40));
+        spendTrackingService.recordSpend("NL91SPYD0000000001", new BigDecimal("50.00"), LocalDateTime.now().minusDays(3));
+        spendTrackingService.recordSpend("NL91SPYD0000000001", new BigDecimal("100.00"), LocalDateTime.now());
+
+        // Assert - IBANs are normalized, so the formatted IBAN finds the same counters
+        assertEquals(new BigDecimal("100.00"), spendTrackingService.getSpend("NL91 SPYD 0000 0000 01", SpendWindow.DAY));
+        assertEquals(new BigDecimal("150.00"), spendTrackingService.getSpend("NL91SPYD0000000001", SpendWindow.WEEK));
+        assertEquals(new BigDecimal("150.00"), spendTrackingService.getSpend("NL91SPYD0000000001", SpendWindow.MONTH));
+        assertEquals(1, spendTrackingService.getTransferCount("NL91SPYD0000000001", SpendWindow.DAY));
+        assertEquals(2, spendTrackingService.getTransferCount("NL91SPYD0000000001", SpendWindow.MONTH));
+    }
+
+    @Test
+    void recordSpend_InTransaction_CountsBeforeCommit() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            spendTrackingService.recordSpend("NL91SPYD0000000001", new BigDecimal("100.00"), LocalDateTime.now());
+
+            // Assert - the next transfer, validated while this one is still being committed, sees it
+            assertEquals(new BigDecimal("100.00"), spendTrackingService.getSpend("NL91SPYD0000000001", SpendWindow.WEEK));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            assertEquals(new BigDecimal("100.00"), spendTrackingService.getSpend("NL91SPYD0000000001", SpendWindow.WEEK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void recordSpend_RolledBack_TakenOutAgain() {
+        // Arrange - earlier spend in the same hour shares the bucket
+        spendTrackingService.recordSpend("NL91SPYD0000000001", new BigDecimal("40.00"), LocalDateTime.now());
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            spendTrackingService.recordSpend("NL91SPYD0000000001", new BigDecimal("100.00"), LocalDateTime.now());
+
+            // Act
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Assert
+        for (SpendWindow window : SpendWindow.values()) {
+            assertEquals(new BigDecimal("40.00"), spendTrackingService.getSpend("NL91SPYD0000000001", window));
+            assertEquals(1, spendTrackingService.getTransferCount("NL91SPYD0000000001", window));
+        }
+    }
+
+    @Test
+    void rebuild_OnlyCountsExternalTransfers() {
+        // Arrange
+        when(accountRepository.findAll()).thenReturn(List.of(testFromAccount, testSavingsAccount, testOtherAccount));
+        when(transactionRepository.findByTimestampAfter(any(LocalDateTime.class))).thenReturn(List.of(
+                createTransfer(testFromAccount, testOtherAccount, "200.00", LocalDateTime.now().minusDays(10)),
+                createTransfer(testFromAccount, testSavingsAccount, "300.00", LocalDateTime.now().minusHours(1)),
+                createTransfer(testFromAccount, testOtherAccount, "40.00", LocalDateTime.now().minusHours(2))
+        ));
+
+        // Act
+        spendTrackingService.rebuild();
+
+        // Assert
+        assertEquals(new BigDecimal("40.00"), spendTrackingService.getSpend(testFromAccount.getIban(), SpendWindow.DAY));
+        assertEquals(new BigDecimal("40.00"), spendTrackingService.getSpend(testFromAccount.getIban(), SpendWindow.WEEK));
+        assertEquals(new BigDecimal("240.00"), spendTrackingService.getSpend(testFromAccount.getIban(), SpendWindow.MONTH));
+        assertEquals(0, BigDecimal.ZERO.compareTo(spendTrackingService.getSpend(testSavingsAccount.getIban(), SpendWindow.MONTH)));
+    }
+
+    private Account createAccount(Long accountId, User owner, String iban) {
+        Account account = new Account(accountId, owner, iban, LocalDate.now(), AccountType.PAYMENT,
+                new BigDecimal("1000.00"), new BigDecimal("5000.00"), new BigDecimal("2500.00"),
+                new BigDecimal("-1000.00"), AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>());
+        owner.getAccounts().add(account);
+        return account;
+    }
+
+    private Transaction createTransfer(Account from, Account to, String amount, LocalDateTime timestamp) {
+        Transaction transaction = new Transaction();
+        transaction.setFromAccount(from.getIban());
+        transaction.setToAccount(to.getIban());
+        transaction.setTransferAmount(new BigDecimal(amount));
+        transaction.setTimestamp(timestamp);
+        transaction.setTransactionType(TransactionType.TRANSFER);
+        return transaction;
+    }
+}
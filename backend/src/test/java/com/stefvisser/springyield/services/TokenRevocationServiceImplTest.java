@@ -0,0 +1,70 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.RevokedToken;
+import com.stefvisser.springyield.repositories.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenRevocationServiceImplTest {
+
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    private TokenRevocationServiceImpl tokenRevocationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        tokenRevocationService = new TokenRevocationServiceImpl(revokedTokenRepository, 1000, 0.01);
+    }
+
+    @Test
+    void isRevoked_NeverRevokedUser_DoesNotQueryDatabase() {
+        // Act
+        boolean result = tokenRevocationService.isRevoked(1L, new Date());
+
+        // Assert
+        assertFalse(result);
+        verify(revokedTokenRepository, never()).existsByUserIdAndRevokedAtGreaterThanEqual(anyLong(), anyLong());
+    }
+
+    @Test
+    void revokeAllTokens_Success() {
+        // Arrange
+        Date issuedAt = new Date();
+        when(revokedTokenRepository.existsByUserIdAndRevokedAtGreaterThanEqual(eq(1L), anyLong())).thenReturn(true);
+
+        // Act
+        tokenRevocationService.revokeAllTokens(1L);
+
+        // Assert
+        assertTrue(tokenRevocationService.isRevoked(1L, issuedAt));
+        verify(revokedTokenRepository, times(1)).save(any(RevokedToken.class));
+        verify(revokedTokenRepository, times(1)).existsByUserIdAndRevokedAtGreaterThanEqual(1L, issuedAt.getTime() / 1000);
+    }
+
+    @Test
+    void rebuild_LoadsRevocationsFromDatabase() {
+        // Arrange
+        long now = System.currentTimeMillis() / 1000;
+        when(revokedTokenRepository.findByExpiresAtGreaterThan(anyLong()))
+                .thenReturn(List.of(new RevokedToken(1L, 7L, now, now + 900)));
+        when(revokedTokenRepository.existsByUserIdAndRevokedAtGreaterThanEqual(eq(7L), anyLong())).thenReturn(true);
+
+        // Act
+        tokenRevocationService.rebuild();
+
+        // Assert
+        assertTrue(tokenRevocationService.isRevoked(7L, new Date()));
+        verify(revokedTokenRepository, times(1)).deleteByExpiresAtLessThanEqual(anyLong());
+    }
+}
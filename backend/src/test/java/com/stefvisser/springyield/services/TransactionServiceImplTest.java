@@ -1,14 +1,20 @@
 package com.stefvisser.springyield.services;
 
+import com.stefvisser.springyield.config.TransferRuleProperties;
 import com.stefvisser.springyield.dto.PaginatedDataDto;
 import com.stefvisser.springyield.dto.TransactionRequestDto;
 import com.stefvisser.springyield.models.*;
 import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.utils.SearchCoalescer;
+import com.stefvisser.springyield.utils.TransactionPostedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -19,6 +25,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -35,7 +44,13 @@ class TransactionServiceImplTest {
     @Mock
     private UserService userService;
 
-    @InjectMocks
+    @Mock
+    private SpendTrackingService spendTrackingService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private SimpleMeterRegistry meterRegistry;
     private TransactionServiceImpl transactionService;
 
     private User testEmployee;
@@ -52,6 +67,8 @@ class TransactionServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        transactionService = createTransactionService(new TransferRuleProperties());
 
         // Setup test employee
         testEmployee = new User(
@@ -207,6 +224,33 @@ class TransactionServiceImplTest {
                 eq(limit), eq(offset));
     }
 
+    @Test
+    void searchTransactions_CoalescesIdenticalConcurrentSearches() throws Exception {
+        // Arrange - the first search blocks in the repository until the second one has joined it
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transactionRepository.searchTransactions(any(), any(), any(), any(), any(), any(), any(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return paginatedData;
+                });
+
+        // Act
+        CompletableFuture<PaginatedDataDto<TransactionRequestDto>> first = CompletableFuture.supplyAsync(() ->
+                transactionService.searchTransactions(testEmployee, "Test", null, 10, 0, null, null, null, null, null));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<PaginatedDataDto<TransactionRequestDto>> second = CompletableFuture.supplyAsync(() ->
+                transactionService.searchTransactions(testEmployee, " test ", null, 10, 0, null, null, null, null, null));
+        while (meterRegistry.find("springyield.search.coalescing").tag("result", "shared").counter() == null)
+            Thread.sleep(5);
+        release.countDown();
+
+        // Assert - the query only differs in case and surrounding whitespace, so both share one repository call
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        verify(transactionRepository, times(1)).searchTransactions(any(), any(), any(), any(), any(), any(), any(), anyInt(), anyInt());
+    }
+
     @Test
     void searchTransactions_DefaultParameters() {
         // Arrange
@@ -343,6 +387,37 @@ class TransactionServiceImplTest {
         assertEquals("User not authenticated", exception.getReason());
     }
 
+    @Test
+    void getRecentTransactionsByIban_LimitsQuery() {
+        // Arrange
+        String iban = testFromAccount.getIban();
+        when(accountService.getAccountByIban(testCustomer, iban)).thenReturn(testFromAccount);
+        when(transactionRepository.findByFromAccountOrToAccountOrderByTimestampDesc(iban, iban, Limit.of(5))).thenReturn(transactionList);
+
+        // Act
+        List<Transaction> result = transactionService.getRecentTransactionsByIban(testCustomer, iban, 5);
+
+        // Assert
+        assertEquals(1, result.size());
+        verify(transactionRepository, never()).findByFromAccountOrToAccount(anyString(), anyString());
+    }
+
+    @Test
+    void getRecentTransactionsByIban_Forbidden() {
+        // Arrange
+        String iban = testFromAccount.getIban();
+        User otherCustomer = new User("Other", "Customer", "password", "other@example.com", 123123123, "0600000000",
+                UserRole.APPROVED, new ArrayList<>());
+        otherCustomer.setUserId(99L);
+        when(accountService.getAccountByIban(otherCustomer, iban)).thenReturn(testFromAccount);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionService.getRecentTransactionsByIban(otherCustomer, iban, 5));
+
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
+    }
+
     @Test
     void getTransactionsByIban_AccountNotFound() {
         // Arrange
@@ -422,8 +497,8 @@ class TransactionServiceImplTest {
     void createTransaction_Success() {
         // Arrange
         when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
-        when(accountService.getAccountByIban(testCustomer, testTransactionDto.getFromAccount())).thenReturn(testFromAccount);
-        when(accountService.getAccountByIban(testCustomer, testTransactionDto.getToAccount())).thenReturn(testToAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getToAccount())).thenReturn(testToAccount);
         when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
 
         // Act
@@ -437,6 +512,24 @@ class TransactionServiceImplTest {
         verify(transactionRepository, times(1)).save(any(Transaction.class));
     }
 
+    @Test
+    void createTransaction_PublishesPostedEvent() {
+        // Arrange
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getToAccount())).thenReturn(testToAccount);
+        when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
+        ArgumentCaptor<TransactionPostedEvent> eventCaptor = ArgumentCaptor.forClass(TransactionPostedEvent.class);
+
+        // Act
+        Transaction result = transactionService.createTransaction(testCustomer, testTransactionDto);
+
+        // Assert
+        verify(eventPublisher, times(1)).publishEvent(eventCaptor.capture());
+        assertEquals(result.getFromAccount(), eventCaptor.getValue().getTransaction().getFromAccount());
+        assertEquals(result.getToAccount(), eventCaptor.getValue().getTransaction().getToAccount());
+    }
+
     @Test
     void createTransaction_Unauthorized() {
         // Act & Assert
@@ -489,8 +582,8 @@ class TransactionServiceImplTest {
         largeAmountDto.setTransferAmount(new BigDecimal("5000.00")); // More than balance
 
         when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
-        when(accountService.getAccountByIban(testCustomer, largeAmountDto.getFromAccount())).thenReturn(testFromAccount);
-        when(accountService.getAccountByIban(testCustomer, largeAmountDto.getToAccount())).thenReturn(testToAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, largeAmountDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, largeAmountDto.getToAccount())).thenReturn(testToAccount);
 
         // Act & Assert
         ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -498,6 +591,182 @@ class TransactionServiceImplTest {
 
         assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
         assertEquals("Insufficient balance for transfer, cannot go below balance limit: -1000.00", exception.getReason());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void createTransaction_External_SpendFromEarlierDayIsRolledOver() {
+        // Arrange
+        Account externalAccount = createExternalAccount();
+        testFromAccount.setSpendToday(new BigDecimal("900.00"));
+        testFromAccount.setSpendDay(LocalDate.now().minusDays(1).toEpochDay()); // Spent yesterday
+
+        TransactionRequestDto externalDto = new TransactionRequestDto();
+        externalDto.setFromAccount(testFromAccount.getIban());
+        externalDto.setToAccount(externalAccount.getIban());
+        externalDto.setTransferAmount(new BigDecimal("600.00"));
+
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getToAccount())).thenReturn(externalAccount);
+        when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
+
+        // Act
+        transactionService.createTransaction(testCustomer, externalDto);
+
+        // Assert
+        assertEquals(0, new BigDecimal("600.00").compareTo(testFromAccount.getSpendToday()));
+        assertEquals(LocalDate.now().toEpochDay(), testFromAccount.getSpendDay());
+        verify(accountService, times(1)).updateAccount(testFromAccount);
+        verify(spendTrackingService, times(1)).recordSpend(eq(testFromAccount.getIban()), eq(new BigDecimal("600.00")), any(LocalDateTime.class));
+    }
+
+    @Test
+    void createTransaction_External_ExceedsDailyLimit() {
+        // Arrange
+        Account externalAccount = createExternalAccount();
+        testFromAccount.addSpend(LocalDate.now().toEpochDay(), new BigDecimal("900.00")); // Spent today
+
+        TransactionRequestDto externalDto = new TransactionRequestDto();
+        externalDto.setFromAccount(testFromAccount.getIban());
+        externalDto.setToAccount(externalAccount.getIban());
+        externalDto.setTransferAmount(new BigDecimal("600.00"));
+
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getToAccount())).thenReturn(externalAccount);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionService.createTransaction(testCustomer, externalDto));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        assertEquals("Transaction exceeds daily exchange limit for external transfers. Current spend: 900.00, Daily limit: 1000.00", exception.getReason());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void createTransaction_External_ExceedsWeeklyLimit() {
+        // Arrange
+        Account externalAccount = createExternalAccount();
+        testFromAccount.setWeeklyLimit(new BigDecimal("1500.00"));
+
+        TransactionRequestDto externalDto = new TransactionRequestDto();
+        externalDto.setFromAccount(testFromAccount.getIban());
+        externalDto.setToAccount(externalAccount.getIban());
+        externalDto.setTransferAmount(new BigDecimal("600.00"));
+
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getToAccount())).thenReturn(externalAccount);
+        when(spendTrackingService.getSpend(testFromAccount.getIban(), SpendWindow.WEEK)).thenReturn(new BigDecimal("1000.00"));
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionService.createTransaction(testCustomer, externalDto));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        assertEquals("Transaction exceeds weekly limit for external transfers. Current spend: 1000.00, Limit: 1500.00", exception.getReason());
+        verify(spendTrackingService, never()).getSpend(anyString(), eq(SpendWindow.MONTH));
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void createTransaction_External_ExceedsVelocity() {
+        // Arrange
+        Account externalAccount = createExternalAccount();
+
+        TransactionRequestDto externalDto = new TransactionRequestDto();
+        externalDto.setFromAccount(testFromAccount.getIban());
+        externalDto.setToAccount(externalAccount.getIban());
+        externalDto.setTransferAmount(new BigDecimal("10.00"));
+
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, externalDto.getToAccount())).thenReturn(externalAccount);
+        when(spendTrackingService.getTransferCount(testFromAccount.getIban(), SpendWindow.DAY)).thenReturn(100L);
+
+        // Act & Assert
+        TransferRejectedException exception = assertThrows(TransferRejectedException.class,
+                () -> transactionService.createTransaction(testCustomer, externalDto));
+
+        assertEquals(TransferRejectReason.VELOCITY, exception.getReasonCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatusCode());
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void createTransaction_CountsRejectionsByReason() {
+        // Arrange
+        testTransactionDto.setTransferAmount(new BigDecimal("-1.00"));
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getToAccount())).thenReturn(testToAccount);
+
+        // Act
+        assertThrows(TransferRejectedException.class, () -> transactionService.createTransaction(testCustomer, testTransactionDto));
+
+        // Assert
+        assertEquals(1.0, meterRegistry.get("springyield.transfer.rejections")
+                .tag("reason", TransferRejectReason.NON_POSITIVE_AMOUNT.name()).counter().count());
+        assertEquals(0.0, meterRegistry.get("springyield.transfer.rejections")
+                .tag("reason", TransferRejectReason.VELOCITY.name()).counter().count());
+    }
+
+    @Test
+    void createTransaction_BlockedCounterparty() {
+        // Arrange
+        TransferRuleProperties properties = new TransferRuleProperties();
+        properties.getBlockedIbans().add("nl91 spyd 0000 0000 02");
+        transactionService = createTransactionService(properties);
+
+        when(userService.getUserById(testCustomer, testCustomer.getUserId())).thenReturn(testCustomer);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, testTransactionDto.getToAccount())).thenReturn(testToAccount);
+
+        // Act & Assert
+        TransferRejectedException exception = assertThrows(TransferRejectedException.class,
+                () -> transactionService.createTransaction(testCustomer, testTransactionDto));
+
+        assertEquals(TransferRejectReason.BLOCKED_COUNTERPARTY, exception.getReasonCode());
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
+        assertEquals("Transfers to this account are not allowed", exception.getReason());
+    }
+
+    @Test
+    void createTransaction_UnknownRuleConfigured() {
+        // Arrange
+        TransferRuleProperties properties = new TransferRuleProperties();
+        properties.getPipelines().put(AccountType.PAYMENT, List.of("positive-amount", "does-not-exist"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> createTransactionService(properties));
+    }
+
+    private TransactionServiceImpl createTransactionService(TransferRuleProperties properties) {
+        TransferRuleEngine transferRuleEngine = new TransferRuleEngine(properties, spendTrackingService, meterRegistry);
+        return new TransactionServiceImpl(transactionRepository, accountService, userService, spendTrackingService, transferRuleEngine,
+                new SearchCoalescer(meterRegistry), eventPublisher);
+    }
+
+    // Payment account of another user, so transfers to it count towards the daily limit
+    private Account createExternalAccount() {
+        Account externalAccount = new Account(
+                4L,
+                testEmployee,
+                "NL91SPYD0000000004",
+                LocalDate.now(),
+                AccountType.PAYMENT,
+                new BigDecimal("1000.00"),
+                new BigDecimal("5000.00"),
+                new BigDecimal("100.00"),
+                new BigDecimal("-1000.00"),
+                AccountStatus.ACTIVE,
+                BigDecimal.ZERO,
+                new ArrayList<>()
+        );
+        testEmployee.getAccounts().add(externalAccount);
+        return externalAccount;
     }
 
     @Test
@@ -508,7 +777,7 @@ class TransactionServiceImplTest {
         depositDto.setTransactionType(TransactionType.DEPOSIT);
         depositDto.setTransferAmount(new BigDecimal("100.00"));
 
-        when(accountService.getAccountByIban(testCustomer, depositDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, depositDto.getFromAccount())).thenReturn(testFromAccount);
         when(userService.findByEmail("atms@springyield.com")).thenReturn(testAtmUser);
         when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
 
@@ -519,6 +788,7 @@ class TransactionServiceImplTest {
         assertNotNull(result);
         verify(accountService, times(1)).updateAccount(testFromAccount);
         verify(transactionRepository, times(1)).save(any(Transaction.class));
+        verify(eventPublisher, times(1)).publishEvent(any(TransactionPostedEvent.class));
     }
 
     @Test
@@ -529,7 +799,7 @@ class TransactionServiceImplTest {
         withdrawDto.setTransactionType(TransactionType.WITHDRAW);
         withdrawDto.setTransferAmount(new BigDecimal("100.00"));
 
-        when(accountService.getAccountByIban(testCustomer, withdrawDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, withdrawDto.getFromAccount())).thenReturn(testFromAccount);
         when(userService.findByEmail("atms@springyield.com")).thenReturn(testAtmUser);
         when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
 
@@ -565,7 +835,7 @@ class TransactionServiceImplTest {
                 new ArrayList<>()
         );
 
-        when(accountService.getAccountByIban(testCustomer, withdrawDto.getFromAccount())).thenReturn(lowBalanceAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, withdrawDto.getFromAccount())).thenReturn(lowBalanceAccount);
         when(userService.findByEmail("atms@springyield.com")).thenReturn(testAtmUser);
 
         // Act & Assert
@@ -584,7 +854,7 @@ class TransactionServiceImplTest {
         invalidTypeDto.setTransactionType(TransactionType.TRANSFER);
         invalidTypeDto.setTransferAmount(new BigDecimal("100.00"));
 
-        when(accountService.getAccountByIban(testCustomer, invalidTypeDto.getFromAccount())).thenReturn(testFromAccount);
+        when(accountService.getAccountByIbanForUpdate(testCustomer, invalidTypeDto.getFromAccount())).thenReturn(testFromAccount);
         when(userService.findByEmail("atms@springyield.com")).thenReturn(testAtmUser);
 
         // Act & Assert
@@ -0,0 +1,237 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.Transaction;
+import com.stefvisser.springyield.models.TransactionType;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.utils.TransactionPostedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TransactionStreamServiceImplTest {
+    private static final String IBAN = "NL91SPYD0000000001";
+
+    @Mock
+    private AccountService accountService;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransactionStreamServiceImpl transactionStreamService;
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        transactionStreamService = createService(10);
+
+        customer = new User("Customer", "Test", "password", "customer@example.com", 987654321, "987-654-3210",
+                UserRole.APPROVED, new ArrayList<>());
+        customer.setUserId(2L);
+
+        Account account = new Account();
+        account.setIban(IBAN);
+        when(accountService.getAccountByIban(customer, IBAN)).thenReturn(account);
+        when(transactionRepository.findByIbanAfter(anyString(), anyLong(), any(Limit.class))).thenReturn(List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionStreamService.shutdown();
+    }
+
+    @Test
+    void subscribe_Success() {
+        // Act
+        SseEmitter emitter = transactionStreamService.subscribe(customer, IBAN, null);
+
+        // Assert
+        assertNotNull(emitter);
+        assertEquals(1, transactionStreamService.getSubscriberCount());
+        assertEquals(1.0, meterRegistry.get("springyield.stream.subscribers").gauge().value());
+        verify(transactionRepository, after(100).never()).findByIbanAfter(anyString(), anyLong(), any(Limit.class));
+    }
+
+    @Test
+    void subscribe_WithLastEventId_ReplaysMissedTransactions() {
+        // Act
+        transactionStreamService.subscribe(customer, IBAN, "41");
+
+        // Assert
+        verify(transactionRepository, timeout(1000)).findByIbanAfter(IBAN, 41L, Limit.of(501));
+    }
+
+    @Test
+    void subscribe_TooManyMissedTransactions_SendsResetInsteadOfReplay() throws IOException {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        transactionStreamService.shutdown();
+        transactionStreamService = createService(10, emitter);
+        List<Transaction> missed = new ArrayList<>();
+        for (long id = 42; id <= 542; id++)
+            missed.add(transaction(id));
+        when(transactionRepository.findByIbanAfter(IBAN, 41L, Limit.of(501))).thenReturn(missed);
+
+        // Act
+        transactionStreamService.subscribe(customer, IBAN, "41");
+
+        // Assert - one reset that clears the event ID, and none of the missed transactions
+        List<String> events = sentEvents(emitter, 2);
+        assertTrue(events.get(1).contains("event:reset"), events.get(1));
+        assertTrue(events.get(1).contains("id:\n"), events.get(1));
+        verify(emitter, after(100).times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void subscribe_LiveEventDuringReplay_SentOnce() throws IOException {
+        // Arrange - the transaction is published while the replay that contains it is running
+        SseEmitter emitter = mock(SseEmitter.class);
+        transactionStreamService.shutdown();
+        transactionStreamService = createService(10, emitter);
+        Transaction transaction = transaction(42);
+        when(transactionRepository.findByIbanAfter(IBAN, 41L, Limit.of(501))).thenAnswer(invocation -> {
+            transactionStreamService.onTransactionPosted(new TransactionPostedEvent(this, TransactionRequestDto.wrap(transaction)));
+            return List.of(transaction);
+        });
+
+        // Act
+        transactionStreamService.subscribe(customer, IBAN, "41");
+
+        // Assert - heartbeat and the replayed transaction, the live copy is skipped
+        List<String> events = sentEvents(emitter, 2);
+        assertTrue(events.get(1).contains("id:42"), events.get(1));
+        verify(emitter, after(100).times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void onTransactionPosted_AfterReplay_SendsLiveEvent() throws IOException {
+        // Arrange
+        SseEmitter emitter = mock(SseEmitter.class);
+        transactionStreamService.shutdown();
+        transactionStreamService = createService(10, emitter);
+        transactionStreamService.subscribe(customer, IBAN, "41");
+        verify(transactionRepository, timeout(1000)).findByIbanAfter(IBAN, 41L, Limit.of(501));
+
+        // Act
+        transactionStreamService.onTransactionPosted(new TransactionPostedEvent(this, TransactionRequestDto.wrap(transaction(43))));
+
+        // Assert
+        List<String> events = sentEvents(emitter, 2);
+        assertTrue(events.get(1).contains("id:43"), events.get(1));
+    }
+
+    @Test
+    void subscribe_Unauthorized() {
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionStreamService.subscribe(null, IBAN, null));
+
+        assertEquals(HttpStatus.UNAUTHORIZED, exception.getStatusCode());
+        assertEquals(0, transactionStreamService.getSubscriberCount());
+    }
+
+    @Test
+    void subscribe_Forbidden() {
+        // Arrange
+        String otherIban = "NL91SPYD0000000009";
+        when(accountService.getAccountByIban(customer, otherIban))
+                .thenThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permission to view this account"));
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionStreamService.subscribe(customer, otherIban, null));
+
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
+        assertEquals(0, transactionStreamService.getSubscriberCount());
+    }
+
+    @Test
+    void subscribe_InvalidLastEventId() {
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionStreamService.subscribe(customer, IBAN, "not-a-number"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verify(accountService, never()).getAccountByIban(any(), anyString());
+    }
+
+    @Test
+    void subscribe_TooManyStreams() {
+        // Arrange
+        transactionStreamService.shutdown();
+        transactionStreamService = createService(1);
+        transactionStreamService.subscribe(customer, IBAN, null);
+
+        // Act & Assert
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> transactionStreamService.subscribe(customer, IBAN, null));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatusCode());
+        assertEquals(1, transactionStreamService.getSubscriberCount());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private TransactionStreamServiceImpl createService(int maxSubscribers) {
+        return new TransactionStreamServiceImpl(accountService, transactionRepository, meterRegistry,
+                Duration.ofMinutes(1), maxSubscribers, 100, 500);
+    }
+
+    /// A service whose streams all send through the given emitter
+    private TransactionStreamServiceImpl createService(int maxSubscribers, SseEmitter emitter) {
+        return new TransactionStreamServiceImpl(accountService, transactionRepository, meterRegistry,
+                Duration.ofMinutes(1), maxSubscribers, 100, 500) {
+            SseEmitter createEmitter() {
+                return emitter;
+            }
+        };
+    }
+
+    /// Waits for the given number of events and returns them as they are written to the stream
+    private static List<String> sentEvents(SseEmitter emitter, int count) throws IOException {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> captor = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, timeout(1000).atLeast(count)).send(captor.capture());
+        return captor.getAllValues().stream()
+                .map(event -> event.build().stream()
+                        .map(part -> String.valueOf(part.getData()))
+                        .collect(Collectors.joining()))
+                .toList();
+    }
+
+    private static Transaction transaction(long id) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(id);
+        transaction.setFromAccount(IBAN);
+        transaction.setToAccount("NL91SPYD0000000002");
+        transaction.setTransferAmount(BigDecimal.TEN);
+        transaction.setTransactionType(TransactionType.TRANSFER);
+        return transaction;
+    }
+}
@@ -0,0 +1,55 @@
+package com.stefvisser.springyield.services;
+
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.User;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferCheckTest {
+
+    @Test
+    void of_ComputesSharedValues() {
+        // Arrange
+        Account from = account(1L, "NL91 SPYD 0000 0000 01", "500.00");
+        Account to = account(2L, "nl91 spyd 0000 0000 02", "0.00");
+
+        // Act
+        TransferCheck check = TransferCheck.of(from, to, new BigDecimal("100.00"), 0);
+
+        // Assert
+        assertTrue(check.external());
+        assertEquals(new BigDecimal("400.00"), check.balanceAfter());
+        assertEquals("NL91SPYD0000000002", check.toIban());
+    }
+
+    @Test
+    void of_SameOwner_NotExternal() {
+        // Arrange
+        Account from = account(1L, "NL91 SPYD 0000 0000 01", "500.00");
+        Account to = account(1L, "NL91 SPYD 0000 0000 03", "0.00");
+
+        // Act
+        TransferCheck check = TransferCheck.of(from, to, new BigDecimal("20.00"), 0);
+
+        // Assert
+        assertFalse(check.external());
+        assertEquals(new BigDecimal("480.00"), check.balanceAfter());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static Account account(long userId, String iban, String balance) {
+        User user = new User();
+        user.setUserId(userId);
+        Account account = new Account();
+        account.setUser(user);
+        account.setIban(iban);
+        account.setBalance(new BigDecimal(balance));
+        return account;
+    }
+}
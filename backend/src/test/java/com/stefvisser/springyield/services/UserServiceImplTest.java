@@ -10,11 +10,14 @@ import com.stefvisser.springyield.models.User;
 import com.stefvisser.springyield.models.UserRole;
 import com.stefvisser.springyield.repositories.AccountRepository;
 import com.stefvisser.springyield.repositories.UserRepository;
+import com.stefvisser.springyield.utils.SearchCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.server.ResponseStatusException;
@@ -39,6 +42,12 @@ class UserServiceImplTest {
     @Mock
     private AccountRepository accountRepository;
 
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    @Spy
+    private SearchCoalescer searchCoalescer = new SearchCoalescer(new SimpleMeterRegistry());
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -265,6 +274,7 @@ class UserServiceImplTest {
         // Assert
         assertNotNull(result);
         verify(userRepository, times(1)).save(testCustomer);
+        verify(tokenRevocationService, never()).revokeAllTokens(any());
     }
 
     @Test
@@ -294,6 +304,7 @@ class UserServiceImplTest {
         // Assert
         assertNotNull(result);
         verify(userRepository, times(1)).save(testCustomer);
+        verify(tokenRevocationService, times(1)).revokeAllTokens(testCustomer.getUserId());
     }
 
     @Test
@@ -322,6 +333,7 @@ class UserServiceImplTest {
         // Assert
         verify(userRepository, times(1)).delete(testCustomer);
         verify(accountService, times(1)).saveAll(anyList());
+        verify(tokenRevocationService, times(1)).revokeAllTokens(testCustomer.getUserId());
     }
 
     @Test
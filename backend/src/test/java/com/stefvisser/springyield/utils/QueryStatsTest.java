@@ -0,0 +1,107 @@
+package com.stefvisser.springyield.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryStatsTest {
+    private final QueryStats.Inspector inspector = new QueryStats.Inspector();
+    private final QueryStats.TimingListener timingListener = new QueryStats.TimingListener();
+
+    @AfterEach
+    void tearDown() {
+        QueryStats.stop();
+    }
+
+    @Test
+    void inspect_GroupsStatementsByShapeInOrderOfFirstUse() {
+        // Arrange
+        QueryStats stats = QueryStats.start();
+
+        // Act
+        inspector.inspect("select 2");
+        inspector.inspect("select 1");
+        inspector.inspect("select 2");
+
+        // Assert
+        assertEquals(3, stats.getStatements());
+        assertEquals(List.of("select 2", "select 1"), List.copyOf(stats.getShapes().keySet()));
+        assertEquals(2, stats.getShapes().get("select 2"));
+    }
+
+    @Test
+    void inspect_ReturnsStatementUnchanged() {
+        // Arrange
+        QueryStats.start();
+
+        // Act & Assert - the inspector may only observe, Hibernate runs whatever it returns
+        assertEquals("select 1", inspector.inspect("select 1"));
+    }
+
+    @Test
+    void inspect_ManyShapes_StillCountsEveryStatement() {
+        // Arrange
+        QueryStats stats = QueryStats.start();
+
+        // Act - more distinct shapes than are kept, then a shape that is already listed
+        for (int i = 0; i < 60; i++)
+            inspector.inspect("select " + i);
+        inspector.inspect("select 0");
+
+        // Assert
+        assertEquals(61, stats.getStatements());
+        assertEquals(50, stats.getShapes().size());
+        assertEquals(2, stats.getShapes().get("select 0"));
+        assertFalse(stats.getShapes().containsKey("select 55"));
+    }
+
+    @Test
+    void inspect_LongStatement_ShapeTruncated() {
+        // Arrange
+        QueryStats stats = QueryStats.start();
+
+        // Act
+        inspector.inspect("select " + "a".repeat(1000));
+
+        // Assert
+        String shape = stats.getShapes().keySet().iterator().next();
+        assertEquals(303, shape.length());
+        assertTrue(shape.endsWith("..."));
+    }
+
+    @Test
+    void inspect_OutsideRequest_NotCounted() {
+        // Arrange
+        QueryStats stats = QueryStats.start();
+        QueryStats.stop();
+
+        // Act
+        inspector.inspect("select 1");
+
+        // Assert
+        assertNull(QueryStats.current());
+        assertEquals(0, stats.getStatements());
+    }
+
+    @Test
+    void timingListener_AddsExecutionTime() throws InterruptedException {
+        // Arrange
+        QueryStats stats = QueryStats.start();
+
+        // Act
+        timingListener.jdbcExecuteStatementStart();
+        Thread.sleep(5);
+        timingListener.jdbcExecuteStatementEnd();
+        long afterStatement = stats.getJdbcNanos();
+        timingListener.jdbcExecuteBatchStart();
+        Thread.sleep(5);
+        timingListener.jdbcExecuteBatchEnd();
+
+        // Assert
+        assertTrue(afterStatement >= 5_000_000, "Statement time: " + afterStatement);
+        assertTrue(stats.getJdbcNanos() >= afterStatement + 5_000_000, "Statement and batch time: " + stats.getJdbcNanos());
+    }
+}
@@ -0,0 +1,172 @@
+package com.stefvisser.springyield.utils;
+
+import com.stefvisser.springyield.dto.PaginatedDataDto;
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.models.TransactionType;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.services.TransactionService;
+import com.stefvisser.springyield.services.TransferRejectReason;
+import com.stefvisser.springyield.services.TransferRejectedException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SlowOperationAspectTest {
+
+    private SlowOperationLog slowOperationLog;
+
+    @BeforeEach
+    void setUp() {
+        slowOperationLog = new SlowOperationLog(16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryStats.stop();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void traceSearch_Slow_RecordsRowsAndStatements() throws Throwable {
+        // Arrange - every operation counts as slow
+        SlowOperationAspect aspect = new SlowOperationAspect(slowOperationLog, true, Duration.ZERO, "");
+        authenticate(7L);
+        QueryStats.start();
+        new QueryStats.Inspector().inspect("select 1");
+        ProceedingJoinPoint joinPoint = joinPoint(AccountRepository.class, "search",
+                new String[]{"query", "limit"}, new Object[]{"jansen", 10});
+        when(joinPoint.proceed()).thenAnswer(invocation -> {
+            new QueryStats.Inspector().inspect("select count(*)");
+            new QueryStats.Inspector().inspect("select a1_0.account_id");
+            return new PaginatedDataDto<>(List.of("a", "b"), 42);
+        });
+
+        // Act
+        aspect.traceSearch(joinPoint);
+
+        // Assert - only the statements of the search itself
+        SlowOperationLog.Entry entry = slowOperationLog.snapshot().getFirst();
+        assertEquals("search:account", entry.operation());
+        assertEquals(7L, entry.userId());
+        assertEquals("OK", entry.outcome());
+        assertEquals(2, entry.statements());
+        assertEquals(42, entry.rowsMatched());
+        assertEquals(2, entry.rowsReturned());
+        assertEquals("jansen", entry.parameters().get("query"));
+        assertTrue(entry.breakdownMs().containsKey("jdbc"));
+    }
+
+    @Test
+    void traceSearch_Fast_RecordsNothing() throws Throwable {
+        // Arrange
+        SlowOperationAspect aspect = new SlowOperationAspect(slowOperationLog, true, Duration.ofHours(1), "");
+        ProceedingJoinPoint joinPoint = joinPoint(AccountRepository.class, "search", new String[]{"query"}, new Object[]{"x"});
+        when(joinPoint.proceed()).thenReturn(new PaginatedDataDto<>(List.of(), 0));
+
+        // Act
+        aspect.traceSearch(joinPoint);
+
+        // Assert
+        assertTrue(slowOperationLog.snapshot().isEmpty());
+    }
+
+    @Test
+    void traceTransfer_Rejected_RecordsReasonAndRethrows() throws Throwable {
+        // Arrange
+        SlowOperationAspect aspect = new SlowOperationAspect(slowOperationLog, true, Duration.ZERO, "");
+        TransactionRequestDto request = new TransactionRequestDto();
+        request.setFromAccount("NL91 SPYD 0000 0000 01");
+        request.setToAccount("NL91SPYD0000000002");
+        request.setTransferAmount(new BigDecimal("250.00"));
+        request.setTransactionType(TransactionType.TRANSFER);
+        ProceedingJoinPoint joinPoint = joinPoint(TransactionService.class, "createTransaction",
+                new String[]{"execUser", "transactionReqDto"}, new Object[]{new User(), request});
+        when(joinPoint.proceed()).thenAnswer(invocation -> {
+            SlowOperationLog.addPhase("validation", 2_000_000);
+            throw new TransferRejectedException(TransferRejectReason.ABSOLUTE_LIMIT, "Over the limit");
+        });
+
+        // Act
+        assertThrows(TransferRejectedException.class, () -> aspect.traceTransfer(joinPoint));
+
+        // Assert - no IBANs, no exact amount and no user in the parameters, but the phases and no request stats
+        SlowOperationLog.Entry entry = slowOperationLog.snapshot().getFirst();
+        assertEquals("transfer", entry.operation());
+        assertEquals("ABSOLUTE_LIMIT", entry.outcome());
+        assertEquals(TransferPhaseEvent.hashIban("NL91SPYD0000000001"), entry.parameters().get("fromIban"));
+        assertEquals("100-1000", entry.parameters().get("amount"));
+        assertEquals("TRANSFER", entry.parameters().get("type"));
+        assertFalse(entry.parameters().containsKey("execUser"));
+        assertEquals(2.0, entry.breakdownMs().get("validation"));
+        assertEquals(-1, entry.statements());
+        assertFalse(SlowOperationLog.isTracing());
+    }
+
+    @Test
+    void traceSearch_ControlCharactersAndLongValues_Sanitized() throws Throwable {
+        // Arrange
+        SlowOperationAspect aspect = new SlowOperationAspect(slowOperationLog, true, Duration.ZERO, "");
+        ProceedingJoinPoint joinPoint = joinPoint(AccountRepository.class, "search",
+                new String[]{"query", "status"}, new Object[]{"a\nFAKE LOG LINE", "x".repeat(100)});
+        when(joinPoint.proceed()).thenReturn(null);
+
+        // Act
+        aspect.traceSearch(joinPoint);
+
+        // Assert
+        SlowOperationLog.Entry entry = slowOperationLog.snapshot().getFirst();
+        assertEquals("a FAKE LOG LINE", entry.parameters().get("query"));
+        assertEquals("x".repeat(64) + "...", entry.parameters().get("status"));
+    }
+
+    @Test
+    void traceTransfer_Disabled_OnlyProceeds() throws Throwable {
+        // Arrange
+        SlowOperationAspect aspect = new SlowOperationAspect(slowOperationLog, false, Duration.ZERO, "");
+        ProceedingJoinPoint joinPoint = joinPoint(TransactionService.class, "createTransaction",
+                new String[]{"transactionReqDto"}, new Object[]{new TransactionRequestDto()});
+        when(joinPoint.proceed()).thenReturn("result");
+
+        // Act
+        Object result = aspect.traceTransfer(joinPoint);
+
+        // Assert
+        assertEquals("result", result);
+        assertTrue(slowOperationLog.snapshot().isEmpty());
+        verify(joinPoint, never()).getArgs();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static ProceedingJoinPoint joinPoint(Class<?> declaringType, String method, String[] parameterNames, Object[] args) {
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getDeclaringType()).thenReturn(declaringType);
+        when(signature.getName()).thenReturn(method);
+        when(signature.getParameterNames()).thenReturn(parameterNames);
+
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getArgs()).thenReturn(args);
+        return joinPoint;
+    }
+
+    private static void authenticate(long userId) {
+        User user = new User();
+        user.setUserId(userId);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+}
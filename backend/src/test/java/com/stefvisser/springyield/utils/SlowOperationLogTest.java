@@ -0,0 +1,159 @@
+package com.stefvisser.springyield.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowOperationLogTest {
+
+    @Test
+    void snapshot_MostRecentFirst() {
+        // Arrange
+        SlowOperationLog log = new SlowOperationLog(8);
+
+        // Act
+        record(log, "first");
+        record(log, "second");
+        record(log, "third");
+
+        // Assert
+        assertEquals(List.of("third", "second", "first"), log.snapshot().stream().map(SlowOperationLog.Entry::operation).toList());
+        assertEquals(List.of(2L, 1L, 0L), sequences(log));
+    }
+
+    @Test
+    void record_Full_OverwritesOldest() {
+        // Arrange
+        SlowOperationLog log = new SlowOperationLog(4);
+
+        // Act - two and a half times around the ring
+        for (int i = 0; i < 10; i++)
+            record(log, "operation " + i);
+
+        // Assert
+        assertEquals(List.of(9L, 8L, 7L, 6L), sequences(log));
+        assertEquals("operation 9", log.snapshot().getFirst().operation());
+    }
+
+    @Test
+    void constructor_RoundsCapacityUpToPowerOfTwo() {
+        // Arrange
+        SlowOperationLog log = new SlowOperationLog(5);
+
+        // Act
+        for (int i = 0; i < 20; i++)
+            record(log, "operation " + i);
+
+        // Assert
+        assertEquals(8, log.snapshot().size());
+        assertEquals(List.of(19L, 18L, 17L, 16L, 15L, 14L, 13L, 12L), sequences(log));
+    }
+
+    @Test
+    void record_Concurrent_EverySlotHoldsOneDistinctEntry() throws Exception {
+        // Arrange
+        int threads = 8;
+        int perThread = 2000;
+        SlowOperationLog log = new SlowOperationLog(64);
+        CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // Act
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String operation = "thread " + t;
+            writers.add(executor.submit(() -> {
+                startGate.await();
+                for (int i = 0; i < perThread; i++)
+                    record(log, operation);
+                return null;
+            }));
+        }
+        startGate.countDown();
+        for (Future<?> writer : writers)
+            writer.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Assert - no sequence was handed out twice, and each entry sits in the slot its sequence maps to
+        List<Long> sequences = sequences(log);
+        assertEquals(64, sequences.size());
+        assertEquals(64, new HashSet<>(sequences).size());
+        assertTrue(sequences.stream().allMatch(sequence -> sequence < threads * perThread));
+        for (int i = 1; i < sequences.size(); i++)
+            assertTrue(sequences.get(i - 1) > sequences.get(i), "Not most recent first: " + sequences);
+        assertEquals(64, sequences.stream().map(sequence -> sequence & 63).distinct().count());
+    }
+
+    @Test
+    void clear_EmptiesLog() {
+        // Arrange
+        SlowOperationLog log = new SlowOperationLog(4);
+        record(log, "operation");
+
+        // Act
+        log.clear();
+
+        // Assert
+        assertTrue(log.snapshot().isEmpty());
+    }
+
+    @Test
+    void addPhase_OnlyWhileTracing() {
+        // Arrange
+        SlowOperationLog.addPhase("account-load", 1_000);
+        Map<String, Long> enclosing = SlowOperationLog.startPhases();
+
+        // Act
+        SlowOperationLog.addPhase("account-load", 1_000);
+        SlowOperationLog.addPhase("account-load", 2_000);
+        SlowOperationLog.addPhase("validation", 500);
+        Map<String, Long> phases = SlowOperationLog.stopPhases(enclosing);
+
+        // Assert
+        assertNull(enclosing);
+        assertEquals(Map.of("account-load", 3_000L, "validation", 500L), phases);
+        assertFalse(SlowOperationLog.isTracing());
+    }
+
+    @Test
+    void stopPhases_Nested_RestoresEnclosingTrace() {
+        // Arrange - an ATM posting traced inside a traced transfer
+        Map<String, Long> outer = SlowOperationLog.startPhases();
+        SlowOperationLog.addPhase("validation", 100);
+        Map<String, Long> inner = SlowOperationLog.startPhases();
+        SlowOperationLog.addPhase("account-update", 200);
+
+        // Act
+        Map<String, Long> innerPhases = SlowOperationLog.stopPhases(inner);
+        SlowOperationLog.addPhase("transaction-insert", 300);
+        Map<String, Long> outerPhases = SlowOperationLog.stopPhases(outer);
+
+        // Assert
+        assertEquals(Map.of("account-update", 200L), innerPhases);
+        assertEquals(Map.of("validation", 100L, "transaction-insert", 300L), outerPhases);
+        assertFalse(SlowOperationLog.isTracing());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static void record(SlowOperationLog log, String operation) {
+        log.record(Instant.now(), operation, 1L, "OK", 250.0, Map.of(), 3, null, null, Map.of());
+    }
+
+    private static List<Long> sequences(SlowOperationLog log) {
+        return log.snapshot().stream().map(SlowOperationLog.Entry::sequence).toList();
+    }
+}
@@ -0,0 +1,67 @@
+package com.stefvisser.springyield.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferPhaseEventTest {
+
+    @Test
+    void hashIban_SameKey_SameHashForAnyFormatting() {
+        // Arrange
+        TransferPhaseEvent.useIbanHashKey(key('a'));
+
+        // Act
+        String hash = TransferPhaseEvent.hashIban("NL91 SPYD 0000 0000 01");
+
+        // Assert
+        assertEquals(16, hash.length());
+        assertEquals(hash, TransferPhaseEvent.hashIban("nl91spyd0000000001"));
+        assertNotEquals(hash, TransferPhaseEvent.hashIban("NL91SPYD0000000002"));
+    }
+
+    @Test
+    void hashIban_OtherKey_OtherHash() throws Exception {
+        // Arrange
+        TransferPhaseEvent.useIbanHashKey(key('a'));
+        String first = TransferPhaseEvent.hashIban("NL91SPYD0000000001");
+
+        // Act
+        TransferPhaseEvent.useIbanHashKey(key('b'));
+        String second = TransferPhaseEvent.hashIban("NL91SPYD0000000001");
+
+        // Assert - and not the unkeyed hash anyone could compute for every account number
+        assertNotEquals(first, second);
+        byte[] unkeyed = MessageDigest.getInstance("SHA-256").digest("NL91SPYD0000000001".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(HexFormat.of().formatHex(unkeyed, 0, 8), second);
+    }
+
+    @Test
+    void useIbanHashKey_ShortKey_Rejected() {
+        // Act & Assert
+        String shortKey = Base64.getEncoder().encodeToString("too short".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> TransferPhaseEvent.useIbanHashKey(shortKey));
+    }
+
+    @Test
+    void amountBucket_OrderOfMagnitude() {
+        // Act & Assert
+        assertEquals("<1", TransferPhaseEvent.amountBucket(new BigDecimal("0.50")));
+        assertEquals("100-1000", TransferPhaseEvent.amountBucket(new BigDecimal("250.00")));
+        assertEquals(">=100000", TransferPhaseEvent.amountBucket(new BigDecimal("250000")));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static String key(char fill) {
+        return Base64.getEncoder().encodeToString(String.valueOf(fill).repeat(32).getBytes(StandardCharsets.UTF_8));
+    }
+}
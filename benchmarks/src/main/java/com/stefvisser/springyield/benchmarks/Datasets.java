@@ -0,0 +1,101 @@
+package com.stefvisser.springyield.benchmarks;
+
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.AccountStatus;
+import com.stefvisser.springyield.models.AccountType;
+import com.stefvisser.springyield.models.Transaction;
+import com.stefvisser.springyield.models.TransactionType;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic in-memory datasets for the benchmarks, the same seed always gives the same rows so results of
+ * different releases are comparable.
+ */
+final class Datasets {
+    static final long SEED = 20250601L;
+
+    private static final String[] FIRST_NAMES = {"Emma", "Daan", "Sophie", "Lucas", "Julia", "Sem", "Tess", "Finn", "Anna", "Levi"};
+    private static final String[] LAST_NAMES = {"de Jong", "Jansen", "de Vries", "van den Berg", "Bakker", "Visser", "Smit", "Meijer", "Mulder", "de Boer"};
+
+    /// Users with one payment account each, linked both ways like the JPA entities
+    record Bank(List<User> users, List<Account> accounts, List<Transaction> transactions) {
+    }
+
+    private Datasets() {
+    }
+
+    /**
+     * Generates a bank with the given number of users, accounts and transactions.
+     *
+     * @param rows number of rows per table
+     */
+    static Bank generate(int rows) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<User> users = new ArrayList<>(rows);
+        List<Account> accounts = new ArrayList<>(rows);
+        List<Transaction> transactions = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+            UserRole role = i % 50 == 0 ? UserRole.EMPLOYEE : (i % 10 == 0 ? UserRole.UNAPPROVED : UserRole.APPROVED);
+            User user = new User(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                    "{noop}password", "user" + i + "@example.com", 100_000_000 + i, "06" + (10_000_000 + i), role, new ArrayList<>());
+            user.setUserId((long) i + 1);
+
+            Account account = new Account((long) i + 1, user, iban(i), LocalDate.of(2024, 1, 1), AccountType.PAYMENT,
+                    new BigDecimal("1000.00"), new BigDecimal("5000.00"), BigDecimal.valueOf(random.nextInt(1_000_000), 2),
+                    new BigDecimal("-500.00"), i % 20 == 0 ? AccountStatus.DEACTIVATED : AccountStatus.ACTIVE,
+                    BigDecimal.ZERO, new ArrayList<>());
+            user.getAccounts().add(account);
+            users.add(user);
+            accounts.add(account);
+        }
+
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        for (int i = 0; i < rows; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId((long) i + 1);
+            transaction.setFromAccount(accounts.get(random.nextInt(rows)).getIban());
+            transaction.setToAccount(accounts.get(random.nextInt(rows)).getIban());
+            transaction.setTransferAmount(BigDecimal.valueOf(random.nextInt(1, 100_000), 2));
+            transaction.setTimestamp(start.plusSeconds(random.nextLong(365L * 24 * 3600)));
+            transaction.setTransactionType(TransactionType.values()[random.nextInt(TransactionType.values().length)]);
+            transaction.setDescription("Payment " + i);
+            transaction.setReference("TR" + (1_000_000 + i));
+            transactions.add(transaction);
+        }
+        return new Bank(users, accounts, transactions);
+    }
+
+    /// IBAN shaped string, check digits are not valid but the searches never validate them
+    static String iban(int index) {
+        String digits = String.format("%010d", index);
+        return "NL" + String.format("%02d", index % 97) + " SPYD " + digits.substring(0, 4) + " " + digits.substring(4, 8)
+                + " " + digits.substring(8);
+    }
+
+    /**
+     * Implements a repository interface on top of a list: findAll() returns the rows, default methods (the
+     * in-memory searches) run as written, anything else is not supported.
+     */
+    @SuppressWarnings("unchecked")
+    static <R> R repository(Class<R> type, List<?> rows) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().equals("findAll") && method.getParameterCount() == 0)
+                return rows;
+            if (method.isDefault())
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            throw new UnsupportedOperationException(method.getName() + " is not available in benchmarks");
+        };
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
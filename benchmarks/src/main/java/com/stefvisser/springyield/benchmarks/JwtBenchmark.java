@@ -0,0 +1,81 @@
+package com.stefvisser.springyield.benchmarks;
+
+import com.stefvisser.springyield.dto.UserProfileDto;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+import com.stefvisser.springyield.security.JwtKeyring;
+import com.stefvisser.springyield.services.AuthServiceImpl;
+import com.stefvisser.springyield.services.TokenRevocationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT handling done on login (generate) and on every authenticated request (parse and validate), with an in-memory
+ * keyring and a revocation check that never matches, like for a user that was never revoked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+    private AuthServiceImpl authService;
+    private UserProfileDto profile;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtKeyring keyring = new JwtKeyring("", Duration.ofHours(1), Duration.ofDays(7), Duration.ofSeconds(10));
+        TokenRevocationService neverRevoked = new TokenRevocationService() {
+            public void revokeAllTokens(Long userId) {
+            }
+
+            public boolean isRevoked(Long userId, Date issuedAt) {
+                return false;
+            }
+
+            public int getRecentRevocationCount() {
+                return 0;
+            }
+        };
+        authService = new AuthServiceImpl(null, keyring, neverRevoked);
+
+        user = new User("Test", "User", "{noop}password", "test.user@example.com", 123456789, "0612345678",
+                UserRole.APPROVED, new ArrayList<>());
+        user.setUserId(1L);
+        profile = new UserProfileDto(user);
+        token = authService.generateJwtToken(profile);
+    }
+
+    @Benchmark
+    public String generate() {
+        return authService.generateJwtToken(profile);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return authService.extractUsername(token);
+    }
+
+    /// What JwtAuthenticationFilter does per request: extract the subject, then validate the token
+    @Benchmark
+    public boolean authenticateRequest() {
+        authService.extractUsername(token);
+        return authService.isTokenValid(token, user);
+    }
+}
@@ -0,0 +1,104 @@
+package com.stefvisser.springyield.benchmarks;
+
+import com.stefvisser.springyield.dto.AccountProfileDto;
+import com.stefvisser.springyield.dto.PaginatedDataDto;
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.dto.UserProfileDto;
+import com.stefvisser.springyield.models.AccountStatus;
+import com.stefvisser.springyield.models.AccountType;
+import com.stefvisser.springyield.models.UserRole;
+import com.stefvisser.springyield.repositories.AccountRepository;
+import com.stefvisser.springyield.repositories.TransactionRepository;
+import com.stefvisser.springyield.repositories.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The employee searches, which load a whole table and filter it in memory. Measured per search, over tables of
+ * 10k and 1M rows, with the filters the employee dashboard sends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SearchBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    private TransactionRepository transactionRepository;
+    private AccountRepository accountRepository;
+    private UserRepository userRepository;
+    private String ibanQuery;
+
+    @Setup
+    public void setUp() {
+        Datasets.Bank bank = Datasets.generate(rows);
+        transactionRepository = Datasets.repository(TransactionRepository.class, bank.transactions());
+        accountRepository = Datasets.repository(AccountRepository.class, bank.accounts());
+        userRepository = Datasets.repository(UserRepository.class, bank.users());
+
+        // Part of an IBAN as typed by an employee, matches a handful of rows
+        ibanQuery = Datasets.iban(rows / 2).substring(10, 19);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Transactions
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public PaginatedDataDto<TransactionRequestDto> searchTransactionsFirstPage() {
+        return transactionRepository.searchTransactions("", null, null, null, null, null, null, 10, 0);
+    }
+
+    @Benchmark
+    public PaginatedDataDto<TransactionRequestDto> searchTransactionsByIban() {
+        return transactionRepository.searchTransactions(ibanQuery, null, null, null, null, null, null, 10, 0);
+    }
+
+    @Benchmark
+    public PaginatedDataDto<TransactionRequestDto> searchTransactionsFiltered() {
+        return transactionRepository.searchTransactions("", "TRANSFER",
+                LocalDateTime.of(2025, 3, 1, 0, 0), LocalDateTime.of(2025, 6, 1, 0, 0),
+                new BigDecimal("100.00"), null, "gt", 10, 0);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Accounts and users
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public PaginatedDataDto<AccountProfileDto> searchAccountsFirstPage() {
+        return accountRepository.search("", null, null, 10, 0);
+    }
+
+    @Benchmark
+    public PaginatedDataDto<AccountProfileDto> searchAccountsByName() {
+        return accountRepository.search("visser", AccountType.PAYMENT, AccountStatus.ACTIVE, 10, 0);
+    }
+
+    @Benchmark
+    public PaginatedDataDto<UserProfileDto> searchUsersFirstPage() {
+        return userRepository.search("", null, 10, 0, true);
+    }
+
+    @Benchmark
+    public PaginatedDataDto<UserProfileDto> searchUsersByName() {
+        return userRepository.search("jansen", UserRole.APPROVED, 10, 0, false);
+    }
+}
@@ -0,0 +1,72 @@
+package com.stefvisser.springyield.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stefvisser.springyield.dto.TransactionRequestDto;
+import com.stefvisser.springyield.dto.UserProfileDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of the DTOs returned by the busiest endpoints: a page of transactions and a user profile with
+ * its accounts. Uses an ObjectMapper configured like Spring Boot's (Java time module, no timestamps for dates).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private TransactionRequestDto transaction;
+    private List<TransactionRequestDto> transactionPage;
+    private UserProfileDto userProfile;
+    private byte[] transactionJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        Datasets.Bank bank = Datasets.generate(100);
+        transaction = TransactionRequestDto.wrap(bank.transactions().getFirst());
+        transactionPage = bank.transactions().stream().limit(10).map(TransactionRequestDto::wrap).toList();
+
+        // A customer with a few accounts, like the profile returned after login
+        bank.users().get(1).getAccounts().addAll(bank.accounts().subList(50, 53));
+        userProfile = new UserProfileDto(bank.users().get(1));
+
+        transactionJson = objectMapper.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public byte[] serializeTransaction() throws Exception {
+        return objectMapper.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public byte[] serializeTransactionPage() throws Exception {
+        return objectMapper.writeValueAsBytes(transactionPage);
+    }
+
+    @Benchmark
+    public TransactionRequestDto deserializeTransaction() throws Exception {
+        return objectMapper.readValue(transactionJson, TransactionRequestDto.class);
+    }
+
+    @Benchmark
+    public byte[] serializeUserProfile() throws Exception {
+        return objectMapper.writeValueAsBytes(userProfile);
+    }
+}
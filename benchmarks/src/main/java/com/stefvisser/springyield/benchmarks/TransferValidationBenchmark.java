@@ -0,0 +1,111 @@
+package com.stefvisser.springyield.benchmarks;
+
+import com.stefvisser.springyield.config.TransferRuleProperties;
+import com.stefvisser.springyield.models.Account;
+import com.stefvisser.springyield.models.AccountStatus;
+import com.stefvisser.springyield.models.AccountType;
+import com.stefvisser.springyield.models.User;
+import com.stefvisser.springyield.models.UserRole;
+import com.stefvisser.springyield.services.SpendTrackingServiceImpl;
+import com.stefvisser.springyield.services.TransactionServiceImpl;
+import com.stefvisser.springyield.services.TransferRuleEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks done on every transfer: the rule pipeline behind {@code TransactionServiceImpl.validateTransfer} for an
+ * external payment (all rules run, so this is the slowest accepted path) and {@link User#hasAccount(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferValidationBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("25.00");
+
+    /// validateTransfer is private, it is called through a method handle so the benchmark measures the real code
+    private MethodHandle validateTransfer;
+    private TransactionServiceImpl transactionService;
+    private Account fromAccount;
+    private Account toAccount;
+    private User owner;
+    private long today;
+    private String ownIban;
+    private String otherIban;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        SpendTrackingServiceImpl spendTrackingService = new SpendTrackingServiceImpl(null, null);
+        TransferRuleEngine transferRuleEngine = new TransferRuleEngine(new TransferRuleProperties(), spendTrackingService, new SimpleMeterRegistry());
+        transactionService = new TransactionServiceImpl(null, null, null, spendTrackingService, transferRuleEngine, null, null);
+        validateTransfer = MethodHandles.privateLookupIn(TransactionServiceImpl.class, MethodHandles.lookup())
+                .findVirtual(TransactionServiceImpl.class, "validateTransfer",
+                        MethodType.methodType(void.class, Account.class, Account.class, BigDecimal.class, long.class));
+
+        owner = user(1, 3);
+        User counterparty = user(2, 1);
+        fromAccount = owner.getAccounts().getFirst();
+        toAccount = counterparty.getAccounts().getFirst();
+        today = LocalDate.now().toEpochDay();
+
+        // Some earlier spend, so the rolling windows have something to add up
+        for (int i = 0; i < 20; i++)
+            spendTrackingService.recordSpend(fromAccount.getIban(), new BigDecimal("10.00"), LocalDateTime.now().minusHours(i * 7L));
+
+        ownIban = owner.getAccounts().getLast().getIban().replace(" ", "").toLowerCase();
+        otherIban = toAccount.getIban().replace(" ", "").toLowerCase();
+    }
+
+    @Benchmark
+    public void validateExternalTransfer() throws Throwable {
+        validateTransfer.invokeExact(transactionService, fromAccount, toAccount, AMOUNT, today);
+    }
+
+    @Benchmark
+    public boolean hasAccountHit() {
+        return owner.hasAccount(ownIban);
+    }
+
+    @Benchmark
+    public boolean hasAccountMiss() {
+        return owner.hasAccount(otherIban);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private static User user(int id, int accounts) {
+        User user = new User("Test", "User " + id, "{noop}password", "user" + id + "@example.com", 100_000_000 + id,
+                "0612345678", UserRole.APPROVED, new ArrayList<>());
+        user.setUserId((long) id);
+        List<Account> userAccounts = user.getAccounts();
+        for (int i = 0; i < accounts; i++) {
+            userAccounts.add(new Account((long) id * 10 + i, user, Datasets.iban(id * 10 + i), LocalDate.of(2024, 1, 1),
+                    AccountType.PAYMENT, new BigDecimal("1000.00"), new BigDecimal("5000.00"), new BigDecimal("2500.00"),
+                    new BigDecimal("-500.00"), AccountStatus.ACTIVE, BigDecimal.ZERO, new ArrayList<>()));
+        }
+        return user;
+    }
+}
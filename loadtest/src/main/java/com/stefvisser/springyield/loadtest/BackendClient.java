@@ -0,0 +1,135 @@
+package com.stefvisser.springyield.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The backend API as used by the workload, on top of {@link HttpClient}. Calls block, which is cheap on the virtual
+ * threads the load generator runs them on.
+ */
+class BackendClient {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /// The status recorded for a request that got no response, see {@link EndpointStats#record(int, long, long)}
+    static final int NO_RESPONSE = 0;
+
+    /// A logged in user, with the accounts returned by the login
+    record Session(String email, String token, long userId, List<String> ibans) {
+    }
+
+    private final HttpClient httpClient;
+    private final URI baseUrl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    BackendClient(HttpClient httpClient, URI baseUrl) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * Logs in, failing when the backend does not return a token.
+     */
+    Session login(String email, String password) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(post("/api/auth/login", null,
+                Map.of("email", email, "password", password)), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200)
+            throw new IOException("Login of " + email + " failed with status " + response.statusCode() + ": " + response.body());
+
+        JsonNode session = objectMapper.readTree(response.body());
+        List<String> ibans = new ArrayList<>();
+        for (JsonNode account : session.path("user").path("accounts"))
+            ibans.add(account.path("iban").asText());
+        return new Session(email, session.path("token").asText(), session.path("user").path("userId").asLong(), ibans);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Workload
+    // -----------------------------------------------------------------------------------------------------------------
+
+    int dashboard(Session session) throws IOException, InterruptedException {
+        return send(get("/api/user/" + session.userId(), session));
+    }
+
+    int transactionsByIban(Session session, String iban) throws IOException, InterruptedException {
+        return send(get("/api/transactions/iban/" + encode(iban), session));
+    }
+
+    int transfer(Session session, String fromIban, String toIban, BigDecimal amount) throws IOException, InterruptedException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("fromAccount", fromIban);
+        body.put("toAccount", toIban);
+        body.put("transferAmount", amount);
+        body.put("description", "Load test");
+        return send(post("/api/transactions/create", session, body));
+    }
+
+    int atm(Session session, String iban, String transactionType, BigDecimal amount) throws IOException, InterruptedException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("fromAccount", iban);
+        body.put("transferAmount", amount);
+        body.put("transactionType", transactionType);
+        return send(post("/api/transactions/atm", session, body));
+    }
+
+    int searchTransactions(Session session, String query) throws IOException, InterruptedException {
+        return send(get("/api/transactions/search?limit=10&offset=0&query=" + encode(query), session));
+    }
+
+    int searchAccounts(Session session, String query) throws IOException, InterruptedException {
+        return send(get("/api/account/search?limit=10&offset=0&query=" + encode(query), session));
+    }
+
+    int searchUsers(Session session, String query) throws IOException, InterruptedException {
+        return send(get("/api/user/search?limit=10&offset=0&query=" + encode(query), session));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// Sends a request and returns its status, the body is read and discarded like a client would. A timeout or a
+    /// refused or reset connection is a failed request too, so it returns {@link #NO_RESPONSE} instead of throwing
+    private int send(HttpRequest request) throws InterruptedException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return NO_RESPONSE;
+        }
+    }
+
+    private HttpRequest get(String path, Session session) {
+        return HttpRequest.newBuilder(baseUrl.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Authorization", "Bearer " + session.token())
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, Session session, Map<String, ?> body) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUrl.resolve(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        if (session != null)
+            request.header("Authorization", "Bearer " + session.token());
+        return request.build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
@@ -0,0 +1,82 @@
+package com.stefvisser.springyield.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and response statuses of one operation, recorded from many virtual threads.
+ * <p>
+ * Two latencies are kept per request. The corrected one is measured from the moment the request was scheduled to
+ * be sent, so time a virtual user spent waiting for an earlier slow response counts as latency too; this is what a
+ * user arriving at a fixed rate would see (coordinated omission correction, as in wrk2). The uncorrected one is
+ * measured from the moment the request was actually sent, and is only reported for comparison.
+ * </p>
+ */
+class EndpointStats {
+    private final Operation operation;
+    private final Recorder corrected = new Recorder(3);
+    private final Recorder uncorrected = new Recorder(3);
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    EndpointStats(Operation operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records one response.
+     *
+     * @param status           HTTP status, 0 when no response was received
+     * @param correctedNanos   time since the request was scheduled
+     * @param uncorrectedNanos time since the request was sent
+     */
+    void record(int status, long correctedNanos, long uncorrectedNanos) {
+        corrected.recordValue(TimeUnit.NANOSECONDS.toMicros(correctedNanos));
+        uncorrected.recordValue(TimeUnit.NANOSECONDS.toMicros(uncorrectedNanos));
+        statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Summarizes everything recorded so far.
+     *
+     * @param seconds the measured time, for the throughput
+     */
+    Map<String, Object> summarize(double seconds) {
+        Histogram latencies = corrected.getIntervalHistogram();
+        Histogram serviceTimes = uncorrected.getIntervalHistogram();
+
+        Map<String, Long> statusCounts = new TreeMap<>();
+        long errors = 0;
+        for (Map.Entry<Integer, LongAdder> entry : statuses.entrySet()) {
+            long count = entry.getValue().sum();
+            statusCounts.put(entry.getKey() == 0 ? "no response" : String.valueOf(entry.getKey()), count);
+            if (entry.getKey() < 200 || entry.getKey() >= 300)
+                errors += count;
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("operation", operation.getName());
+        summary.put("endpoint", operation.getEndpoint());
+        summary.put("requests", latencies.getTotalCount());
+        summary.put("throughput", latencies.getTotalCount() / seconds);
+        summary.put("errors", errors);
+        summary.put("statuses", statusCounts);
+        summary.put("p50Ms", millis(latencies.getValueAtPercentile(50)));
+        summary.put("p90Ms", millis(latencies.getValueAtPercentile(90)));
+        summary.put("p99Ms", millis(latencies.getValueAtPercentile(99)));
+        summary.put("p999Ms", millis(latencies.getValueAtPercentile(99.9)));
+        summary.put("maxMs", millis(latencies.getMaxValue()));
+        summary.put("uncorrectedP99Ms", millis(serviceTimes.getValueAtPercentile(99)));
+        return summary;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,239 @@
+package com.stefvisser.springyield.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Closed-loop load generator: logs in seeded customers and employees, and lets every one of them send requests at
+ * a fixed intended rate from its own virtual thread, one request at a time.
+ * <p>
+ * Customers pick an operation from the configured mix (dashboard, transactions by IBAN, transfers and ATM
+ * transactions), employees run the user, account and transaction searches. Latency is measured from the scheduled
+ * send time, see {@link EndpointStats}. Start the backend with the {@code loadtest} profile and without rate limits,
+ * e.g. {@code --spring.profiles.active=loadtest --rate-limit.enabled=false}, and run
+ * {@code java -jar target/loadtest.jar --customers=200 --rate-per-user=2 --duration=PT60S}.
+ * </p>
+ */
+public class LoadGenerator {
+    private static final String[] SEARCH_QUERIES = {"", "de", "jan", "berg", "smit", "NL", "SPYD 00", "visser"};
+    private static final BigDecimal ATM_AMOUNT = new BigDecimal("20.00");
+
+    private final LoadTestOptions options;
+    private final BackendClient backend;
+    private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+    private final List<String> allIbans = new ArrayList<>();
+    private final Operation[] customerOperations;
+    private final int[] cumulativeWeights;
+
+    LoadGenerator(LoadTestOptions options, BackendClient backend) {
+        this.options = options;
+        this.backend = backend;
+        for (Operation operation : Operation.values())
+            stats.put(operation, new EndpointStats(operation));
+
+        // Weighted choice: cumulative weights, a random number below the total picks the first bucket above it
+        customerOperations = options.mix().keySet().toArray(new Operation[0]);
+        cumulativeWeights = new int[customerOperations.length];
+        int total = 0;
+        for (int i = 0; i < customerOperations.length; i++) {
+            total += options.mix().get(customerOperations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .executor(executor)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            new LoadGenerator(options, new BackendClient(httpClient, options.baseUrl())).run(executor);
+        }
+    }
+
+    void run(ExecutorService executor) throws Exception {
+        // Log in first, BCrypt makes this slow and it is not part of the measured workload
+        System.out.printf("Logging in %d customers and %d employees at %s%n", options.customers(), options.employees(), options.baseUrl());
+        List<BackendClient.Session> customers = login(executor, options.customers(), i -> String.format(options.customerEmail(), i + 1));
+        List<BackendClient.Session> employees = login(executor, options.employees(), i -> options.employeeEmail());
+        customers.removeIf(session -> session.ibans().isEmpty());
+        customers.forEach(session -> allIbans.addAll(session.ibans()));
+        if (customers.size() < 2 && options.mix().containsKey(Operation.TRANSFER))
+            throw new IllegalStateException("At least two customers with an account are needed for transfers");
+
+        long start = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+        long measureStart = start + options.warmup().toNanos();
+        long end = measureStart + options.duration().toNanos();
+        System.out.printf("Warming up for %s, then measuring for %s%n", options.warmup(), options.duration());
+
+        List<Future<?>> users = new ArrayList<>();
+        for (int i = 0; i < customers.size(); i++) {
+            BackendClient.Session session = customers.get(i);
+            SplittableRandom random = new SplittableRandom(options.seed() + i);
+            users.add(executor.submit(() -> loop(random, start, measureStart, end, () -> customerRequest(session, random))));
+        }
+        for (int i = 0; i < employees.size(); i++) {
+            BackendClient.Session session = employees.get(i);
+            SplittableRandom random = new SplittableRandom(options.seed() - i - 1);
+            users.add(executor.submit(() -> loop(random, start, measureStart, end, () -> employeeRequest(session, random))));
+        }
+        for (Future<?> user : users)
+            user.get();
+
+        report(options.duration().toNanos() / 1e9);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Virtual users
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /// A request of a virtual user: the operation that was sent and the response status
+    private record Sent(Operation operation, int status) {
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        Sent send() throws Exception;
+    }
+
+    /// Sends requests on a fixed schedule until the end, a late response makes the next requests start late
+    private void loop(SplittableRandom random, long start, long measureStart, long end, Request request) {
+        long interval = (long) (1e9 / options.ratePerUser());
+        // Spread the users over the first interval, so they do not all fire at the same moment
+        long intended = start + random.nextLong(interval);
+
+        while (intended < end) {
+            long now;
+            while ((now = System.nanoTime()) < intended)
+                LockSupport.parkNanos(intended - now);
+
+            long sent = System.nanoTime();
+            Sent result;
+            try {
+                result = request.send();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Failed requests come back as NO_RESPONSE, anything else is a bug in the workload
+                throw new IllegalStateException("Request failed", e);
+            }
+            long done = System.nanoTime();
+
+            // Measured from the intended start, also for requests without a response, so failures count as latency
+            if (intended >= measureStart)
+                stats.get(result.operation()).record(result.status(), done - intended, done - sent);
+            intended += interval;
+        }
+    }
+
+    private Sent customerRequest(BackendClient.Session session, SplittableRandom random) throws Exception {
+        Operation operation = pickOperation(random);
+        String iban = session.ibans().get(random.nextInt(session.ibans().size()));
+        int status = switch (operation) {
+            case DASHBOARD -> backend.dashboard(session);
+            case IBAN -> backend.transactionsByIban(session, iban);
+            case TRANSFER -> backend.transfer(session, iban, counterparty(session, random), BigDecimal.valueOf(random.nextInt(1, 500), 2));
+            // Deposits and withdrawals alternate randomly, so balances stay roughly level during long runs
+            case ATM -> backend.atm(session, iban, random.nextBoolean() ? "DEPOSIT" : "WITHDRAW", ATM_AMOUNT);
+            default -> throw new IllegalStateException("Not a customer operation: " + operation);
+        };
+        return new Sent(operation, status);
+    }
+
+    private Sent employeeRequest(BackendClient.Session session, SplittableRandom random) throws Exception {
+        String query = SEARCH_QUERIES[random.nextInt(SEARCH_QUERIES.length)];
+        return switch (random.nextInt(3)) {
+            case 0 -> new Sent(Operation.SEARCH_TRANSACTIONS, backend.searchTransactions(session, query));
+            case 1 -> new Sent(Operation.SEARCH_ACCOUNTS, backend.searchAccounts(session, query));
+            default -> new Sent(Operation.SEARCH_USERS, backend.searchUsers(session, query));
+        };
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // -----------------------------------------------------------------------------------------------------------------
+
+    private Operation pickOperation(SplittableRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++)
+            if (value < cumulativeWeights[i])
+                return customerOperations[i];
+        return customerOperations[customerOperations.length - 1];
+    }
+
+    /// An account of another customer, so the transfer counts as external
+    private String counterparty(BackendClient.Session session, SplittableRandom random) {
+        while (true) {
+            String iban = allIbans.get(random.nextInt(allIbans.size()));
+            if (!session.ibans().contains(iban))
+                return iban;
+        }
+    }
+
+    private List<BackendClient.Session> login(ExecutorService executor, int count, IntFunction<String> email)
+            throws InterruptedException {
+        List<Callable<BackendClient.Session>> logins = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String address = email.apply(i);
+            logins.add(() -> backend.login(address, options.password()));
+        }
+
+        List<BackendClient.Session> sessions = new ArrayList<>();
+        for (Future<BackendClient.Session> login : executor.invokeAll(logins)) {
+            try {
+                sessions.add(login.get());
+            } catch (Exception e) {
+                System.err.println("Skipping user: " + e.getCause().getMessage());
+            }
+        }
+        return sessions;
+    }
+
+    private void report(double seconds) throws IOException {
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        for (EndpointStats endpoint : stats.values()) {
+            Map<String, Object> summary = endpoint.summarize(seconds);
+            if ((long) summary.get("requests") > 0)
+                summaries.add(summary);
+        }
+
+        System.out.printf("%n%-20s %9s %9s %7s %9s %9s %9s %9s %9s %11s%n",
+                "operation", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "p99 uncorr");
+        for (Map<String, Object> summary : summaries)
+            System.out.printf("%-20s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    summary.get("operation"), summary.get("requests"), summary.get("throughput"), summary.get("errors"),
+                    summary.get("p50Ms"), summary.get("p90Ms"), summary.get("p99Ms"), summary.get("p999Ms"),
+                    summary.get("maxMs"), summary.get("uncorrectedP99Ms"));
+        summaries.stream().filter(summary -> (long) summary.get("errors") > 0).forEach(summary ->
+                System.out.printf("%s statuses: %s%n", summary.get("operation"), summary.get("statuses")));
+
+        if (options.json() != null) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("options", Map.of("customers", options.customers(), "employees", options.employees(),
+                    "ratePerUser", options.ratePerUser(), "duration", options.duration().toString(), "mix", options.mix()));
+            report.put("operations", summaries);
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(options.json()), report);
+            System.out.printf("%nReport written to %s%n", options.json());
+        }
+    }
+}
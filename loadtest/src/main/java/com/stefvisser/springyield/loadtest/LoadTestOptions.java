@@ -0,0 +1,65 @@
+package com.stefvisser.springyield.loadtest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the load generator, given as {@code --name=value}. Every option has a default that
+ * works against a local instance started with the {@code loadtest} profile.
+ *
+ * @param baseUrl        the backend, e.g. http://localhost:8080
+ * @param customers      number of virtual customers, each one logged in user with its own request loop
+ * @param employees      number of virtual employees, they only run searches
+ * @param ratePerUser    requests per second each virtual user intends to send
+ * @param warmup         time before measuring starts, results of this period are discarded
+ * @param duration       measured time
+ * @param mix            relative weight of every customer operation
+ * @param customerEmail  email pattern of the seeded customers, %d is replaced by 1, 2, 3, ...
+ * @param employeeEmail  email of the employee account used by the virtual employees
+ * @param password       password of all seeded users
+ * @param seed           seed of the random operation choice, runs with the same seed send the same mix
+ * @param json           optional file to write the report to as JSON
+ */
+record LoadTestOptions(URI baseUrl, int customers, int employees, double ratePerUser, Duration warmup, Duration duration,
+                       Map<Operation, Integer> mix, String customerEmail, String employeeEmail, String password,
+                       long seed, String json) {
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        return new LoadTestOptions(
+                URI.create(values.getOrDefault("base-url", "http://localhost:8080")),
+                Integer.parseInt(values.getOrDefault("customers", "200")),
+                Integer.parseInt(values.getOrDefault("employees", "5")),
+                Double.parseDouble(values.getOrDefault("rate-per-user", "2")),
+                Duration.parse(values.getOrDefault("warmup", "PT15S")),
+                Duration.parse(values.getOrDefault("duration", "PT60S")),
+                parseMix(values.getOrDefault("mix", "dashboard=40,iban=30,transfer=20,atm=10")),
+                values.getOrDefault("customer-email", "loadtest.user%d@springyield.com"),
+                values.getOrDefault("employee-email", "employee@springyield.com"),
+                values.getOrDefault("password", "pass"),
+                Long.parseLong(values.getOrDefault("seed", "42")),
+                values.get("json"));
+    }
+
+    /// "dashboard=40,iban=30" -> weights per operation, operations that are left out are not sent
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            Operation operation = Operation.byName(parts[0].trim());
+            if (operation.isEmployeeOperation())
+                throw new IllegalArgumentException("Searches are sent by the virtual employees, use --employees instead");
+            weights.put(operation, Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+}
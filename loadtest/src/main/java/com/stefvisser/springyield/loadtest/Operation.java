@@ -0,0 +1,41 @@
+package com.stefvisser.springyield.loadtest;
+
+/**
+ * The operations of the workload, reported separately.
+ */
+enum Operation {
+    DASHBOARD("dashboard", "GET /api/user/{id}"),
+    IBAN("iban", "GET /api/transactions/iban/{iban}"),
+    TRANSFER("transfer", "POST /api/transactions/create"),
+    ATM("atm", "POST /api/transactions/atm"),
+    SEARCH_TRANSACTIONS("search-transactions", "GET /api/transactions/search"),
+    SEARCH_ACCOUNTS("search-accounts", "GET /api/account/search"),
+    SEARCH_USERS("search-users", "GET /api/user/search");
+
+    private final String name;
+    private final String endpoint;
+
+    Operation(String name, String endpoint) {
+        this.name = name;
+        this.endpoint = endpoint;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    boolean isEmployeeOperation() {
+        return name.startsWith("search");
+    }
+
+    static Operation byName(String name) {
+        for (Operation operation : values())
+            if (operation.name.equals(name))
+                return operation;
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+}